@@ -37,18 +37,25 @@ import cientistavuador.bakedlighting.shader.GeometryProgram;
 import cientistavuador.bakedlighting.text.GLFontRenderer;
 import cientistavuador.bakedlighting.text.GLFontSpecification;
 import cientistavuador.bakedlighting.text.GLFontSpecifications;
+import cientistavuador.bakedlighting.texture.SoftwareTextures;
 import cientistavuador.bakedlighting.texture.Textures;
 import cientistavuador.bakedlighting.ubo.CameraUBO;
 import cientistavuador.bakedlighting.ubo.UBOBindingPoints;
+import cientistavuador.bakedlighting.util.BakeCache;
+import cientistavuador.bakedlighting.util.BakeDependencies;
 import cientistavuador.bakedlighting.util.BakedLighting;
+import cientistavuador.bakedlighting.util.LightmapBasis;
+import cientistavuador.bakedlighting.util.LightmapCache;
 import cientistavuador.bakedlighting.util.RayResult;
 import cientistavuador.bakedlighting.util.SamplingMode;
 import cientistavuador.bakedlighting.util.Scene;
+import java.nio.file.Path;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
 import org.joml.Matrix4f;
+import org.joml.Matrix4fc;
 import org.joml.Vector3f;
 import static org.lwjgl.glfw.GLFW.*;
 import static org.lwjgl.opengl.GL33C.*;
@@ -62,6 +69,13 @@ public class Game {
 
     private static final Game GAME = new Game();
 
+    private static final float[][] INTERIOR_COLORS = {
+        {2f, 2f, 2f},
+        {2.4f, 1.8f, 1.2f},
+        {1.4f, 1.8f, 2.6f},
+        {2.6f, 1.2f, 1.2f}
+    };
+
     public static Game get() {
         return GAME;
     }
@@ -75,6 +89,8 @@ public class Game {
         private int lightmapSize = 0;
         private String[] groups = null;
         private int texture = 0;
+        private int previousTexture = 0;
+        private long previousMemoryUsage = 0;
         private int count = 0;
 
         @Override
@@ -84,6 +100,7 @@ public class Game {
             this.lightmapSize = lightmapSize;
             this.groups = groups;
             this.count = groups.length;
+            this.previousTexture = 0;
 
             this.texture = glGenTextures();
             glActiveTexture(GL_TEXTURE0);
@@ -106,6 +123,50 @@ public class Game {
             Game.this.memoryUsage += this.lightmapSize * this.lightmapSize * 4 * this.groups.length;
         }
 
+        @Override
+        public void prepareUpdate(Geometry geometry, MeshData.LightmapMesh mesh, int lightmapSize, String[] groups, boolean[] updatedGroups) {
+            int updated = 0;
+            for (boolean b : updatedGroups) {
+                if (b) {
+                    updated++;
+                }
+            }
+
+            int currentTexture = geometry.getLightmapTextureHint();
+            MeshData.LightmapMesh currentMesh = geometry.getLightmapMesh();
+            if (currentTexture != Textures.EMPTY_LIGHTMAP && currentMesh == mesh) {
+                this.geometry = geometry;
+                this.mesh = mesh;
+                this.lightmapSize = lightmapSize;
+                this.groups = groups;
+                this.texture = currentTexture;
+                this.previousTexture = 0;
+                this.count = updated;
+                return;
+            }
+
+            prepare(geometry, mesh, lightmapSize, groups);
+            this.count = updated;
+            if (currentTexture != Textures.EMPTY_LIGHTMAP) {
+                this.previousTexture = currentTexture;
+                this.previousMemoryUsage = currentMesh.getLightmapSize() * currentMesh.getLightmapSize() * 4L * groups.length;
+            }
+
+            float[] empty = new float[lightmapSize * lightmapSize * 3];
+            glActiveTexture(GL_TEXTURE0);
+            glBindTexture(GL_TEXTURE_2D_ARRAY, this.texture);
+            for (int i = 0; i < groups.length; i++) {
+                if (!updatedGroups[i]) {
+                    glTexSubImage3D(
+                            GL_TEXTURE_2D_ARRAY, 0,
+                            0, 0, i,
+                            lightmapSize, lightmapSize, 1,
+                            GL_RGB, GL_FLOAT, empty);
+                }
+            }
+            glBindTexture(GL_TEXTURE_2D_ARRAY, 0);
+        }
+
         @Override
         public void write(float[] lightmap, int groupIndex) {
             glActiveTexture(GL_TEXTURE0);
@@ -123,9 +184,29 @@ public class Game {
             if (this.count == 0) {
                 this.geometry.setLightmapTextureHint(texture);
                 this.geometry.setLightmapMesh(this.mesh);
+                if (this.previousTexture != 0) {
+                    glDeleteTextures(this.previousTexture);
+                    SoftwareTextures.remove(this.previousTexture);
+                    Game.this.memoryUsage -= this.previousMemoryUsage;
+                    this.previousTexture = 0;
+                }
+            }
+        }
+
+        @Override
+        public void basis(LightmapBasis basis) {
+            for (int i = 0; i < Game.this.lightmapBases.size(); i++) {
+                LightmapBasis previous = Game.this.lightmapBases.get(i);
+                if (previous.getGeometry() == basis.getGeometry()) {
+                    basis.inherit(previous);
+                    Game.this.lightmapBases.set(i, basis);
+                    return;
+                }
             }
+            Game.this.lightmapBases.add(basis);
         }
     };
+    private final List<LightmapBasis> lightmapBases = new ArrayList<>();
 
     private long memoryUsage = 0;
     private BakedLighting.Status status = BakedLighting.dummyStatus();
@@ -133,6 +214,9 @@ public class Game {
     private float sunIntensity = 1f;
     private boolean interiorEnabled = true;
     private boolean sunEnabled = true;
+    private int interiorColorIndex = 0;
+    private float lastPixelToWorldRatio = 0f;
+    private Geometry monkey = null;
 
     private boolean bakeWindowOpen = false;
 
@@ -190,6 +274,7 @@ public class Game {
         }
         Geometry monkey = new Geometry(Geometries.GARAGE[Geometries.GARAGE.length - 1]);
         this.scene.getGeometries().add(monkey);
+        this.monkey = monkey;
 
         Geometry ciencola = new Geometry(Geometries.CIENCOLA);
         this.scene.getGeometries().add(ciencola);
@@ -238,6 +323,9 @@ public class Game {
         this.scene.setSamplingMode(SamplingMode.SAMPLE_16);
 
         this.scene.setFastModeEnabled(false);
+        this.scene.setRelightingEnabled(true);
+        this.scene.setBakeCache(new BakeCache(512L * 1024L * 1024L));
+        this.scene.setLightmapCache(new LightmapCache(Path.of("cache", "lightmaps")));
 
         Scene.PointLight point = new Scene.PointLight();
         point.setPosition(0f, 2f, 6f);
@@ -417,7 +505,11 @@ public class Game {
                 .append("ESC - Move Camera\n")
                 .append("I - Toggle Interior Lights\n")
                 .append("F - Toggle Sun\n")
+                .append("C - Change Interior Lights Color\n")
+                .append("M - Move Monkey and Rebake Affected Lightmaps\n")
                 .append("R - Bake Lightmap\n")
+                .append("P - Pause/Resume Bake\n")
+                .append("X - Cancel Bake\n")
                 .append(this.status.getASCIIProgressBar()).append('\n')
                 .append(this.status.getCurrentStatus()).append('\n')
                 .append(this.status.getRaysPerSecondFormatted()).append('\n')
@@ -441,10 +533,12 @@ public class Game {
         for (Geometry geo : this.scene.getGeometries()) {
             if (geo.getLightmapTextureHint() != Textures.EMPTY_LIGHTMAP) {
                 glDeleteTextures(geo.getLightmapTextureHint());
+                SoftwareTextures.remove(geo.getLightmapTextureHint());
                 geo.setLightmapTextureHint(Textures.EMPTY_LIGHTMAP);
             }
         }
         this.memoryUsage = 0;
+        this.lightmapBases.clear();
 
         try {
             //config
@@ -498,11 +592,46 @@ public class Game {
             this.scene.setIndirectLightReflectionFactor(reflectionFactor);
 
             this.status = BakedLighting.bake(this.writeToTexture, this.scene, pixelToWorldRatio);
+            this.lastPixelToWorldRatio = pixelToWorldRatio;
         } catch (ParseException ex) {
             throw new RuntimeException(ex);
         }
     }
 
+    public void rebakeMoved(Geometry geometry, Matrix4fc oldModel) {
+        if (!this.status.isDone() || this.lastPixelToWorldRatio <= 0f) {
+            return;
+        }
+        BakeDependencies dependencies = BakeDependencies.moved(this.scene, geometry, oldModel);
+        if (dependencies.isEmpty()) {
+            return;
+        }
+        this.status = BakedLighting.bake(this.writeToTexture, this.scene, this.lastPixelToWorldRatio, dependencies);
+    }
+
+    public void relight() {
+        for (LightmapBasis basis : this.lightmapBases) {
+            int texture = basis.getGeometry().getLightmapTextureHint();
+            if (texture == Textures.EMPTY_LIGHTMAP) {
+                continue;
+            }
+            int size = basis.getLightmapSize();
+            float[] lightmap = new float[size * size * 3];
+
+            glActiveTexture(GL_TEXTURE0);
+            glBindTexture(GL_TEXTURE_2D_ARRAY, texture);
+            for (int i = 0; i < basis.getGroups().length; i++) {
+                basis.recompose(i, lightmap);
+                glTexSubImage3D(
+                        GL_TEXTURE_2D_ARRAY, 0,
+                        0, 0, i,
+                        size, size, 1,
+                        GL_RGB, GL_FLOAT, lightmap);
+            }
+            glBindTexture(GL_TEXTURE_2D_ARRAY, 0);
+        }
+    }
+
     public void mouseCursorMoved(double x, double y) {
         camera.mouseCursorMoved(x, y);
     }
@@ -570,6 +699,31 @@ public class Game {
         if (key == GLFW_KEY_F && action == GLFW_PRESS) {
             this.sunEnabled = !this.sunEnabled;
         }
+        if (key == GLFW_KEY_M && action == GLFW_PRESS && this.status.isDone() && this.lastPixelToWorldRatio > 0f) {
+            Matrix4f oldModel = new Matrix4f(this.monkey.getModel());
+            this.monkey.setModel(new Matrix4f().translate(0.5f, 0f, 0f).mul(oldModel));
+            rebakeMoved(this.monkey, oldModel);
+        }
+        if (key == GLFW_KEY_C && action == GLFW_PRESS && this.status.isDone()) {
+            this.interiorColorIndex = (this.interiorColorIndex + 1) % INTERIOR_COLORS.length;
+            float[] color = INTERIOR_COLORS[this.interiorColorIndex];
+            for (Scene.Light light : this.scene.getLights()) {
+                if (light.getGroupName().equals("interior")) {
+                    light.setDiffuse(color[0], color[1], color[2]);
+                }
+            }
+            relight();
+        }
+        if (key == GLFW_KEY_P && action == GLFW_PRESS && !this.status.isDone()) {
+            if (this.status.isPaused()) {
+                this.status.resume();
+            } else {
+                this.status.pause();
+            }
+        }
+        if (key == GLFW_KEY_X && action == GLFW_PRESS && !this.status.isDone()) {
+            this.status.cancel();
+        }
     }
 
     public void mouseCallback(long window, int button, int action, int mods) {
@@ -0,0 +1,331 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <https://unlicense.org>
+ */
+package cientistavuador.bakedlighting;
+
+import cientistavuador.bakedlighting.geometry.Geometry;
+import cientistavuador.bakedlighting.natives.NativesExtractor;
+import cientistavuador.bakedlighting.resources.mesh.MeshData;
+import cientistavuador.bakedlighting.util.BakeCache;
+import cientistavuador.bakedlighting.util.BakeCoordinator;
+import cientistavuador.bakedlighting.util.BakeResources;
+import cientistavuador.bakedlighting.util.BakeService;
+import cientistavuador.bakedlighting.util.BakeWorker;
+import cientistavuador.bakedlighting.util.BakedLighting;
+import cientistavuador.bakedlighting.util.LightmapFileOutput;
+import cientistavuador.bakedlighting.util.Scene;
+import cientistavuador.bakedlighting.util.SceneDescription;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Bakes a scene description without a window or an OpenGL context.
+ *
+ * @author Cien
+ */
+public class HeadlessBake {
+
+    static {
+        Locale.setDefault(Locale.US);
+        System.setProperty("java.awt.headless", "true");
+
+        String osName = System.getProperty("os.name");
+        System.out.println("Running on " + osName);
+
+        if (osName.contains("nix") || osName.contains("nux") || osName.contains("aix")) {
+            NativesExtractor.extractLinux();
+        } else if (osName.contains("mac")) {
+            NativesExtractor.extractMacOS();
+        }
+    }
+
+    private static String formatTime(long millis) {
+        return String.format("%.3fs", millis / 1000.0);
+    }
+
+    private static void runWorker(String port, String address) {
+        BakeWorker worker;
+        try {
+            if (address != null) {
+                worker = new BakeWorker(InetAddress.getByName(address), Integer.parseInt(port));
+            } else {
+                worker = new BakeWorker(Integer.parseInt(port));
+            }
+        } catch (IOException | NumberFormatException ex) {
+            System.out.println("Failed to start bake worker on port '" + port + "':");
+            ex.printStackTrace(System.out);
+            System.exit(1);
+            return;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(worker::close));
+        System.out.println("Bake worker listening on port " + worker.getPort());
+        worker.run();
+    }
+
+    private static void runService(String port, String threads) {
+        BakeService service;
+        try {
+            service = new BakeService(
+                    Integer.parseInt(port),
+                    (threads != null ? Integer.parseInt(threads) : Runtime.getRuntime().availableProcessors()),
+                    new BakeResources(BakeService.DEFAULT_MAX_MESHES, BakeService.DEFAULT_MAX_TEXTURES)
+            );
+        } catch (IOException | NumberFormatException ex) {
+            System.out.println("Failed to start bake service on port '" + port + "':");
+            ex.printStackTrace(System.out);
+            System.exit(1);
+            return;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(service::close));
+        service.start();
+        System.out.println("Bake service listening on http://127.0.0.1:" + service.getPort() + "/jobs");
+        while (true) {
+            try {
+                Thread.sleep(Long.MAX_VALUE);
+            } catch (InterruptedException ex) {
+                return;
+            }
+        }
+    }
+
+    private static class CapturedOutput implements BakedLighting.BakedLightingOutput {
+
+        private final List<float[]> lightmaps = new ArrayList<>();
+
+        @Override
+        public void prepare(Geometry geometry, MeshData.LightmapMesh mesh, int lightmapSize, String[] groups) {
+
+        }
+
+        @Override
+        public void write(float[] lightmap, int groupIndex) {
+            this.lightmaps.add(lightmap.clone());
+        }
+    }
+
+    private static long benchmarkBake(SceneDescription description, Scene.IndirectEngine engine, CapturedOutput output) throws InterruptedException, ExecutionException {
+        description.getScene().setIndirectEngine(engine);
+        long start = System.currentTimeMillis();
+        BakedLighting.Status status = BakedLighting.bake(
+                output,
+                description.getScene(),
+                description.getPixelToWorldRatio(),
+                null,
+                Runnable::run,
+                description.getTextures()
+        );
+        status.waitForCompletion();
+        long time = System.currentTimeMillis() - start;
+        if (status.hasError()) {
+            status.throwException();
+        }
+        return time;
+    }
+
+    private static double relativeDifference(CapturedOutput reference, CapturedOutput other) {
+        double difference = 0.0;
+        double total = 0.0;
+        for (int i = 0; i < Math.min(reference.lightmaps.size(), other.lightmaps.size()); i++) {
+            float[] a = reference.lightmaps.get(i);
+            float[] b = other.lightmaps.get(i);
+            for (int j = 0; j < Math.min(a.length, b.length); j++) {
+                double d = a[j] - b[j];
+                difference += d * d;
+                total += ((double) a[j]) * a[j];
+            }
+        }
+        return (total > 0.0 ? Math.sqrt(difference / total) : 0.0);
+    }
+
+    private static void runIndirectBenchmark(String[] args) {
+        for (int i = 1; i < args.length; i++) {
+            Path descriptionFile = Path.of(args[i]);
+            try {
+                SceneDescription description = SceneDescription.read(descriptionFile);
+                Scene scene = description.getScene();
+                scene.setBakeCache(null);
+                scene.setLightmapCache(null);
+                scene.setBakeCheckpoint(null);
+                if (scene.getBakeCoordinator() != null) {
+                    scene.getBakeCoordinator().close();
+                    scene.setBakeCoordinator(null);
+                }
+
+                CapturedOutput traced = new CapturedOutput();
+                long tracedTime = benchmarkBake(description, Scene.IndirectEngine.PATH_TRACING, traced);
+                CapturedOutput hemicube = new CapturedOutput();
+                long hemicubeTime = benchmarkBake(description, Scene.IndirectEngine.HEMICUBE, hemicube);
+
+                System.out.println(descriptionFile + ": path tracing " + formatTime(tracedTime)
+                        + ", hemicube " + formatTime(hemicubeTime)
+                        + String.format(" (%.2fx), relative rms difference %.2f%%",
+                                tracedTime / (double) Math.max(hemicubeTime, 1L),
+                                relativeDifference(traced, hemicube) * 100.0
+                        ));
+            } catch (IOException | ExecutionException ex) {
+                System.out.println("Failed to benchmark '" + descriptionFile + "':");
+                ex.printStackTrace(System.out);
+                System.exit(1);
+                return;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        System.exit(0);
+    }
+
+    /**
+     * @param args the scene description file and the output directory,
+     * --worker, a port and the bind address, --service, a port and the amount of threads or
+     * --benchmark-indirect and scene description files
+     */
+    public static void main(String[] args) {
+        if ((args.length == 2 || args.length == 3) && args[0].equals("--worker")) {
+            runWorker(args[1], (args.length == 3 ? args[2] : null));
+            return;
+        }
+        if ((args.length == 2 || args.length == 3) && args[0].equals("--service")) {
+            runService(args[1], (args.length == 3 ? args[2] : null));
+            return;
+        }
+        if (args.length >= 2 && args[0].equals("--benchmark-indirect")) {
+            runIndirectBenchmark(args);
+            return;
+        }
+        if (args.length < 1) {
+            System.out.println("Usage: HeadlessBake <scene description> [output directory]");
+            System.out.println("       HeadlessBake --worker <port> [bind address]");
+            System.out.println("       HeadlessBake --service <port> [threads]");
+            System.out.println("       HeadlessBake --benchmark-indirect <scene description>...");
+            System.exit(2);
+            return;
+        }
+        Path descriptionFile = Path.of(args[0]);
+        Path outputDirectory = Path.of(args.length > 1 ? args[1] : "lightmaps");
+
+        long loadStart = System.currentTimeMillis();
+        SceneDescription description;
+        try {
+            description = SceneDescription.read(descriptionFile);
+        } catch (Throwable t) {
+            System.out.println("Failed to read scene description '" + descriptionFile + "':");
+            t.printStackTrace(System.out);
+            System.exit(1);
+            return;
+        }
+        long loadTime = System.currentTimeMillis() - loadStart;
+
+        System.out.println("Loaded " + description.getScene().getGeometries().size() + " geometries, "
+                + description.getScene().getLights().size() + " lights and "
+                + description.getTextures().size() + " textures in " + formatTime(loadTime));
+
+        LightmapFileOutput output = new LightmapFileOutput(outputDirectory);
+
+        long bakeStart = System.currentTimeMillis();
+        BakedLighting.Status status = BakedLighting.bake(
+                output,
+                description.getScene(),
+                description.getPixelToWorldRatio(),
+                null,
+                Runnable::run,
+                description.getTextures()
+        );
+
+        Thread shutdownHook = new Thread(() -> {
+            if (status.isDone()) {
+                return;
+            }
+            System.out.println("Cancelling bake...");
+            status.cancel();
+            while (!status.isDone()) {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException ex) {
+                    return;
+                }
+            }
+        });
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+
+        String lastStatus = null;
+        while (!status.isDone()) {
+            String currentStatus = status.getCurrentStatus();
+            if (!currentStatus.equals(lastStatus)) {
+                System.out.println(status.getASCIIProgressBar() + " " + currentStatus);
+                lastStatus = currentStatus;
+            }
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        long bakeTime = System.currentTimeMillis() - bakeStart;
+
+        BakeCoordinator coordinator = description.getScene().getBakeCoordinator();
+        if (coordinator != null) {
+            coordinator.close();
+        }
+
+        if (status.isCancelled()) {
+            System.out.println("Bake cancelled after " + formatTime(bakeTime) + ".");
+            System.exit(130);
+            return;
+        }
+
+        if (status.hasError()) {
+            System.out.println("Bake failed after " + formatTime(bakeTime) + ":");
+            try {
+                status.throwException();
+            } catch (ExecutionException ex) {
+                ex.getCause().printStackTrace(System.out);
+            }
+            System.exit(1);
+            return;
+        }
+
+        System.out.println("Bake finished.");
+        System.out.println("Load time: " + formatTime(loadTime));
+        System.out.println("Bake time: " + formatTime(bakeTime));
+        System.out.println("Lightmaps written: " + output.getFiles() + " (" + output.getTexels() + " texels, " + output.getBytes() + " bytes) to " + outputDirectory.toAbsolutePath());
+        if (bakeTime > 0) {
+            System.out.println(String.format("Texels per second: %,.2f", (output.getTexels() / (double) bakeTime) * 1000.0));
+        }
+        BakeCache cache = description.getScene().getBakeCache();
+        if (cache != null) {
+            System.out.println("Bake cache: " + cache.getHits() + " hits, " + cache.getMisses() + " misses");
+        }
+        System.exit(0);
+    }
+
+}
@@ -123,10 +123,12 @@ public class Geometry {
     private final Matrix3f normalModel = new Matrix3f();
     private final Matrix3f inverseNormalModel = new Matrix3f();
 
-    private int lightmapTextureHint = Textures.EMPTY_LIGHTMAP;
+    private int lightmapTextureHint = 0;
+    private boolean lightmapTextureHintSet = false;
     private MeshData.LightmapMesh lightmapMesh = null;
 
     private float lightmapScale = 1f;
+    private int materialIndex = 0;
 
     public Geometry(MeshData mesh) {
         this.mesh = mesh;
@@ -160,11 +162,15 @@ public class Geometry {
     }
 
     public int getLightmapTextureHint() {
+        if (!this.lightmapTextureHintSet) {
+            return Textures.EMPTY_LIGHTMAP;
+        }
         return lightmapTextureHint;
     }
 
     public void setLightmapTextureHint(int lightmapTextureHint) {
         this.lightmapTextureHint = lightmapTextureHint;
+        this.lightmapTextureHintSet = true;
     }
 
     public MeshData.LightmapMesh getLightmapMesh() {
@@ -183,4 +189,12 @@ public class Geometry {
         this.lightmapScale = lightmapScale;
     }
 
+    public int getMaterialIndex() {
+        return materialIndex;
+    }
+
+    public void setMaterialIndex(int materialIndex) {
+        this.materialIndex = materialIndex;
+    }
+
 }
@@ -26,6 +26,7 @@
  */
 package cientistavuador.bakedlighting.resources.image;
 
+import cientistavuador.bakedlighting.texture.SoftwareTextures;
 import java.nio.ByteBuffer;
 import static org.lwjgl.opengl.EXTTextureFilterAnisotropic.GL_MAX_TEXTURE_MAX_ANISOTROPY_EXT;
 import static org.lwjgl.opengl.EXTTextureFilterAnisotropic.GL_TEXTURE_MAX_ANISOTROPY_EXT;
@@ -87,6 +88,7 @@ public class NativeImage {
         throwExceptionIfFreed();
         if (this.texture != 0) {
             glDeleteTextures(this.texture);
+            SoftwareTextures.remove(this.texture);
         }
         this.texture = glGenTextures();
         glActiveTexture(GL_TEXTURE0);
@@ -156,6 +158,7 @@ public class NativeImage {
         MemoryUtil.memFree(this.data);
         if (this.texture != 0) {
             glDeleteTextures(this.texture);
+            SoftwareTextures.remove(this.texture);
         }
         this.freed = true;
     }
@@ -111,6 +111,15 @@ public class MeshData {
             });
         }
 
+        public LightmapMesh(MeshData parent, float worldToPixelRatio, float scaleX, float scaleY, float scaleZ, LightmapUVs.GeneratorOutput output) {
+            this.parent = parent;
+            this.pixelToWorldRatio = worldToPixelRatio;
+            this.scaleX = scaleX;
+            this.scaleY = scaleY;
+            this.scaleZ = scaleZ;
+            this.futureLightmap = CompletableFuture.completedFuture(output);
+        }
+
         public MeshData getParent() {
             return parent;
         }
@@ -216,13 +225,14 @@ public class MeshData {
     private final CompletableFuture<BVH> futureBvh;
 
     private final boolean lightmapSupport;
-    private final List<LightmapMesh> lightmapMeshes = new ArrayList<>();
+    private final List<LightmapMesh> lightmapMeshes;
 
     private BVH bvh = null;
     private int vao = 0;
     private int ebo = 0;
     private int vbo = 0;
-    private int textureHint = Textures.ERROR_TEXTURE;
+    private int textureHint = 0;
+    private boolean textureHintSet = false;
 
     public MeshData(String name, float[] vertices, int[] indices, boolean addLightmapSupport) {
         this.name = name;
@@ -232,6 +242,7 @@ public class MeshData {
             indices = unindexed.getB();
         }
         this.lightmapSupport = addLightmapSupport;
+        this.lightmapMeshes = new ArrayList<>();
         this.vertices = vertices;
         this.indices = indices;
         this.futureBvh = CompletableFuture.supplyAsync(() -> {
@@ -239,6 +250,21 @@ public class MeshData {
         });
     }
 
+    private MeshData(MeshData shared, int textureHint) {
+        this.name = shared.name;
+        this.lightmapSupport = shared.lightmapSupport;
+        this.lightmapMeshes = shared.lightmapMeshes;
+        this.vertices = shared.vertices;
+        this.indices = shared.indices;
+        this.futureBvh = shared.futureBvh;
+        this.textureHint = textureHint;
+        this.textureHintSet = true;
+    }
+
+    public MeshData withTextureHint(int textureHint) {
+        return new MeshData(this, textureHint);
+    }
+
     public String getName() {
         return name;
     }
@@ -310,11 +336,15 @@ public class MeshData {
     }
 
     public int getTextureHint() {
+        if (!this.textureHintSet) {
+            return Textures.ERROR_TEXTURE;
+        }
         return textureHint;
     }
 
     public void setTextureHint(int textureHint) {
         this.textureHint = textureHint;
+        this.textureHintSet = true;
     }
 
     public void bind() {
@@ -394,5 +424,20 @@ public class MeshData {
             return mesh;
         }
     }
+
+    public LightmapMesh addLightmapMesh(float pixelToWorldRatio, float scaleX, float scaleY, float scaleZ, LightmapUVs.GeneratorOutput output) {
+        if (!hasLightmapSupport()) {
+            return null;
+        }
+        synchronized (this.lightmapMeshes) {
+            LightmapMesh mesh = getLightmapMesh(pixelToWorldRatio, scaleX, scaleY, scaleZ);
+            if (mesh != null) {
+                return mesh;
+            }
+            mesh = new LightmapMesh(this, pixelToWorldRatio, scaleX, scaleY, scaleZ, output);
+            this.lightmapMeshes.add(mesh);
+            return mesh;
+        }
+    }
     
 }
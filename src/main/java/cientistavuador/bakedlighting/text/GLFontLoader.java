@@ -29,6 +29,7 @@ package cientistavuador.bakedlighting.text;
 import cientistavuador.bakedlighting.resources.font.Font;
 import cientistavuador.bakedlighting.resources.font.FontCharacter;
 import cientistavuador.bakedlighting.resources.font.FontResources;
+import cientistavuador.bakedlighting.texture.SoftwareTextures;
 import static java.lang.Math.ceil;
 import static java.lang.Math.log;
 import static java.lang.Math.pow;
@@ -171,9 +172,11 @@ public class GLFontLoader {
             } catch (InterruptedException | ExecutionException ex) {
                 for (int i = 0; i < index; i++) {
                     glDeleteTextures(fontAtlasBoundsTextures[i]);
+                    SoftwareTextures.remove(fontAtlasBoundsTextures[i]);
                 }
                 for (int i = 0; i < fontAtlasTextures.length; i++) {
                     glDeleteTextures(fontAtlasTextures[i]);
+                    SoftwareTextures.remove(fontAtlasTextures[i]);
                 }
                 for (Font f : result) {
                     f.getAtlasImage().free();
@@ -27,6 +27,7 @@
 package cientistavuador.bakedlighting.texture;
 
 import cientistavuador.bakedlighting.Main;
+import cientistavuador.bakedlighting.util.SoftwareTexture;
 import org.lwjgl.opengl.GL;
 import static org.lwjgl.opengl.GL33C.*;
 import org.lwjgl.opengl.KHRDebug;
@@ -67,6 +68,8 @@ public class Textures {
         }
 
         glBindTexture(GL_TEXTURE_2D, 0);
+
+        SoftwareTextures.register(WHITE_TEXTURE, SoftwareTexture.EMPTY);
         
         int blackPixel = 0x00_00_00_FF;
         int pinkPixel = 0xFF_00_FF_FF;
@@ -111,6 +114,8 @@ public class Textures {
         }
         
         glBindTexture(GL_TEXTURE_2D, 0);
+
+        SoftwareTextures.register(ERROR_TEXTURE, SoftwareTexture.fromPixels(emptyTextureSize, emptyTextureSize, emptyTexturePixels));
     }
 
     public static final int BRICKS;
@@ -29,6 +29,8 @@ package cientistavuador.bakedlighting.texture;
 import cientistavuador.bakedlighting.Main;
 import cientistavuador.bakedlighting.resources.image.ImageResources;
 import cientistavuador.bakedlighting.resources.image.NativeImage;
+import cientistavuador.bakedlighting.util.Pair;
+import cientistavuador.bakedlighting.util.SoftwareTexture;
 import java.util.ArrayDeque;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
@@ -60,8 +62,9 @@ public class TexturesLoader {
             System.out.println("Loading textures...");
         }
 
-        ArrayDeque<Future<NativeImage>> futureDatas = new ArrayDeque<>();
+        ArrayDeque<Future<Pair<NativeImage, SoftwareTexture>>> futureDatas = new ArrayDeque<>();
         NativeImage[] images = new NativeImage[names.length];
+        SoftwareTexture[] softwareTextures = new SoftwareTexture[names.length];
 
         for (int i = 0; i < images.length; i++) {
             final int index = i;
@@ -73,16 +76,18 @@ public class TexturesLoader {
                 if (DEBUG_OUTPUT) {
                     System.out.println("Finished loading texture '" + names[index] + "' with index " + index + ", " + e.getWidth() + "x" + e.getHeight());
                 }
-                return e;
+                return new Pair<>(e, SoftwareTexture.fromNativeImage(e));
             }));
         }
 
-        Future<NativeImage> future;
+        Future<Pair<NativeImage, SoftwareTexture>> future;
         int index = 0;
         RuntimeException exception = null;
         while ((future = futureDatas.poll()) != null) {
             try {
-                images[index] = future.get();
+                Pair<NativeImage, SoftwareTexture> pair = future.get();
+                images[index] = pair.getA();
+                softwareTextures[index] = pair.getB();
                 index++;
             } catch (InterruptedException | ExecutionException ex) {
                 exception = new RuntimeException(ex);
@@ -135,6 +140,8 @@ public class TexturesLoader {
             
             glBindTexture(GL_TEXTURE_2D, 0);
 
+            SoftwareTextures.register(texture, softwareTextures[i]);
+
             textures[i] = texture;
             if (DEBUG_OUTPUT) {
                 System.out.println("Finished sending texture '" + names[i] + "', index " + i + " to the gpu with object id " + texture + ".");
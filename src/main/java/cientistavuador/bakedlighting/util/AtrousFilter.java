@@ -0,0 +1,174 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <https://unlicense.org>
+ */
+package cientistavuador.bakedlighting.util;
+
+/**
+ * Edge-avoiding a-trous wavelet filter over a lightmap. Every pass applies
+ * a 5x5 B3 spline kernel with holes of 2^pass texels, so large radii are
+ * reached in a few passes; taps are rejected across charts and weighted down
+ * across normal and plane discontinuities of the lightmap surface.
+ *
+ * @author Cien
+ */
+public class AtrousFilter {
+
+    public static final int TILE_SIZE = 64;
+    public static final float NORMAL_POWER = 64f;
+    public static final float PLANE_SIGMA = 1f;
+
+    private static final float[] KERNEL = {
+        1f / 16f, 1f / 4f, 3f / 8f, 1f / 4f, 1f / 16f
+    };
+
+    public static int passesFor(float area) {
+        float variance = (area * area) * 0.5f;
+        int passes = 1;
+        float passesVariance = 1f;
+        while (passesVariance < variance && passes < 8) {
+            passesVariance += (float) Math.pow(4.0, passes);
+            passes++;
+        }
+        return passes;
+    }
+
+    private final int width;
+    private final int height;
+    private final int[] charts;
+    private final float[] positions;
+    private final float[] normals;
+    private final float texelSize;
+    private final int tilesX;
+    private final int tilesY;
+
+    public AtrousFilter(int width, int height, int[] charts, float[] positions, float[] normals, float texelSize) {
+        if (charts.length != width * height) {
+            throw new IllegalArgumentException("Expected " + (width * height) + " charts, found " + charts.length);
+        }
+        if (positions.length != width * height * 3 || normals.length != width * height * 3) {
+            throw new IllegalArgumentException("Expected " + (width * height * 3) + " position and normal components.");
+        }
+        this.width = width;
+        this.height = height;
+        this.charts = charts;
+        this.positions = positions;
+        this.normals = normals;
+        this.texelSize = texelSize;
+        this.tilesX = (width + TILE_SIZE - 1) / TILE_SIZE;
+        this.tilesY = (height + TILE_SIZE - 1) / TILE_SIZE;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getAmountOfTiles() {
+        return this.tilesX * this.tilesY;
+    }
+
+    public void filterTile(int tile, int pass, int channels, float[] input, float[] output) {
+        int step = 1 << pass;
+        int minX = (tile % this.tilesX) * TILE_SIZE;
+        int minY = (tile / this.tilesX) * TILE_SIZE;
+        int maxX = Math.min(minX + TILE_SIZE, this.width);
+        int maxY = Math.min(minY + TILE_SIZE, this.height);
+
+        float[] sum = new float[channels];
+        for (int y = minY; y < maxY; y++) {
+            for (int x = minX; x < maxX; x++) {
+                int center = x + (y * this.width);
+                int chart = this.charts[center];
+                if (chart < 0) {
+                    continue;
+                }
+
+                float px = this.positions[(center * 3) + 0];
+                float py = this.positions[(center * 3) + 1];
+                float pz = this.positions[(center * 3) + 2];
+                float nx = this.normals[(center * 3) + 0];
+                float ny = this.normals[(center * 3) + 1];
+                float nz = this.normals[(center * 3) + 2];
+
+                for (int c = 0; c < channels; c++) {
+                    sum[c] = 0f;
+                }
+                float weightSum = 0f;
+                for (int ky = 0; ky < KERNEL.length; ky++) {
+                    int offsetY = (ky - (KERNEL.length / 2)) * step;
+                    int sy = y + offsetY;
+                    if (sy < 0 || sy >= this.height) {
+                        continue;
+                    }
+                    for (int kx = 0; kx < KERNEL.length; kx++) {
+                        int offsetX = (kx - (KERNEL.length / 2)) * step;
+                        int sx = x + offsetX;
+                        if (sx < 0 || sx >= this.width) {
+                            continue;
+                        }
+                        int other = sx + (sy * this.width);
+                        if (this.charts[other] != chart) {
+                            continue;
+                        }
+
+                        float weight = KERNEL[kx] * KERNEL[ky];
+                        if (other != center) {
+                            float normalDot = (nx * this.normals[(other * 3) + 0])
+                                    + (ny * this.normals[(other * 3) + 1])
+                                    + (nz * this.normals[(other * 3) + 2]);
+                            if (normalDot <= 0f) {
+                                continue;
+                            }
+                            weight *= (float) Math.pow(normalDot, NORMAL_POWER);
+
+                            float planeDistance = Math.abs(
+                                    (nx * (this.positions[(other * 3) + 0] - px))
+                                    + (ny * (this.positions[(other * 3) + 1] - py))
+                                    + (nz * (this.positions[(other * 3) + 2] - pz))
+                            );
+                            float distance = (float) Math.sqrt((offsetX * offsetX) + (offsetY * offsetY));
+                            weight *= (float) Math.exp(-planeDistance / (PLANE_SIGMA * distance * this.texelSize));
+                        }
+
+                        for (int c = 0; c < channels; c++) {
+                            sum[c] += input[(other * channels) + c] * weight;
+                        }
+                        weightSum += weight;
+                    }
+                }
+
+                float inverseWeightSum = 1f / weightSum;
+                for (int c = 0; c < channels; c++) {
+                    output[(center * channels) + c] = sum[c] * inverseWeightSum;
+                }
+            }
+        }
+    }
+
+}
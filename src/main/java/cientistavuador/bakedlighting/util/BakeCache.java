@@ -0,0 +1,179 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <https://unlicense.org>
+ */
+package cientistavuador.bakedlighting.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ *
+ * @author Cien
+ */
+public class BakeCache {
+
+    private static final int MAGIC = 0x424B4301;
+
+    private final long memoryBudget;
+    private final Path directory;
+    private final LinkedHashMap<String, float[]> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryUsage = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+
+    public BakeCache(long memoryBudget) {
+        this(memoryBudget, null);
+    }
+
+    public BakeCache(long memoryBudget, Path directory) {
+        this.memoryBudget = memoryBudget;
+        this.directory = directory;
+    }
+
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public synchronized long getMemoryUsage() {
+        return memoryUsage;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    private Path file(String key) {
+        return this.directory.resolve(key + ".bin");
+    }
+
+    private void putInMemory(String key, float[] data) {
+        float[] old = this.memory.put(key, data);
+        if (old != null) {
+            this.memoryUsage -= old.length * 4L;
+        }
+        this.memoryUsage += data.length * 4L;
+
+        Iterator<Map.Entry<String, float[]>> it = this.memory.entrySet().iterator();
+        while (this.memoryUsage > this.memoryBudget && it.hasNext()) {
+            Map.Entry<String, float[]> e = it.next();
+            if (e.getKey().equals(key)) {
+                continue;
+            }
+            this.memoryUsage -= e.getValue().length * 4L;
+            it.remove();
+        }
+    }
+
+    private float[] readFromDisk(String key) {
+        if (this.directory == null) {
+            return null;
+        }
+        Path path = file(key);
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new InflaterInputStream(Files.newInputStream(path))))) {
+            if (in.readInt() != MAGIC) {
+                return null;
+            }
+            float[] data = new float[in.readInt()];
+            for (int i = 0; i < data.length; i++) {
+                data[i] = in.readFloat();
+            }
+            return data;
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    private void writeToDisk(String key, float[] data) {
+        if (this.directory == null) {
+            return;
+        }
+        try {
+            Files.createDirectories(this.directory);
+            Path temp = Files.createTempFile(this.directory, key, ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new DeflaterOutputStream(Files.newOutputStream(temp), new Deflater(Deflater.BEST_SPEED))))) {
+                out.writeInt(MAGIC);
+                out.writeInt(data.length);
+                for (float f : data) {
+                    out.writeFloat(f);
+                }
+            }
+            Files.move(temp, file(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    public synchronized float[] get(String key) {
+        float[] data = this.memory.get(key);
+        if (data == null) {
+            data = readFromDisk(key);
+            if (data != null) {
+                putInMemory(key, data);
+            }
+        }
+        if (data == null) {
+            this.misses++;
+        } else {
+            this.hits++;
+        }
+        return data;
+    }
+
+    public synchronized void put(String key, float[] data) {
+        putInMemory(key, data);
+        writeToDisk(key, data);
+    }
+
+    public synchronized void clear() {
+        this.memory.clear();
+        this.memoryUsage = 0;
+    }
+
+}
@@ -0,0 +1,178 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <https://unlicense.org>
+ */
+package cientistavuador.bakedlighting.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * On disk bake progress, completed light components and lightmap groups are
+ * kept in its caches and the light being baked is periodically saved as a
+ * partial state.
+ *
+ * @author Cien
+ */
+public class BakeCheckpoint {
+
+    private static final int MAGIC = 0x424B4350;
+
+    public static class Partial {
+
+        private final int completedLines;
+        private final float[][] buffers;
+
+        public Partial(int completedLines, float[][] buffers) {
+            this.completedLines = completedLines;
+            this.buffers = buffers;
+        }
+
+        public int getCompletedLines() {
+            return completedLines;
+        }
+
+        public float[][] getBuffers() {
+            return buffers;
+        }
+
+    }
+
+    private final Path directory;
+    private final long interval;
+    private final BakeCache bakeCache;
+    private final LightmapCache lightmapCache;
+
+    private long lastWrite = System.currentTimeMillis();
+
+    public BakeCheckpoint(Path directory) {
+        this(directory, 60000);
+    }
+
+    public BakeCheckpoint(Path directory, long interval) {
+        this.directory = directory;
+        this.interval = interval;
+        this.bakeCache = new BakeCache(256L * 1024L * 1024L, directory.resolve("components"));
+        this.lightmapCache = new LightmapCache(directory.resolve("lightmaps"));
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public long getInterval() {
+        return interval;
+    }
+
+    public BakeCache getBakeCache() {
+        return bakeCache;
+    }
+
+    public LightmapCache getLightmapCache() {
+        return lightmapCache;
+    }
+
+    public boolean isDue() {
+        return (System.currentTimeMillis() - this.lastWrite) >= this.interval;
+    }
+
+    private Path partialFile() {
+        return this.directory.resolve("partial.bin");
+    }
+
+    public synchronized void writePartial(String key, int completedLines, float[]... buffers) {
+        try {
+            Files.createDirectories(this.directory);
+            Path temp = Files.createTempFile(this.directory, "partial", ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new DeflaterOutputStream(Files.newOutputStream(temp), new Deflater(Deflater.BEST_SPEED))))) {
+                out.writeInt(MAGIC);
+                out.writeUTF(key);
+                out.writeInt(completedLines);
+                out.writeInt(buffers.length);
+                for (float[] buffer : buffers) {
+                    if (buffer == null) {
+                        out.writeInt(-1);
+                        continue;
+                    }
+                    out.writeInt(buffer.length);
+                    for (float f : buffer) {
+                        out.writeFloat(f);
+                    }
+                }
+            }
+            Files.move(temp, partialFile(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+        this.lastWrite = System.currentTimeMillis();
+    }
+
+    public synchronized Partial readPartial(String key) {
+        Path path = partialFile();
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new InflaterInputStream(Files.newInputStream(path))))) {
+            if (in.readInt() != MAGIC || !in.readUTF().equals(key)) {
+                return null;
+            }
+            int completedLines = in.readInt();
+            float[][] buffers = new float[in.readInt()][];
+            for (int i = 0; i < buffers.length; i++) {
+                int length = in.readInt();
+                if (length < 0) {
+                    continue;
+                }
+                float[] buffer = new float[length];
+                for (int j = 0; j < buffer.length; j++) {
+                    buffer[j] = in.readFloat();
+                }
+                buffers[i] = buffer;
+            }
+            return new Partial(completedLines, buffers);
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    public synchronized void clearPartial() {
+        try {
+            Files.deleteIfExists(partialFile());
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+        this.lastWrite = System.currentTimeMillis();
+    }
+
+}
@@ -0,0 +1,349 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <https://unlicense.org>
+ */
+package cientistavuador.bakedlighting.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Splits light component bakes into line tiles and distributes them to
+ * {@link BakeWorker}s over sockets.
+ *
+ * @author Cien
+ */
+public class BakeCoordinator {
+
+    public static final int DEFAULT_TILE_LINES = 16;
+
+    @FunctionalInterface
+    public static interface TileCallback {
+
+        public void tile(int lineStart, int lineEnd, float[][] buffers);
+    }
+
+    public static class WorkerException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        public WorkerException(String message) {
+            super(message);
+        }
+    }
+
+    private static class Connection {
+
+        private final InetSocketAddress address;
+        private Socket socket = null;
+        private DataInputStream in = null;
+        private DataOutputStream out = null;
+        private boolean alive = true;
+        private boolean ready = false;
+
+        public Connection(InetSocketAddress address) {
+            this.address = address;
+        }
+
+        public void connect() throws IOException {
+            if (this.socket != null) {
+                return;
+            }
+            this.socket = new Socket();
+            this.socket.connect(this.address, 10000);
+            this.socket.setTcpNoDelay(true);
+            this.in = new DataInputStream(new BufferedInputStream(this.socket.getInputStream(), 65536));
+            this.out = new DataOutputStream(new BufferedOutputStream(this.socket.getOutputStream(), 65536));
+        }
+
+        public void checkStatus() throws IOException {
+            if (this.in.readInt() != BakeWorker.STATUS_OK) {
+                throw new WorkerException("Worker " + this.address + " failed: " + this.in.readUTF());
+            }
+        }
+
+        public void close() {
+            if (this.socket == null) {
+                return;
+            }
+            try {
+                this.out.writeInt(BakeWorker.OP_CLOSE);
+                this.out.flush();
+                this.socket.close();
+            } catch (IOException ex) {
+                //already closed
+            }
+            this.socket = null;
+        }
+    }
+
+    private final List<Connection> connections = new ArrayList<>();
+    private final ExecutorService threads;
+    private final int tileLines;
+
+    private String jobId = null;
+
+    public BakeCoordinator(List<InetSocketAddress> workers) {
+        this(workers, DEFAULT_TILE_LINES);
+    }
+
+    public BakeCoordinator(List<InetSocketAddress> workers, int tileLines) {
+        if (workers.isEmpty()) {
+            throw new IllegalArgumentException("No workers.");
+        }
+        for (InetSocketAddress address : workers) {
+            this.connections.add(new Connection(address));
+        }
+        this.threads = Executors.newFixedThreadPool(workers.size(), (r) -> {
+            Thread t = new Thread(r, "Bake Coordinator");
+            t.setDaemon(true);
+            return t;
+        });
+        int strip = BakedLighting.TILE_SIZE;
+        this.tileLines = Math.max((tileLines + strip - 1) / strip, 1) * strip;
+    }
+
+    public int getTileLines() {
+        return tileLines;
+    }
+
+    public synchronized int getAliveWorkers() {
+        int alive = 0;
+        for (Connection c : this.connections) {
+            if (c.alive && c.ready) {
+                alive++;
+            }
+        }
+        return alive;
+    }
+
+    private void prepare(Connection c, BakeJob job) throws IOException {
+        c.connect();
+
+        List<String> hashes = new ArrayList<>(job.getAssets().keySet());
+        c.out.writeInt(BakeWorker.OP_HAS_ASSETS);
+        c.out.writeInt(hashes.size());
+        for (String hash : hashes) {
+            c.out.writeUTF(hash);
+        }
+        c.out.flush();
+        c.checkStatus();
+        boolean[] found = new boolean[hashes.size()];
+        for (int i = 0; i < found.length; i++) {
+            found[i] = c.in.readBoolean();
+        }
+
+        for (int i = 0; i < found.length; i++) {
+            if (found[i]) {
+                continue;
+            }
+            byte[] data = job.getAssets().get(hashes.get(i));
+            c.out.writeInt(BakeWorker.OP_PUT_ASSET);
+            c.out.writeUTF(hashes.get(i));
+            c.out.writeInt(data.length);
+            c.out.write(data);
+            c.out.flush();
+            c.checkStatus();
+        }
+
+        c.out.writeInt(BakeWorker.OP_OPEN_JOB);
+        c.out.writeUTF(job.getId());
+        c.out.writeInt(job.getHeader().length);
+        c.out.write(job.getHeader());
+        c.out.flush();
+        c.checkStatus();
+    }
+
+    public void prepare(BakeJob job) {
+        List<Future<?>> tasks = new ArrayList<>();
+        for (Connection c : this.connections) {
+            if (!c.alive) {
+                continue;
+            }
+            tasks.add(this.threads.submit(() -> {
+                synchronized (this) {
+                    c.ready = false;
+                }
+                try {
+                    prepare(c, job);
+                    synchronized (this) {
+                        c.ready = true;
+                    }
+                } catch (WorkerException ex) {
+                    System.out.println("Bake worker " + c.address + " rejected the job: " + ex.getMessage());
+                } catch (IOException ex) {
+                    System.out.println("Bake worker " + c.address + " is unavailable: " + ex.getMessage());
+                    synchronized (this) {
+                        c.alive = false;
+                    }
+                    c.close();
+                }
+            }));
+        }
+        waitFor(tasks);
+        if (getAliveWorkers() == 0) {
+            throw new RuntimeException("No bake workers available.");
+        }
+        this.jobId = job.getId();
+    }
+
+    private static float[][] decodeTile(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(BakeJob.decompress(data)));
+        float[][] buffers = new float[in.readInt()][];
+        for (int i = 0; i < buffers.length; i++) {
+            int length = in.readInt();
+            if (length < 0) {
+                continue;
+            }
+            float[] buffer = new float[length];
+            for (int j = 0; j < buffer.length; j++) {
+                buffer[j] = in.readFloat();
+            }
+            buffers[i] = buffer;
+        }
+        return buffers;
+    }
+
+    private float[][] bakeTile(Connection c, int geometry, int group, int light, boolean direct, boolean shadow, boolean indirect, int lineStart, int lineEnd) throws IOException {
+        c.out.writeInt(BakeWorker.OP_BAKE_TILE);
+        c.out.writeUTF(this.jobId);
+        c.out.writeInt(geometry);
+        c.out.writeInt(group);
+        c.out.writeInt(light);
+        c.out.writeBoolean(direct);
+        c.out.writeBoolean(shadow);
+        c.out.writeBoolean(indirect);
+        c.out.writeInt(lineStart);
+        c.out.writeInt(lineEnd);
+        c.out.flush();
+        c.checkStatus();
+        byte[] data = new byte[c.in.readInt()];
+        c.in.readFully(data);
+        return decodeTile(data);
+    }
+
+    public void bakeTiles(
+            int geometry, int group, int light,
+            boolean direct, boolean shadow, boolean indirect,
+            int lineStart, int lightmapSize,
+            TileCallback callback, BooleanSupplier cancelled
+    ) {
+        if (this.jobId == null) {
+            throw new IllegalStateException("No job prepared.");
+        }
+
+        LinkedBlockingDeque<int[]> tiles = new LinkedBlockingDeque<>();
+        for (int y = lineStart; y < lightmapSize; y += this.tileLines) {
+            tiles.add(new int[]{y, Math.min(y + this.tileLines, lightmapSize)});
+        }
+        AtomicInteger remaining = new AtomicInteger(tiles.size());
+        AtomicReference<WorkerException> error = new AtomicReference<>();
+
+        List<Future<?>> tasks = new ArrayList<>();
+        for (Connection c : this.connections) {
+            if (!c.alive || !c.ready) {
+                continue;
+            }
+            tasks.add(this.threads.submit(() -> {
+                while (remaining.get() > 0 && error.get() == null && !cancelled.getAsBoolean()) {
+                    int[] tile;
+                    try {
+                        //a failed worker may still give its tile back
+                        tile = tiles.pollFirst(100, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    if (tile == null) {
+                        continue;
+                    }
+                    float[][] buffers;
+                    try {
+                        buffers = bakeTile(c, geometry, group, light, direct, shadow, indirect, tile[0], tile[1]);
+                    } catch (WorkerException ex) {
+                        tiles.addFirst(tile);
+                        error.compareAndSet(null, ex);
+                        return;
+                    } catch (IOException ex) {
+                        System.out.println("Bake worker " + c.address + " failed: " + ex.getMessage());
+                        tiles.addFirst(tile);
+                        synchronized (this) {
+                            c.alive = false;
+                        }
+                        c.close();
+                        return;
+                    }
+                    synchronized (callback) {
+                        callback.tile(tile[0], tile[1], buffers);
+                    }
+                    remaining.decrementAndGet();
+                }
+            }));
+        }
+        waitFor(tasks);
+
+        if (error.get() != null) {
+            throw error.get();
+        }
+        if (!cancelled.getAsBoolean() && remaining.get() > 0) {
+            throw new RuntimeException("All bake workers failed, " + remaining.get() + " tiles left.");
+        }
+    }
+
+    private static void waitFor(List<Future<?>> tasks) {
+        for (Future<?> f : tasks) {
+            try {
+                f.get();
+            } catch (InterruptedException | ExecutionException ex) {
+                throw new RuntimeException(ex);
+            }
+        }
+    }
+
+    public void close() {
+        for (Connection c : this.connections) {
+            c.close();
+        }
+        this.threads.shutdownNow();
+    }
+
+}
@@ -0,0 +1,186 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <https://unlicense.org>
+ */
+package cientistavuador.bakedlighting.util;
+
+import cientistavuador.bakedlighting.geometry.Geometry;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import org.joml.Matrix4fc;
+import org.joml.Vector3f;
+import org.joml.Vector3fc;
+
+/**
+ *
+ * @author Cien
+ */
+public class BakeDependencies {
+
+    private static boolean intersects(Vector3fc minA, Vector3fc maxA, Vector3fc minB, Vector3fc maxB) {
+        return minA.x() <= maxB.x() && maxA.x() >= minB.x()
+                && minA.y() <= maxB.y() && maxA.y() >= minB.y()
+                && minA.z() <= maxB.z() && maxA.z() >= minB.z();
+    }
+
+    private static void occlusionVolume(
+            Scene.Light light,
+            Vector3fc receiverMin, Vector3fc receiverMax,
+            float sceneDiagonal,
+            Vector3f outMin, Vector3f outMax
+    ) {
+        outMin.set(receiverMin);
+        outMax.set(receiverMax);
+        if (light instanceof Scene.DirectionalLight sun) {
+            //shadow rays leave towards the sun and may spread by the light size per unit travelled
+            Vector3fc toSun = sun.getDirectionNegated();
+            float spread = light.getLightSize() * sceneDiagonal;
+            outMin.set(
+                    receiverMin.x() + Math.min(toSun.x() * sceneDiagonal, 0f) - spread,
+                    receiverMin.y() + Math.min(toSun.y() * sceneDiagonal, 0f) - spread,
+                    receiverMin.z() + Math.min(toSun.z() * sceneDiagonal, 0f) - spread
+            );
+            outMax.set(
+                    receiverMax.x() + Math.max(toSun.x() * sceneDiagonal, 0f) + spread,
+                    receiverMax.y() + Math.max(toSun.y() * sceneDiagonal, 0f) + spread,
+                    receiverMax.z() + Math.max(toSun.z() * sceneDiagonal, 0f) + spread
+            );
+        } else if (light instanceof Scene.PointLight point) {
+            float size = light.getLightSize();
+            outMin.min(new Vector3f(point.getPosition()).sub(size, size, size));
+            outMax.max(new Vector3f(point.getPosition()).add(size, size, size));
+        }
+    }
+
+    public static BakeDependencies moved(Scene scene, Geometry moved, Matrix4fc oldModel) {
+        BakeDependencies dependencies = new BakeDependencies();
+
+        boolean coneCulling = !scene.fillEmptyValuesWithLightColors()
+                && !scene.isFastModeEnabled()
+                && !scene.isIndirectLightingEnabled();
+        boolean indirect = scene.isIndirectLightingEnabled() && !scene.isFastModeEnabled();
+        boolean shadows = scene.isShadowsEnabled();
+
+        Vector3f oldMin = new Vector3f();
+        Vector3f oldMax = new Vector3f();
+        Vector3f newMin = new Vector3f();
+        Vector3f newMax = new Vector3f();
+        LightInfluence.geometryBounds(moved, oldModel, oldMin, oldMax);
+        LightInfluence.geometryBounds(moved, newMin, newMax);
+
+        Vector3f sceneMin = new Vector3f(oldMin).min(newMin);
+        Vector3f sceneMax = new Vector3f(oldMax).max(newMax);
+        Vector3f min = new Vector3f();
+        Vector3f max = new Vector3f();
+        for (Geometry geometry : scene.getGeometries()) {
+            LightInfluence.geometryBounds(geometry, min, max);
+            sceneMin.min(min);
+            sceneMax.max(max);
+        }
+        float sceneDiagonal = sceneMax.distance(sceneMin);
+
+        Vector3f volumeMin = new Vector3f();
+        Vector3f volumeMax = new Vector3f();
+
+        for (Scene.Light light : scene.getLights()) {
+            //the moved geometry receives new lighting wherever the light reaches it, before or after the move
+            if (!LightInfluence.outside(light, oldMin, oldMax, coneCulling)
+                    || !LightInfluence.outside(light, newMin, newMax, coneCulling)) {
+                dependencies.add(moved, light.getGroupName());
+            }
+
+            for (Geometry geometry : scene.getGeometries()) {
+                if (geometry == moved || dependencies.isAffected(geometry, light.getGroupName())) {
+                    continue;
+                }
+
+                LightInfluence.geometryBounds(geometry, min, max);
+                if (LightInfluence.outside(light, min, max, coneCulling)) {
+                    continue;
+                }
+
+                //indirect paths can bounce anywhere in the scene
+                if (indirect) {
+                    dependencies.add(geometry, light.getGroupName());
+                    continue;
+                }
+
+                if (shadows) {
+                    occlusionVolume(light, min, max, sceneDiagonal, volumeMin, volumeMax);
+                    if (intersects(volumeMin, volumeMax, oldMin, oldMax)
+                            || intersects(volumeMin, volumeMax, newMin, newMax)) {
+                        dependencies.add(geometry, light.getGroupName());
+                    }
+                }
+            }
+        }
+
+        return dependencies;
+    }
+
+    private final Map<Geometry, Set<String>> affected = new LinkedHashMap<>();
+
+    public BakeDependencies() {
+
+    }
+
+    public void add(Geometry geometry, String groupName) {
+        Set<String> groups = this.affected.get(geometry);
+        if (groups == null) {
+            groups = new HashSet<>();
+            this.affected.put(geometry, groups);
+        }
+        groups.add(groupName);
+    }
+
+    public void addAll(BakeDependencies other) {
+        for (Map.Entry<Geometry, Set<String>> e : other.affected.entrySet()) {
+            for (String group : e.getValue()) {
+                add(e.getKey(), group);
+            }
+        }
+    }
+
+    public boolean isAffected(Geometry geometry) {
+        return this.affected.containsKey(geometry);
+    }
+
+    public boolean isAffected(Geometry geometry, String groupName) {
+        Set<String> groups = this.affected.get(geometry);
+        return groups != null && groups.contains(groupName);
+    }
+
+    public Set<Geometry> getGeometries() {
+        return Collections.unmodifiableSet(this.affected.keySet());
+    }
+
+    public boolean isEmpty() {
+        return this.affected.isEmpty();
+    }
+
+}
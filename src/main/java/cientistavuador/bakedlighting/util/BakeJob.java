@@ -0,0 +1,464 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <https://unlicense.org>
+ */
+package cientistavuador.bakedlighting.util;
+
+import cientistavuador.bakedlighting.geometry.Geometry;
+import cientistavuador.bakedlighting.resources.mesh.MeshData;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+/**
+ * A scene encoded for bake workers, meshes, textures and lightmap uvs are
+ * content addressed assets so workers only receive what they don't have.
+ *
+ * @author Cien
+ */
+public class BakeJob {
+
+    private static final int MAGIC = 0x424B4A06;
+
+    public static class Decoded {
+
+        private final Scene scene;
+        private final float pixelToWorldRatio;
+        private final Map<Integer, SoftwareTexture> textures;
+
+        public Decoded(Scene scene, float pixelToWorldRatio, Map<Integer, SoftwareTexture> textures) {
+            this.scene = scene;
+            this.pixelToWorldRatio = pixelToWorldRatio;
+            this.textures = textures;
+        }
+
+        public Scene getScene() {
+            return scene;
+        }
+
+        public float getPixelToWorldRatio() {
+            return pixelToWorldRatio;
+        }
+
+        public Map<Integer, SoftwareTexture> getTextures() {
+            return textures;
+        }
+
+    }
+
+    @FunctionalInterface
+    private static interface Writer {
+
+        public void write(DataOutputStream out) throws IOException;
+    }
+
+    public static byte[] compress(byte[] data) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DeflaterOutputStream out = new DeflaterOutputStream(bytes, new Deflater(Deflater.BEST_SPEED))) {
+            out.write(data);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static byte[] decompress(byte[] data) {
+        try (InflaterInputStream in = new InflaterInputStream(new ByteArrayInputStream(data))) {
+            return in.readAllBytes();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private static byte[] encode(Writer writer) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writer.write(out);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeFloats(DataOutputStream out, float[] array) throws IOException {
+        out.writeInt(array.length);
+        for (float f : array) {
+            out.writeFloat(f);
+        }
+    }
+
+    private static float[] readFloats(DataInputStream in) throws IOException {
+        float[] array = new float[in.readInt()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = in.readFloat();
+        }
+        return array;
+    }
+
+    private static int[] readInts(DataInputStream in) throws IOException {
+        int[] array = new int[in.readInt()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = in.readInt();
+        }
+        return array;
+    }
+
+    private static void writeVector(DataOutputStream out, Vector3f vector) throws IOException {
+        out.writeFloat(vector.x());
+        out.writeFloat(vector.y());
+        out.writeFloat(vector.z());
+    }
+
+    private static byte[] encodeMesh(MeshData mesh) {
+        return encode((out) -> {
+            out.writeUTF(mesh.getName());
+            out.writeBoolean(mesh.hasLightmapSupport());
+            writeFloats(out, mesh.getVertices());
+            out.writeInt(mesh.getIndices().length);
+            for (int i : mesh.getIndices()) {
+                out.writeInt(i);
+            }
+        });
+    }
+
+    private static MeshData decodeMesh(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        String name = in.readUTF();
+        boolean lightmapSupport = in.readBoolean();
+        float[] vertices = readFloats(in);
+        int[] indices = readInts(in);
+        return new MeshData(name, vertices, indices, lightmapSupport);
+    }
+
+    private static byte[] encodeTexture(SoftwareTexture texture) {
+        return encode((out) -> {
+            out.writeInt(texture.width());
+            out.writeInt(texture.height());
+            out.writeInt(texture.getWrappingX().ordinal());
+            out.writeInt(texture.getWrappingY().ordinal());
+            float[] color = new float[4];
+            for (int y = 0; y < texture.height(); y++) {
+                for (int x = 0; x < texture.width(); x++) {
+                    texture.fetch(x, y, color, 0);
+                    int r = Math.round(Math.min(Math.max(color[0], 0f), 1f) * 255f);
+                    int g = Math.round(Math.min(Math.max(color[1], 0f), 1f) * 255f);
+                    int b = Math.round(Math.min(Math.max(color[2], 0f), 1f) * 255f);
+                    int a = Math.round(Math.min(Math.max(color[3], 0f), 1f) * 255f);
+                    out.writeInt((r << 24) | (g << 16) | (b << 8) | a);
+                }
+            }
+        });
+    }
+
+    private static SoftwareTexture decodeTexture(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        int width = in.readInt();
+        int height = in.readInt();
+        SoftwareTexture.TextureWrapping wrapX = SoftwareTexture.TextureWrapping.values()[in.readInt()];
+        SoftwareTexture.TextureWrapping wrapY = SoftwareTexture.TextureWrapping.values()[in.readInt()];
+        int[] pixels = new int[width * height];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = in.readInt();
+        }
+        return SoftwareTexture.fromPixels(width, height, pixels, wrapX, wrapY);
+    }
+
+    private static byte[] encodeUVs(LightmapUVs.GeneratorOutput output) {
+        return encode((out) -> {
+            LightmapCache.writeGeneratorOutput(out, output);
+        });
+    }
+
+    private static LightmapUVs.GeneratorOutput decodeUVs(byte[] data) throws IOException {
+        return LightmapCache.readGeneratorOutput(new DataInputStream(new ByteArrayInputStream(data)));
+    }
+
+    public static BakeJob create(Scene scene, float pixelToWorldRatio, Map<Integer, SoftwareTexture> textures, MeshData.LightmapMesh[] lightmapMeshes) {
+        Map<String, byte[]> assets = new LinkedHashMap<>();
+        Map<Object, String> hashes = new HashMap<>();
+        Function<byte[], String> addAsset = (data) -> {
+            String hash = new ContentHash().put(data).finish();
+            assets.putIfAbsent(hash, compress(data));
+            return hash;
+        };
+
+        List<Geometry> geometries = scene.getGeometries();
+        String[] meshHashes = new String[geometries.size()];
+        String[] textureHashes = new String[geometries.size()];
+        String[] uvsHashes = new String[geometries.size()];
+        for (int i = 0; i < geometries.size(); i++) {
+            Geometry geo = geometries.get(i);
+            MeshData mesh = geo.getMesh();
+            SoftwareTexture texture = textures.get(mesh.getTextureHint());
+
+            //textured copies of a mesh share its vertices
+            meshHashes[i] = hashes.computeIfAbsent(mesh.getVertices(), (m) -> addAsset.apply(encodeMesh(mesh)));
+            textureHashes[i] = hashes.computeIfAbsent(texture, (t) -> addAsset.apply(encodeTexture(texture)));
+            MeshData.LightmapMesh lightmapMesh = lightmapMeshes[i];
+            uvsHashes[i] = hashes.computeIfAbsent(lightmapMesh, (l) -> addAsset.apply(encodeUVs(
+                    new LightmapUVs.GeneratorOutput(lightmapMesh.getLightmapSize(), lightmapMesh.getUVs(), lightmapMesh.getQuads())
+            )));
+        }
+
+        byte[] header = encode((out) -> {
+            out.writeInt(MAGIC);
+            out.writeFloat(pixelToWorldRatio);
+            out.writeUTF(scene.getSamplingMode().name());
+            out.writeBoolean(scene.isFastModeEnabled());
+            out.writeBoolean(scene.isSunShadowMapEnabled());
+            out.writeInt(scene.getSunShadowMapResolution());
+            out.writeFloat(scene.getSunShadowMapBias());
+            out.writeBoolean(scene.isRelightingEnabled());
+            out.writeBoolean(scene.isDirectLightingEnabled());
+            out.writeFloat(scene.getDirectLightingAttenuation());
+            out.writeBoolean(scene.isShadowsEnabled());
+            out.writeInt(scene.getShadowRaysPerSample());
+            out.writeFloat(scene.getShadowBlurArea());
+            out.writeBoolean(scene.isIndirectLightingEnabled());
+            out.writeInt(scene.getIndirectRaysPerSample());
+            out.writeFloat(scene.getIndirectAdaptiveThreshold());
+            out.writeInt(scene.getIndirectMaxRaysPerSample());
+            out.writeBoolean(scene.isIrradianceCacheEnabled());
+            out.writeFloat(scene.getIrradianceCacheError());
+            out.writeInt(scene.getIrradianceCacheRays());
+            out.writeUTF(scene.getIndirectEngine().name());
+            out.writeInt(scene.getHemicubeResolution());
+            out.writeInt(scene.getIndirectBounces());
+            out.writeFloat(scene.getIndirectLightingBlurArea());
+            out.writeFloat(scene.getIndirectLightReflectionFactor());
+            out.writeFloat(scene.getRayOffset());
+            out.writeBoolean(scene.fillEmptyValuesWithLightColors());
+            out.writeBoolean(scene.isMedianDenoiserEnabled());
+            out.writeInt(scene.getMedianDenoiserKernelSize());
+            out.writeFloat(scene.getMedianDenoiserTolerance());
+
+            out.writeInt(geometries.size());
+            float[] model = new float[16];
+            for (int i = 0; i < geometries.size(); i++) {
+                Geometry geo = geometries.get(i);
+                out.writeUTF(meshHashes[i]);
+                out.writeUTF(textureHashes[i]);
+                out.writeUTF(uvsHashes[i]);
+                geo.getModel().get(model);
+                for (float f : model) {
+                    out.writeFloat(f);
+                }
+                out.writeFloat(geo.getLightmapScale());
+            }
+
+            out.writeInt(scene.getLights().size());
+            for (Scene.Light light : scene.getLights()) {
+                int type = 0;
+                if (light instanceof Scene.SpotLight) {
+                    type = 2;
+                } else if (light instanceof Scene.PointLight) {
+                    type = 1;
+                }
+                out.writeInt(type);
+                writeVector(out, new Vector3f(light.getDiffuse()));
+                out.writeFloat(light.getLightSize());
+                out.writeUTF(light.getGroupName());
+                if (light instanceof Scene.DirectionalLight sun) {
+                    writeVector(out, new Vector3f(sun.getDirection()));
+                    writeVector(out, new Vector3f(sun.getAmbient()));
+                }
+                if (light instanceof Scene.PointLight point) {
+                    writeVector(out, new Vector3f(point.getPosition()));
+                    out.writeFloat(point.getBakeCutoff());
+                }
+                if (light instanceof Scene.SpotLight spot) {
+                    writeVector(out, new Vector3f(spot.getDirection()));
+                    out.writeFloat(spot.getCutoffAngle());
+                    out.writeFloat(spot.getOuterCutoffAngle());
+                }
+            }
+        });
+
+        return new BakeJob(new ContentHash().put(header).finish(), header, assets);
+    }
+
+    public static Decoded decode(byte[] header, Function<String, byte[]> assets) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(header));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Invalid bake job header.");
+        }
+
+        Scene scene = new Scene();
+        float pixelToWorldRatio = in.readFloat();
+        scene.setSamplingMode(SamplingMode.valueOf(in.readUTF()));
+        scene.setFastModeEnabled(in.readBoolean());
+        scene.setSunShadowMapEnabled(in.readBoolean());
+        scene.setSunShadowMapResolution(in.readInt());
+        scene.setSunShadowMapBias(in.readFloat());
+        scene.setRelightingEnabled(in.readBoolean());
+        scene.setDirectLightingEnabled(in.readBoolean());
+        scene.setDirectLightingAttenuation(in.readFloat());
+        scene.setShadowsEnabled(in.readBoolean());
+        scene.setShadowRaysPerSample(in.readInt());
+        scene.setShadowBlurArea(in.readFloat());
+        scene.setIndirectLightingEnabled(in.readBoolean());
+        scene.setIndirectRaysPerSample(in.readInt());
+        scene.setIndirectAdaptiveThreshold(in.readFloat());
+        scene.setIndirectMaxRaysPerSample(in.readInt());
+        scene.setIrradianceCacheEnabled(in.readBoolean());
+        scene.setIrradianceCacheError(in.readFloat());
+        scene.setIrradianceCacheRays(in.readInt());
+        scene.setIndirectEngine(Scene.IndirectEngine.valueOf(in.readUTF()));
+        scene.setHemicubeResolution(in.readInt());
+        scene.setIndirectBounces(in.readInt());
+        scene.setIndirectLightingBlurArea(in.readFloat());
+        scene.setIndirectLightReflectionFactor(in.readFloat());
+        scene.setRayOffset(in.readFloat());
+        scene.setFillDisabledValuesWithLightColors(in.readBoolean());
+        scene.setMedianDenoiserEnabled(in.readBoolean());
+        scene.setMedianDenoiserKernelSize(in.readInt());
+        scene.setMedianDenoiserTolerance(in.readFloat());
+
+        Map<String, MeshData> meshes = new HashMap<>();
+        Map<String, MeshData> texturedMeshes = new HashMap<>();
+        Map<String, Integer> texturesIds = new HashMap<>();
+        Map<Integer, SoftwareTexture> textures = new HashMap<>();
+        Map<String, LightmapUVs.GeneratorOutput> uvs = new HashMap<>();
+
+        int amountOfGeometries = in.readInt();
+        float[] model = new float[16];
+        Vector3f scale = new Vector3f();
+        for (int i = 0; i < amountOfGeometries; i++) {
+            String meshHash = in.readUTF();
+            String textureHash = in.readUTF();
+            String uvsHash = in.readUTF();
+            for (int j = 0; j < model.length; j++) {
+                model[j] = in.readFloat();
+            }
+            float lightmapScale = in.readFloat();
+
+            MeshData shared = meshes.get(meshHash);
+            if (shared == null) {
+                shared = decodeMesh(decompress(assets.apply(meshHash)));
+                meshes.put(meshHash, shared);
+            }
+            Integer textureId = texturesIds.get(textureHash);
+            if (textureId == null) {
+                textureId = texturesIds.size() + 1;
+                texturesIds.put(textureHash, textureId);
+                textures.put(textureId, decodeTexture(decompress(assets.apply(textureHash))));
+            }
+            MeshData mesh = texturedMeshes.get(meshHash + "#" + textureHash);
+            if (mesh == null) {
+                mesh = shared.withTextureHint(textureId);
+                texturedMeshes.put(meshHash + "#" + textureHash, mesh);
+            }
+
+            Geometry geometry = new Geometry(mesh);
+            geometry.setModel(new Matrix4f().set(model));
+            geometry.setLightmapScale(lightmapScale);
+
+            LightmapUVs.GeneratorOutput output = uvs.get(uvsHash);
+            if (output == null) {
+                output = decodeUVs(decompress(assets.apply(uvsHash)));
+                uvs.put(uvsHash, output);
+            }
+            geometry.getModel().getScale(scale);
+            mesh.addLightmapMesh(
+                    pixelToWorldRatio,
+                    scale.x() * lightmapScale,
+                    scale.y() * lightmapScale,
+                    scale.z() * lightmapScale,
+                    output
+            );
+
+            scene.getGeometries().add(geometry);
+        }
+
+        int amountOfLights = in.readInt();
+        for (int i = 0; i < amountOfLights; i++) {
+            int type = in.readInt();
+            Scene.Light light;
+            switch (type) {
+                case 1 ->
+                    light = new Scene.PointLight();
+                case 2 ->
+                    light = new Scene.SpotLight();
+                default ->
+                    light = new Scene.DirectionalLight();
+            }
+            light.setDiffuse(in.readFloat(), in.readFloat(), in.readFloat());
+            light.setLightSize(in.readFloat());
+            light.setGroupName(in.readUTF());
+            if (light instanceof Scene.DirectionalLight sun) {
+                sun.setDirection(in.readFloat(), in.readFloat(), in.readFloat());
+                sun.setAmbient(in.readFloat(), in.readFloat(), in.readFloat());
+            }
+            if (light instanceof Scene.PointLight point) {
+                point.setPosition(in.readFloat(), in.readFloat(), in.readFloat());
+                point.setBakeCutoff(in.readFloat());
+            }
+            if (light instanceof Scene.SpotLight spot) {
+                spot.setDirection(in.readFloat(), in.readFloat(), in.readFloat());
+                spot.setCutoffAngle(in.readFloat());
+                spot.setOuterCutoffAngle(in.readFloat());
+            }
+            scene.getLights().add(light);
+        }
+
+        return new Decoded(scene, pixelToWorldRatio, textures);
+    }
+
+    private final String id;
+    private final byte[] header;
+    private final Map<String, byte[]> assets;
+
+    private BakeJob(String id, byte[] header, Map<String, byte[]> assets) {
+        this.id = id;
+        this.header = header;
+        this.assets = assets;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public byte[] getHeader() {
+        return header;
+    }
+
+    public Map<String, byte[]> getAssets() {
+        return assets;
+    }
+
+}
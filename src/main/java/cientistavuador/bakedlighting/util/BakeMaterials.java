@@ -0,0 +1,206 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <https://unlicense.org>
+ */
+package cientistavuador.bakedlighting.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Albedo of the scene textures converted to linear floats with a box
+ * filtered mip chain, deeper bounces read coarser levels down to the
+ * average albedo.
+ *
+ * @author Cien
+ */
+public class BakeMaterials {
+
+    public static final int LEVELS_PER_BOUNCE = 2;
+
+    private static class Material {
+
+        private final SoftwareTexture.TextureWrapping wrapX;
+        private final SoftwareTexture.TextureWrapping wrapY;
+        private final int[] widths;
+        private final int[] heights;
+        private final float[][] levels;
+
+        public Material(SoftwareTexture.TextureWrapping wrapX, SoftwareTexture.TextureWrapping wrapY, int[] widths, int[] heights, float[][] levels) {
+            this.wrapX = wrapX;
+            this.wrapY = wrapY;
+            this.widths = widths;
+            this.heights = heights;
+            this.levels = levels;
+        }
+
+    }
+
+    public static int wrap(int p, int size, SoftwareTexture.TextureWrapping wrapping) {
+        switch (wrapping) {
+            case MIRRORED_REPEAT -> {
+                int repeat = Math.floorDiv(p, size);
+                p = Math.floorMod(p, size);
+                if (repeat % 2 != 0) {
+                    p = (size - 1) - p;
+                }
+                return p;
+            }
+            case CLAMP_TO_EDGE -> {
+                return Math.min(Math.max(p, 0), size - 1);
+            }
+        }
+        return Math.floorMod(p, size);
+    }
+
+    private static Material create(SoftwareTexture texture) {
+        int width = texture.width();
+        int height = texture.height();
+
+        List<float[]> levels = new ArrayList<>();
+        List<Integer> widths = new ArrayList<>();
+        List<Integer> heights = new ArrayList<>();
+
+        float[] color = new float[4];
+        float[] level = new float[width * height * 3];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                texture.fetch(x, y, color, 0);
+                int index = (x + (y * width)) * 3;
+                level[index + 0] = (float) Math.pow(color[0], 2.2);
+                level[index + 1] = (float) Math.pow(color[1], 2.2);
+                level[index + 2] = (float) Math.pow(color[2], 2.2);
+            }
+        }
+        levels.add(level);
+        widths.add(width);
+        heights.add(height);
+
+        while (width > 1 || height > 1) {
+            int nextWidth = Math.max(width / 2, 1);
+            int nextHeight = Math.max(height / 2, 1);
+            float[] next = new float[nextWidth * nextHeight * 3];
+            for (int y = 0; y < nextHeight; y++) {
+                for (int x = 0; x < nextWidth; x++) {
+                    int x0 = Math.min(x * 2, width - 1);
+                    int x1 = Math.min((x * 2) + 1, width - 1);
+                    int y0 = Math.min(y * 2, height - 1);
+                    int y1 = Math.min((y * 2) + 1, height - 1);
+                    int a = (x0 + (y0 * width)) * 3;
+                    int b = (x1 + (y0 * width)) * 3;
+                    int c = (x0 + (y1 * width)) * 3;
+                    int d = (x1 + (y1 * width)) * 3;
+                    int index = (x + (y * nextWidth)) * 3;
+                    for (int i = 0; i < 3; i++) {
+                        next[index + i] = (level[a + i] + level[b + i] + level[c + i] + level[d + i]) * 0.25f;
+                    }
+                }
+            }
+            level = next;
+            width = nextWidth;
+            height = nextHeight;
+            levels.add(level);
+            widths.add(width);
+            heights.add(height);
+        }
+
+        int[] widthsArray = new int[widths.size()];
+        int[] heightsArray = new int[heights.size()];
+        for (int i = 0; i < widthsArray.length; i++) {
+            widthsArray[i] = widths.get(i);
+            heightsArray[i] = heights.get(i);
+        }
+
+        return new Material(
+                texture.getWrappingX(), texture.getWrappingY(),
+                widthsArray, heightsArray,
+                levels.toArray(float[][]::new)
+        );
+    }
+
+    private final List<SoftwareTexture> textures = new ArrayList<>();
+    private Material[] materials = new Material[0];
+
+    public BakeMaterials() {
+
+    }
+
+    public int add(SoftwareTexture texture) {
+        int index = this.textures.indexOf(texture);
+        if (index != -1) {
+            return index;
+        }
+        this.textures.add(texture);
+        return this.textures.size() - 1;
+    }
+
+    public int size() {
+        return this.textures.size();
+    }
+
+    public void build(ExecutorService threads) {
+        List<Future<Material>> futures = new ArrayList<>();
+        for (SoftwareTexture texture : this.textures) {
+            futures.add(threads.submit(() -> create(texture)));
+        }
+        Material[] built = new Material[futures.size()];
+        for (int i = 0; i < built.length; i++) {
+            try {
+                built[i] = futures.get(i).get();
+            } catch (InterruptedException | ExecutionException ex) {
+                throw new RuntimeException(ex);
+            }
+        }
+        this.materials = built;
+    }
+
+    public long getMemoryUsage() {
+        long usage = 0;
+        for (Material m : this.materials) {
+            for (float[] level : m.levels) {
+                usage += level.length * ((long) Float.BYTES);
+            }
+        }
+        return usage;
+    }
+
+    public void sample(int material, int bounce, float u, float v, float[] result, int offset) {
+        Material m = this.materials[material];
+        int level = Math.min(bounce * LEVELS_PER_BOUNCE, m.levels.length - 1);
+        int width = m.widths[level];
+        int height = m.heights[level];
+        int x = wrap((int) Math.floor(u * width), width, m.wrapX);
+        int y = wrap((int) Math.floor(v * height), height, m.wrapY);
+        float[] data = m.levels[level];
+        int index = (x + (y * width)) * 3;
+        result[offset + 0] = data[index + 0];
+        result[offset + 1] = data[index + 1];
+        result[offset + 2] = data[index + 2];
+    }
+
+}
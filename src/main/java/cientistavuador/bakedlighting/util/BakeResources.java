@@ -0,0 +1,153 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <https://unlicense.org>
+ */
+package cientistavuador.bakedlighting.util;
+
+import cientistavuador.bakedlighting.resources.image.ImageResources;
+import cientistavuador.bakedlighting.resources.image.NativeImage;
+import cientistavuador.bakedlighting.resources.mesh.MeshData;
+import cientistavuador.bakedlighting.resources.mesh.MeshResources;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Meshes and textures shared between bakes, a mesh keeps its BVH and lightmap
+ * meshes so they are only built once while it stays in the cache. Shared
+ * meshes are never modified, bakes get a copy per texture.
+ *
+ * @author Cien
+ */
+public class BakeResources {
+
+    public static class Texture {
+
+        private final int id;
+        private final SoftwareTexture texture;
+
+        public Texture(int id, SoftwareTexture texture) {
+            this.id = id;
+            this.texture = texture;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public SoftwareTexture getTexture() {
+            return texture;
+        }
+
+    }
+
+    private final int maxMeshes;
+    private final int maxTextures;
+    private final LinkedHashMap<String, MeshData[]> meshes = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, MeshData[]> texturedMeshes = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, Texture> textures = new LinkedHashMap<>(16, 0.75f, true);
+    private int nextTextureId = 1;
+
+    private long hits = 0;
+    private long misses = 0;
+
+    public BakeResources(int maxMeshes, int maxTextures) {
+        this.maxMeshes = maxMeshes;
+        this.maxTextures = maxTextures;
+    }
+
+    public int getMaxMeshes() {
+        return maxMeshes;
+    }
+
+    public int getMaxTextures() {
+        return maxTextures;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    private static <T> void evict(LinkedHashMap<String, T> map, int max) {
+        Iterator<Map.Entry<String, T>> it = map.entrySet().iterator();
+        while (map.size() > max && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    public synchronized MeshData[] getMeshes(String resource) {
+        MeshData[] loaded = this.meshes.get(resource);
+        if (loaded != null) {
+            this.hits++;
+            return loaded;
+        }
+        this.misses++;
+        loaded = MeshResources.load(resource);
+        this.meshes.put(resource, loaded);
+        evict(this.meshes, this.maxMeshes);
+        return loaded;
+    }
+
+    public synchronized MeshData[] getMeshes(String resource, int texture) {
+        String key = resource + "#" + texture;
+        MeshData[] textured = this.texturedMeshes.get(key);
+        if (textured != null) {
+            this.hits++;
+            return textured;
+        }
+        MeshData[] loaded = getMeshes(resource);
+        textured = new MeshData[loaded.length];
+        for (int i = 0; i < loaded.length; i++) {
+            textured[i] = loaded[i].withTextureHint(texture);
+        }
+        this.texturedMeshes.put(key, textured);
+        evict(this.texturedMeshes, this.maxMeshes);
+        return textured;
+    }
+
+    public synchronized Texture getTexture(String resource) {
+        Texture loaded = this.textures.get(resource);
+        if (loaded != null) {
+            this.hits++;
+            return loaded;
+        }
+        this.misses++;
+        NativeImage image = ImageResources.load(resource, 4);
+        try {
+            loaded = new Texture(this.nextTextureId++, SoftwareTexture.fromNativeImage(image));
+        } finally {
+            image.free();
+        }
+        this.textures.put(resource, loaded);
+        evict(this.textures, this.maxTextures);
+        return loaded;
+    }
+
+}
@@ -0,0 +1,377 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <https://unlicense.org>
+ */
+package cientistavuador.bakedlighting.util;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Long running bake service, jobs are submitted over http and baked one at a
+ * time by priority on a shared executor.
+ * <p>
+ * POST /jobs?scene=file&amp;output=directory&amp;priority=n, GET /jobs,
+ * GET /jobs/id and DELETE /jobs/id.
+ *
+ * @author Cien
+ */
+public class BakeService {
+
+    public static final int DEFAULT_MAX_MESHES = 64;
+    public static final int DEFAULT_MAX_TEXTURES = 256;
+    public static final int MAX_FINISHED_JOBS = 256;
+
+    public static enum JobState {
+        QUEUED, RUNNING, DONE, FAILED, CANCELLED;
+
+        public boolean isFinished() {
+            return this == DONE || this == FAILED || this == CANCELLED;
+        }
+    }
+
+    public static class Job implements Comparable<Job> {
+
+        private final long id;
+        private final int priority;
+        private final Path sceneFile;
+        private final Path outputDirectory;
+
+        private volatile JobState state = JobState.QUEUED;
+        private volatile BakedLighting.Status status = null;
+        private volatile String error = null;
+        private volatile boolean cancelled = false;
+
+        private Job(long id, int priority, Path sceneFile, Path outputDirectory) {
+            this.id = id;
+            this.priority = priority;
+            this.sceneFile = sceneFile;
+            this.outputDirectory = outputDirectory;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public int getPriority() {
+            return priority;
+        }
+
+        public Path getSceneFile() {
+            return sceneFile;
+        }
+
+        public Path getOutputDirectory() {
+            return outputDirectory;
+        }
+
+        public JobState getState() {
+            return state;
+        }
+
+        public BakedLighting.Status getStatus() {
+            return status;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        public synchronized void cancel() {
+            this.cancelled = true;
+            if (this.status != null) {
+                this.status.cancel();
+            }
+        }
+
+        @Override
+        public int compareTo(Job o) {
+            if (this.priority != o.priority) {
+                return Integer.compare(o.priority, this.priority);
+            }
+            return Long.compare(this.id, o.id);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder b = new StringBuilder();
+            b.append(this.id).append(' ').append(this.state).append(' ').append(this.priority);
+            BakedLighting.Status s = this.status;
+            if (s != null) {
+                b.append(' ').append(s.getCurrentProgress()).append("% ").append(s.getCurrentStatus());
+            }
+            if (this.error != null) {
+                b.append(' ').append(this.error);
+            }
+            return b.toString();
+        }
+    }
+
+    private final HttpServer server;
+    private final ExecutorService threads;
+    private final BakeResources resources;
+    private final PriorityBlockingQueue<Job> queue = new PriorityBlockingQueue<>();
+    private final Map<Long, Job> jobs = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final Thread runner;
+
+    public BakeService(int port) throws IOException {
+        this(port, Runtime.getRuntime().availableProcessors(), new BakeResources(DEFAULT_MAX_MESHES, DEFAULT_MAX_TEXTURES));
+    }
+
+    public BakeService(int port, int threads, BakeResources resources) throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        this.server.createContext("/jobs", this::handle);
+        this.threads = Executors.newFixedThreadPool(threads);
+        this.resources = resources;
+        this.runner = new Thread(this::run, "Bake Service");
+        this.runner.setDaemon(true);
+    }
+
+    public BakeResources getResources() {
+        return resources;
+    }
+
+    public int getPort() {
+        return this.server.getAddress().getPort();
+    }
+
+    public void start() {
+        this.server.start();
+        this.runner.start();
+    }
+
+    public Job submit(Path sceneFile, Path outputDirectory, int priority) {
+        Job job = new Job(this.nextId.getAndIncrement(), priority, sceneFile, outputDirectory);
+        this.jobs.put(job.getId(), job);
+        this.queue.add(job);
+        return job;
+    }
+
+    public Job getJob(long id) {
+        return this.jobs.get(id);
+    }
+
+    public List<Job> getJobs() {
+        List<Job> list = new ArrayList<>(this.jobs.values());
+        list.sort((a, b) -> Long.compare(a.getId(), b.getId()));
+        return list;
+    }
+
+    private void execute(Job job) {
+        SceneDescription description = null;
+        try {
+            description = SceneDescription.read(job.sceneFile, this.resources);
+            LightmapFileOutput output = new LightmapFileOutput(job.outputDirectory);
+            synchronized (job) {
+                if (job.cancelled) {
+                    job.state = JobState.CANCELLED;
+                    return;
+                }
+                job.status = BakedLighting.bake(
+                        output,
+                        description.getScene(),
+                        description.getPixelToWorldRatio(),
+                        null,
+                        Runnable::run,
+                        description.getTextures(),
+                        this.threads
+                );
+                job.state = JobState.RUNNING;
+            }
+            job.status.waitForCompletion();
+            if (job.status.isCancelled()) {
+                job.state = JobState.CANCELLED;
+            } else if (job.status.hasError()) {
+                job.error = job.status.getCurrentStatus();
+                job.state = JobState.FAILED;
+            } else {
+                job.state = JobState.DONE;
+            }
+        } catch (InterruptedException ex) {
+            job.cancel();
+            Thread.currentThread().interrupt();
+        } catch (IOException | RuntimeException ex) {
+            job.error = ex.getLocalizedMessage();
+            job.state = JobState.FAILED;
+        } finally {
+            if (description != null) {
+                BakeCoordinator coordinator = description.getScene().getBakeCoordinator();
+                if (coordinator != null) {
+                    coordinator.close();
+                }
+            }
+        }
+    }
+
+    private void pruneJobs() {
+        List<Job> finished = new ArrayList<>();
+        for (Job job : this.jobs.values()) {
+            if (job.state.isFinished()) {
+                finished.add(job);
+            }
+        }
+        if (finished.size() <= MAX_FINISHED_JOBS) {
+            return;
+        }
+        finished.sort((a, b) -> Long.compare(a.getId(), b.getId()));
+        for (int i = 0; i < finished.size() - MAX_FINISHED_JOBS; i++) {
+            this.jobs.remove(finished.get(i).getId());
+        }
+    }
+
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            Job job;
+            try {
+                job = this.queue.take();
+            } catch (InterruptedException ex) {
+                break;
+            }
+            if (job.cancelled) {
+                job.state = JobState.CANCELLED;
+            } else {
+                execute(job);
+            }
+            pruneJobs();
+        }
+    }
+
+    private static Map<String, String> query(HttpExchange exchange) {
+        Map<String, String> map = new HashMap<>();
+        String raw = exchange.getRequestURI().getRawQuery();
+        if (raw == null) {
+            return map;
+        }
+        for (String pair : raw.split("&")) {
+            int separator = pair.indexOf('=');
+            if (separator == -1) {
+                continue;
+            }
+            map.put(
+                    URLDecoder.decode(pair.substring(0, separator), StandardCharsets.UTF_8),
+                    URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8)
+            );
+        }
+        return map;
+    }
+
+    private static void respond(HttpExchange exchange, int code, String body) throws IOException {
+        byte[] data = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(code, data.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(data);
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        String method = exchange.getRequestMethod();
+
+        Job job = null;
+        if (path.startsWith("/jobs/")) {
+            try {
+                job = this.jobs.get(Long.parseLong(path.substring("/jobs/".length())));
+            } catch (NumberFormatException ex) {
+                job = null;
+            }
+            if (job == null) {
+                respond(exchange, 404, "Job not found.\n");
+                return;
+            }
+        }
+
+        switch (method) {
+            case "GET" -> {
+                if (job != null) {
+                    respond(exchange, 200, job + "\n");
+                    return;
+                }
+                StringBuilder b = new StringBuilder();
+                for (Job j : getJobs()) {
+                    b.append(j).append('\n');
+                }
+                respond(exchange, 200, b.toString());
+            }
+            case "POST" -> {
+                if (job != null) {
+                    respond(exchange, 405, "Method not allowed.\n");
+                    return;
+                }
+                Map<String, String> params = query(exchange);
+                String scene = params.get("scene");
+                if (scene == null) {
+                    respond(exchange, 400, "Missing scene.\n");
+                    return;
+                }
+                int priority = 0;
+                try {
+                    priority = Integer.parseInt(params.getOrDefault("priority", "0"));
+                } catch (NumberFormatException ex) {
+                    respond(exchange, 400, "Invalid priority.\n");
+                    return;
+                }
+                Job submitted = submit(Path.of(scene), Path.of(params.getOrDefault("output", "lightmaps")), priority);
+                respond(exchange, 200, submitted.getId() + "\n");
+            }
+            case "DELETE" -> {
+                if (job == null) {
+                    respond(exchange, 405, "Method not allowed.\n");
+                    return;
+                }
+                job.cancel();
+                respond(exchange, 200, job + "\n");
+            }
+            default ->
+                respond(exchange, 405, "Method not allowed.\n");
+        }
+    }
+
+    public void close() {
+        this.server.stop(0);
+        this.runner.interrupt();
+        for (Job job : this.jobs.values()) {
+            job.cancel();
+        }
+        this.threads.shutdownNow();
+    }
+
+}
@@ -0,0 +1,312 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <https://unlicense.org>
+ */
+package cientistavuador.bakedlighting.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bake worker server, receives scene assets and jobs from a
+ * {@link BakeCoordinator} and bakes the light component tiles it is asked
+ * for.
+ *
+ * @author Cien
+ */
+public class BakeWorker {
+
+    public static final int OP_HAS_ASSETS = 1;
+    public static final int OP_PUT_ASSET = 2;
+    public static final int OP_OPEN_JOB = 3;
+    public static final int OP_BAKE_TILE = 4;
+    public static final int OP_CLOSE = 5;
+
+    public static final int STATUS_OK = 0;
+    public static final int STATUS_ERROR = 1;
+
+    public static final int MAX_JOBS = 2;
+    public static final int MAX_MESSAGE_SIZE = 256 * 1024 * 1024;
+    public static final int MAX_HASHES = 65536;
+    public static final long MAX_ASSETS_SIZE = 1024L * 1024L * 1024L;
+
+    private static class Job {
+
+        private final BakedLighting.TileBaker baker;
+        private int users = 0;
+        private boolean evicted = false;
+
+        public Job(BakedLighting.TileBaker baker) {
+            this.baker = baker;
+        }
+    }
+
+    private final ServerSocket server;
+    private final LinkedHashMap<String, byte[]> assets = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, Job> jobs = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long assetsSize = 0;
+    private volatile boolean running = true;
+
+    public BakeWorker(int port) throws IOException {
+        this(InetAddress.getLoopbackAddress(), port);
+    }
+
+    public BakeWorker(InetAddress address, int port) throws IOException {
+        this.server = new ServerSocket(port, 50, address);
+    }
+
+    public int getPort() {
+        return this.server.getLocalPort();
+    }
+
+    public void run() {
+        while (this.running) {
+            Socket socket;
+            try {
+                socket = this.server.accept();
+            } catch (IOException ex) {
+                if (this.running) {
+                    ex.printStackTrace(System.out);
+                }
+                continue;
+            }
+            Thread thread = new Thread(() -> {
+                handle(socket);
+            }, "Bake Worker Connection " + socket.getRemoteSocketAddress());
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    public void close() {
+        this.running = false;
+        try {
+            this.server.close();
+        } catch (IOException ex) {
+            ex.printStackTrace(System.out);
+        }
+        synchronized (this.jobs) {
+            for (Job job : this.jobs.values()) {
+                job.baker.close();
+            }
+            this.jobs.clear();
+        }
+    }
+
+    private static int readLength(DataInputStream in, int max) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > max) {
+            throw new IOException("Invalid message length " + length);
+        }
+        return length;
+    }
+
+    private byte[] getAsset(String hash) {
+        synchronized (this.assets) {
+            return this.assets.get(hash);
+        }
+    }
+
+    private void putAsset(String hash, byte[] data) {
+        if (!new ContentHash().put(BakeJob.decompress(data)).finish().equals(hash)) {
+            throw new IllegalArgumentException("Asset content does not match hash " + hash);
+        }
+        synchronized (this.assets) {
+            byte[] old = this.assets.put(hash, data);
+            if (old != null) {
+                this.assetsSize -= old.length;
+            }
+            this.assetsSize += data.length;
+
+            Iterator<Map.Entry<String, byte[]>> it = this.assets.entrySet().iterator();
+            while (this.assetsSize > MAX_ASSETS_SIZE && it.hasNext()) {
+                Map.Entry<String, byte[]> e = it.next();
+                if (e.getKey().equals(hash)) {
+                    continue;
+                }
+                this.assetsSize -= e.getValue().length;
+                it.remove();
+            }
+        }
+    }
+
+    private void openJob(String id, byte[] header) throws IOException {
+        synchronized (this.jobs) {
+            if (this.jobs.get(id) != null) {
+                return;
+            }
+            BakeJob.Decoded decoded = BakeJob.decode(header, (hash) -> {
+                byte[] asset = getAsset(hash);
+                if (asset == null) {
+                    throw new IllegalStateException("Missing asset " + hash);
+                }
+                return asset;
+            });
+            this.jobs.put(id, new Job(new BakedLighting.TileBaker(decoded.getScene(), decoded.getPixelToWorldRatio(), decoded.getTextures())));
+
+            Iterator<Map.Entry<String, Job>> it = this.jobs.entrySet().iterator();
+            while (this.jobs.size() > MAX_JOBS && it.hasNext()) {
+                Map.Entry<String, Job> e = it.next();
+                if (e.getKey().equals(id)) {
+                    continue;
+                }
+                Job job = e.getValue();
+                job.evicted = true;
+                if (job.users == 0) {
+                    job.baker.close();
+                }
+                it.remove();
+            }
+        }
+    }
+
+    private Job acquireJob(String id) {
+        synchronized (this.jobs) {
+            Job job = this.jobs.get(id);
+            if (job != null) {
+                job.users++;
+            }
+            return job;
+        }
+    }
+
+    private void releaseJob(Job job) {
+        synchronized (this.jobs) {
+            job.users--;
+            if (job.evicted && job.users == 0) {
+                job.baker.close();
+            }
+        }
+    }
+
+    private static byte[] encodeTile(float[][] buffers) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(buffers.length);
+            for (float[] buffer : buffers) {
+                if (buffer == null) {
+                    out.writeInt(-1);
+                    continue;
+                }
+                out.writeInt(buffer.length);
+                for (float f : buffer) {
+                    out.writeFloat(f);
+                }
+            }
+        }
+        return BakeJob.compress(bytes.toByteArray());
+    }
+
+    private void handle(Socket socket) {
+        try (socket) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 65536));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 65536));
+            while (true) {
+                int op = in.readInt();
+                try {
+                    switch (op) {
+                        case OP_HAS_ASSETS -> {
+                            int amount = readLength(in, MAX_HASHES);
+                            boolean[] found = new boolean[amount];
+                            for (int i = 0; i < amount; i++) {
+                                found[i] = getAsset(in.readUTF()) != null;
+                            }
+                            out.writeInt(STATUS_OK);
+                            for (boolean b : found) {
+                                out.writeBoolean(b);
+                            }
+                        }
+                        case OP_PUT_ASSET -> {
+                            String hash = in.readUTF();
+                            byte[] data = new byte[readLength(in, MAX_MESSAGE_SIZE)];
+                            in.readFully(data);
+                            putAsset(hash, data);
+                            out.writeInt(STATUS_OK);
+                        }
+                        case OP_OPEN_JOB -> {
+                            String id = in.readUTF();
+                            byte[] header = new byte[readLength(in, MAX_MESSAGE_SIZE)];
+                            in.readFully(header);
+                            openJob(id, header);
+                            out.writeInt(STATUS_OK);
+                        }
+                        case OP_BAKE_TILE -> {
+                            String id = in.readUTF();
+                            int geometry = in.readInt();
+                            int group = in.readInt();
+                            int light = in.readInt();
+                            boolean direct = in.readBoolean();
+                            boolean shadow = in.readBoolean();
+                            boolean indirect = in.readBoolean();
+                            int lineStart = in.readInt();
+                            int lineEnd = in.readInt();
+                            Job job = acquireJob(id);
+                            if (job == null) {
+                                throw new IllegalStateException("Job " + id + " is not open.");
+                            }
+                            byte[] tile;
+                            try {
+                                tile = encodeTile(job.baker.bake(geometry, group, light, direct, shadow, indirect, lineStart, lineEnd));
+                            } finally {
+                                releaseJob(job);
+                            }
+                            out.writeInt(STATUS_OK);
+                            out.writeInt(tile.length);
+                            out.write(tile);
+                        }
+                        case OP_CLOSE -> {
+                            out.writeInt(STATUS_OK);
+                            out.flush();
+                            return;
+                        }
+                        default ->
+                            throw new IOException("Unknown operation " + op);
+                    }
+                } catch (RuntimeException ex) {
+                    ex.printStackTrace(System.out);
+                    out.writeInt(STATUS_ERROR);
+                    out.writeUTF(String.valueOf(ex.getMessage()));
+                }
+                out.flush();
+            }
+        } catch (IOException ex) {
+            if (this.running) {
+                System.out.println("Connection closed: " + ex.getMessage());
+            }
+        }
+    }
+
+}
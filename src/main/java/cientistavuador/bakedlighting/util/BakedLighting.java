@@ -29,17 +29,22 @@ package cientistavuador.bakedlighting.util;
 import cientistavuador.bakedlighting.Main;
 import cientistavuador.bakedlighting.geometry.Geometry;
 import cientistavuador.bakedlighting.resources.mesh.MeshData;
+import cientistavuador.bakedlighting.texture.SoftwareTextures;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Formatter;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.function.IntConsumer;
 import org.joml.Matrix3f;
 import org.joml.Vector3f;
 import org.joml.Vector3fc;
@@ -50,6 +55,12 @@ import org.joml.Vector3fc;
  */
 public class BakedLighting {
 
+    public static final float IRRADIANCE_CACHE_MIN_TEXELS = 1.5f;
+    public static final float IRRADIANCE_CACHE_MAX_TEXELS = 32f;
+    public static final float ADAPTIVE_NORMAL_THRESHOLD = 0.98f;
+    public static final float ADAPTIVE_SHADOW_THRESHOLD = 0.1f;
+    public static final float ADAPTIVE_INDIRECT_THRESHOLD = 0.5f;
+
     private static class LightGroup {
 
         public String groupName = "";
@@ -61,6 +72,14 @@ public class BakedLighting {
         public void prepare(Geometry geometry, MeshData.LightmapMesh mesh, int lightmapSize, String[] groups);
 
         public void write(float[] lightmap, int groupIndex);
+
+        public default void prepareUpdate(Geometry geometry, MeshData.LightmapMesh mesh, int lightmapSize, String[] groups, boolean[] updatedGroups) {
+            prepare(geometry, mesh, lightmapSize, groups);
+        }
+
+        public default void basis(LightmapBasis basis) {
+
+        }
     }
 
     public static class Status {
@@ -76,6 +95,9 @@ public class BakedLighting {
         private long timeStart = 0;
         private volatile long rays = 0;
 
+        private volatile boolean paused = false;
+        private volatile boolean cancelled = false;
+
         private long progressBarStart = System.currentTimeMillis();
 
         public Status() {
@@ -127,6 +149,36 @@ public class BakedLighting {
             return this.error;
         }
 
+        public void pause() {
+            this.paused = true;
+        }
+
+        public synchronized void resume() {
+            this.paused = false;
+            notifyAll();
+        }
+
+        public boolean isPaused() {
+            return this.paused;
+        }
+
+        public synchronized void cancel() {
+            this.cancelled = true;
+            notifyAll();
+        }
+
+        public boolean isCancelled() {
+            return this.cancelled;
+        }
+
+        public void waitForCompletion() throws InterruptedException {
+            try {
+                this.task.get();
+            } catch (ExecutionException | CancellationException ex) {
+                //reported by hasError and throwException
+            }
+        }
+
         public void throwException() throws ExecutionException {
             if (!isDone()) {
                 return;
@@ -187,13 +239,34 @@ public class BakedLighting {
     }
 
     public static Status bake(BakedLightingOutput output, Scene scene, float pixelToWorldRatio) {
+        return bake(output, scene, pixelToWorldRatio, null);
+    }
+
+    public static Status resume(BakedLightingOutput output, Scene scene, float pixelToWorldRatio, BakeCheckpoint checkpoint) {
+        scene.setBakeCheckpoint(checkpoint);
+        return bake(output, scene, pixelToWorldRatio);
+    }
+
+    public static Status bake(BakedLightingOutput output, Scene scene, float pixelToWorldRatio, BakeDependencies dependencies) {
+        return bake(output, scene, pixelToWorldRatio, dependencies, Main.MAIN_TASKS::add, null);
+    }
+
+    public static Status bake(BakedLightingOutput output, Scene scene, float pixelToWorldRatio, BakeDependencies dependencies, Executor mainExecutor, Map<Integer, SoftwareTexture> textures) {
+        return bake(output, scene, pixelToWorldRatio, dependencies, mainExecutor, textures, null);
+    }
+
+    public static Status bake(BakedLightingOutput output, Scene scene, float pixelToWorldRatio, BakeDependencies dependencies, Executor mainExecutor, Map<Integer, SoftwareTexture> textures, ExecutorService threads) {
         Status status = new Status();
-        BakedLighting baked = new BakedLighting(output, scene, pixelToWorldRatio, status);
+        BakedLighting baked = new BakedLighting(output, scene, pixelToWorldRatio, dependencies, mainExecutor, textures, threads, status);
         status.task = CompletableFuture.runAsync(() -> {
             try {
                 baked.bake();
                 status.currentProgress = 100f;
                 status.currentStatus = "Done.";
+            } catch (CancellationException ex) {
+                status.currentProgress = 0f;
+                status.currentStatus = "Cancelled.";
+                throw ex;
             } catch (Throwable t) {
                 status.currentProgress = 0f;
                 status.currentStatus = "Error: " + t.getLocalizedMessage();
@@ -204,31 +277,88 @@ public class BakedLighting {
         return status;
     }
 
-    private static class WeightsBuffer {
+    public static final int TILE_SIZE = 8;
+    private static final int TILE_SHIFT = 3;
+    private static final int TILE_MASK = TILE_SIZE - 1;
 
+    private static class BufferLayout {
+
+        //per sample buffers are stored as strips of TILE_SIZE lines made of TILE_SIZE x TILE_SIZE tiles,
+        //inside of a tile every channel of every sample is a contiguous plane
+        public static BufferLayout tiled(int size, int samples, int channels) {
+            return new BufferLayout(size, samples, channels, true);
+        }
+
+        //lightmap images are plain row major with interleaved channels
+        public static BufferLayout image(int size, int channels) {
+            return new BufferLayout(size, 1, channels, false);
+        }
+
+        private final int size;
+        private final int samples;
+        private final int channels;
+        private final boolean tiled;
+        private final int tileStride;
+        private final int stripStride;
         private final int lineSize;
-        private final int sampleSize;
-        private final int vectorSize;
+        private final int length;
+
+        private BufferLayout(int size, int samples, int channels, boolean tiled) {
+            this.size = size;
+            this.samples = samples;
+            this.channels = channels;
+            this.tiled = tiled;
+            int tiles = (size + TILE_MASK) >> TILE_SHIFT;
+            this.tileStride = (TILE_SIZE * TILE_SIZE) * samples * channels;
+            this.stripStride = tiles * this.tileStride;
+            this.lineSize = size * samples * channels;
+            this.length = (tiled ? tiles * this.stripStride : size * this.lineSize);
+        }
+
+        public int index(int x, int y, int sample, int channel) {
+            if (this.tiled) {
+                return ((y >> TILE_SHIFT) * this.stripStride)
+                        + ((x >> TILE_SHIFT) * this.tileStride)
+                        + (((channel * this.samples) + sample) << (TILE_SHIFT * 2))
+                        + ((y & TILE_MASK) << TILE_SHIFT)
+                        + (x & TILE_MASK);
+            }
+            return channel + (((x * this.samples) + sample) * this.channels) + (y * this.lineSize);
+        }
+
+        public static int tiledLineOffset(int length, int size, int line) {
+            if (line >= size) {
+                return length;
+            }
+            if ((line & TILE_MASK) != 0) {
+                throw new IllegalArgumentException("Line " + line + " is not aligned to a tile strip.");
+            }
+            int strips = (size + TILE_MASK) >> TILE_SHIFT;
+            return (line >> TILE_SHIFT) * (length / strips);
+        }
+    }
+
+    private static class WeightsBuffer {
+
+        private final BufferLayout layout;
         private final float[] data;
 
         public WeightsBuffer(int size, int samples) {
-            this.sampleSize = 3;
-            this.vectorSize = this.sampleSize * samples;
-            this.lineSize = size * this.vectorSize;
-            this.data = new float[size * this.lineSize];
+            this.layout = BufferLayout.tiled(size, samples, 3);
+            this.data = new float[this.layout.length];
         }
 
         public void write(Vector3f position, int x, int y, int sample) {
-            this.data[0 + (sample * this.sampleSize) + (x * this.vectorSize) + (y * this.lineSize)] = position.x();
-            this.data[1 + (sample * this.sampleSize) + (x * this.vectorSize) + (y * this.lineSize)] = position.y();
-            this.data[2 + (sample * this.sampleSize) + (x * this.vectorSize) + (y * this.lineSize)] = position.z();
+            this.data[this.layout.index(x, y, sample, 0)] = position.x();
+            this.data[this.layout.index(x, y, sample, 1)] = position.y();
+            this.data[this.layout.index(x, y, sample, 2)] = position.z();
         }
 
         public void read(Vector3f position, int x, int y, int sample) {
             position.set(
-                    this.data[0 + (sample * this.sampleSize) + (x * this.vectorSize) + (y * this.lineSize)],
-                    this.data[1 + (sample * this.sampleSize) + (x * this.vectorSize) + (y * this.lineSize)],
-                    this.data[2 + (sample * this.sampleSize) + (x * this.vectorSize) + (y * this.lineSize)]
+                    this.data[this.layout.index(x, y, sample, 0)],
+                    this.data[this.layout.index(x, y, sample, 1)],
+                    this.data[this.layout.index(x, y, sample, 2)]
             );
         }
 
@@ -236,119 +366,154 @@ public class BakedLighting {
 
     private static class IntegerBuffer {
 
-        private final int lineSize;
-        private final int sampleSize;
-        private final int vectorSize;
+        private final BufferLayout layout;
         private final int[] data;
 
         public IntegerBuffer(int size, int samples) {
-            this.sampleSize = 1;
-            this.vectorSize = this.sampleSize * samples;
-            this.lineSize = size * this.vectorSize;
-            this.data = new int[size * this.lineSize];
+            this(BufferLayout.tiled(size, samples, 1));
+        }
+
+        public IntegerBuffer(int size) {
+            this(BufferLayout.image(size, 1));
+        }
+
+        private IntegerBuffer(BufferLayout layout) {
+            this.layout = layout;
+            this.data = new int[layout.length];
         }
 
         public void write(int data, int x, int y, int sample) {
-            this.data[0 + (sample * this.sampleSize) + (x * this.vectorSize) + (y * this.lineSize)] = data;
+            this.data[this.layout.index(x, y, sample, 0)] = data;
         }
 
         public int read(int x, int y, int sample) {
-            return this.data[0 + (sample * this.sampleSize) + (x * this.vectorSize) + (y * this.lineSize)];
+            return this.data[this.layout.index(x, y, sample, 0)];
+        }
+
+        public void fill(int value) {
+            Arrays.fill(this.data, value);
         }
 
     }
 
     private static class BooleanBuffer {
 
-        private final int lineSize;
-        private final int sampleSize;
-        private final int vectorSize;
+        private final BufferLayout layout;
         private final boolean[] data;
 
         public BooleanBuffer(int size, int samples) {
-            this.sampleSize = 1;
-            this.vectorSize = this.sampleSize * samples;
-            this.lineSize = size * this.vectorSize;
-            this.data = new boolean[size * this.lineSize];
+            this.layout = BufferLayout.tiled(size, samples, 1);
+            this.data = new boolean[this.layout.length];
         }
 
         public void write(boolean value, int x, int y, int sample) {
-            this.data[0 + (sample * this.sampleSize) + (x * this.vectorSize) + (y * this.lineSize)] = value;
+            this.data[this.layout.index(x, y, sample, 0)] = value;
         }
 
         public boolean read(int x, int y, int sample) {
-            return this.data[0 + (sample * this.sampleSize) + (x * this.vectorSize) + (y * this.lineSize)];
+            return this.data[this.layout.index(x, y, sample, 0)];
         }
     }
 
     private static class ColorBuffer {
 
-        private final int lineSize;
-        private final int sampleSize;
-        private final int vectorSize;
+        private final BufferLayout layout;
         private final float[] data;
 
         public ColorBuffer(int size, int samples) {
-            this.sampleSize = 3;
-            this.vectorSize = this.sampleSize * samples;
-            this.lineSize = size * this.vectorSize;
-            this.data = new float[size * this.lineSize];
+            this(BufferLayout.tiled(size, samples, 3));
+        }
+
+        public ColorBuffer(int size) {
+            this(BufferLayout.image(size, 3));
+        }
+
+        private ColorBuffer(BufferLayout layout) {
+            this.layout = layout;
+            this.data = new float[layout.length];
         }
 
         public void write(Vector3f color, int x, int y, int sample) {
-            this.data[0 + (sample * this.sampleSize) + (x * this.vectorSize) + (y * this.lineSize)] = color.x();
-            this.data[1 + (sample * this.sampleSize) + (x * this.vectorSize) + (y * this.lineSize)] = color.y();
-            this.data[2 + (sample * this.sampleSize) + (x * this.vectorSize) + (y * this.lineSize)] = color.z();
+            this.data[this.layout.index(x, y, sample, 0)] = color.x();
+            this.data[this.layout.index(x, y, sample, 1)] = color.y();
+            this.data[this.layout.index(x, y, sample, 2)] = color.z();
         }
 
         public void read(Vector3f color, int x, int y, int sample) {
-            float vx = this.data[0 + (sample * this.sampleSize) + (x * this.vectorSize) + (y * this.lineSize)];
-            float vy = this.data[1 + (sample * this.sampleSize) + (x * this.vectorSize) + (y * this.lineSize)];
-            float vz = this.data[2 + (sample * this.sampleSize) + (x * this.vectorSize) + (y * this.lineSize)];
             color.set(
-                    vx,
-                    vy,
-                    vz
+                    this.data[this.layout.index(x, y, sample, 0)],
+                    this.data[this.layout.index(x, y, sample, 1)],
+                    this.data[this.layout.index(x, y, sample, 2)]
+            );
+        }
+
+        public FloatImage view(boolean[] mask) {
+            if (this.layout.tiled) {
+                throw new IllegalStateException("Only lightmap images can be viewed as an image.");
+            }
+            int size = this.layout.size;
+            return new FloatImage(
+                    this.data, 0,
+                    size, size, 3,
+                    3, this.layout.lineSize,
+                    mask, 0, size
             );
         }
     }
 
     private static class GrayBuffer {
 
-        private final int lineSize;
-        private final int sampleSize;
-        private final int vectorSize;
+        private final BufferLayout layout;
         private final float[] data;
 
         public GrayBuffer(int size, int samples) {
-            this.sampleSize = 1;
-            this.vectorSize = this.sampleSize * samples;
-            this.lineSize = size * this.vectorSize;
-            this.data = new float[size * this.lineSize];
+            this.layout = BufferLayout.tiled(size, samples, 1);
+            this.data = new float[this.layout.length];
         }
 
         public void write(float value, int x, int y, int sample) {
-            this.data[0 + (sample * this.sampleSize) + (x * this.vectorSize) + (y * this.lineSize)] = value;
+            this.data[this.layout.index(x, y, sample, 0)] = value;
         }
 
         public float read(int x, int y, int sample) {
-            return this.data[0 + (sample * this.sampleSize) + (x * this.vectorSize) + (y * this.lineSize)];
+            return this.data[this.layout.index(x, y, sample, 0)];
         }
     }
 
     //global state
-    private final ExecutorService threads = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    private final ExecutorService threads;
+    private final boolean sharedThreads;
     private final BakedLightingOutput output;
+    private final Executor mainExecutor;
+    private final BakeDependencies dependencies;
     private final Scene scene;
     private final List<Geometry> geometries;
     private final List<LightGroup> lightGroups;
     private final String[] groupsNames;
     private final SamplingMode samplingMode;
     private final boolean fastMode;
+    private final boolean relighting;
+    private final BakeCache cache;
+    private final LightmapCache lightmapCache;
+    private final BakeCheckpoint checkpoint;
+    private final BakeCoordinator coordinator;
+    private final boolean progressive;
+    private final int progressivePasses;
+    private final int indirectCoarseFactor;
+    private final RadianceCache radianceCache;
+    private HemicubeRadiosity hemicube = null;
+    private final Map<Integer, HemicubeSolution> hemicubeSolutions = new HashMap<>();
+    private final Map<Integer, SunShadowMap> sunShadowMaps = new HashMap<>();
     private final float pixelToWorldRatio;
     private final Status status;
     private final Map<Integer, SoftwareTexture> sceneTextures = new HashMap<>();
+    private final BakeMaterials materials = new BakeMaterials();
     private final MeshData.LightmapMesh[] lightmapMeshes;
+    private final String[] lightmapUVsKeys;
+    private String[] geometryHashes = null;
+    private String occludersHash = null;
+    private String texturesHash = null;
+    private String settingsHash = null;
 
     //geometry state
     private int geometryIndex = 0;
@@ -363,6 +528,18 @@ public class BakedLighting {
     private BooleanBuffer sampleBuffer = null;
     private IntegerBuffer trianglesBuffer = null;
     private WeightsBuffer weightsBuffer = null;
+    private IntegerBuffer quadsBuffer = null;
+    private float[] quadsBounds = null;
+    private final Vector3f geometryMin = new Vector3f();
+    private final Vector3f geometryMax = new Vector3f();
+    private LightmapBasis geometryBasis = null;
+    private ColorBuffer positionsBuffer = null;
+    private ColorBuffer normalsBuffer = null;
+    private BooleanBuffer deferredBuffer = null;
+    private String geometryKey = null;
+    private boolean[] bakedLightGroups = null;
+    private boolean[] cachedLightGroups = null;
+    private String[] lightGroupsKeys = null;
 
     //light group state
     private int currentLightGroupIndex = 0;
@@ -371,6 +548,9 @@ public class BakedLighting {
 
     //light group state (buffers)
     private ColorBuffer lightGroupOutput = null;
+    private ColorBuffer[] lightGroupDiffuseBasis = null;
+    private ColorBuffer[] lightGroupAmbientBasis = null;
+    private float[] lightGroupLightmap = null;
 
     //light state
     private int currentLightIndex = 0;
@@ -379,22 +559,76 @@ public class BakedLighting {
     private Scene.DirectionalLight sun = null;
     private Scene.PointLight point = null;
     private Scene.SpotLight spot = null;
+    private int progressivePass = 0;
+    private boolean lightCulled = false;
+    private boolean[] culledQuads = null;
+    private final Vector3f lightDiffuse = new Vector3f();
+    private final Vector3f lightAmbient = new Vector3f();
+    private boolean computeDirect = true;
+    private boolean computeShadow = true;
+    private boolean computeIndirect = true;
+    private boolean denoiseShadow = true;
+    private boolean denoiseIndirect = true;
+    private String directKey = null;
+    private String shadowKey = null;
+    private String shadowDenoisedKey = null;
+    private String indirectKey = null;
+    private String indirectDenoisedKey = null;
+    private String partialKey = null;
 
     //light state (buffers)
     private ColorBuffer indirectColorBuffer = null;
+    private ColorBuffer indirectAmbientColorBuffer = null;
     private ColorBuffer directColorBuffer = null;
     private GrayBuffer reverseShadowBuffer = null;
-
-    private BakedLighting(BakedLightingOutput output, Scene scene, float pixelToWorldRatio, Status status) {
+    private BooleanBuffer indirectMask = null;
+    private BooleanBuffer refineMask = null;
+    private IrradianceCache irradianceCache = null;
+    private int sceneLightIndex = 0;
+    private HemicubeSolution hemicubeSolution = null;
+    private SunShadowMap sunShadowMap = null;
+
+    private BakedLighting(BakedLightingOutput output, Scene scene, float pixelToWorldRatio, BakeDependencies dependencies, Executor mainExecutor, Map<Integer, SoftwareTexture> textures, ExecutorService threads, Status status) {
+        if (threads != null) {
+            this.threads = threads;
+            this.sharedThreads = true;
+        } else {
+            this.threads = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+            this.sharedThreads = false;
+        }
         this.output = output;
+        this.mainExecutor = mainExecutor;
+        if (textures != null) {
+            this.sceneTextures.putAll(textures);
+        }
+        this.dependencies = dependencies;
         this.scene = scene;
         this.geometries = scene.getGeometries();
         this.lightmapMeshes = new MeshData.LightmapMesh[this.geometries.size()];
+        this.lightmapUVsKeys = new String[this.geometries.size()];
         this.lightGroups = new ArrayList<>();
         this.pixelToWorldRatio = pixelToWorldRatio;
         this.status = status;
         this.samplingMode = scene.getSamplingMode();
         this.fastMode = scene.isFastModeEnabled();
+        this.relighting = scene.isRelightingEnabled();
+        this.checkpoint = scene.getBakeCheckpoint();
+        if (this.checkpoint != null) {
+            this.cache = (scene.getBakeCache() != null ? scene.getBakeCache() : this.checkpoint.getBakeCache());
+            this.lightmapCache = (scene.getLightmapCache() != null ? scene.getLightmapCache() : this.checkpoint.getLightmapCache());
+        } else {
+            this.cache = scene.getBakeCache();
+            this.lightmapCache = scene.getLightmapCache();
+        }
+        this.coordinator = scene.getBakeCoordinator();
+        this.progressive = scene.isProgressiveEnabled() && this.coordinator == null;
+        this.progressivePasses = (this.progressive ? Math.max(scene.getProgressivePasses(), 1) : 1);
+        this.indirectCoarseFactor = (this.coordinator == null ? Math.max(scene.getIndirectCoarseFactor(), 1) : 1);
+        if (scene.isRadianceCacheEnabled() && this.coordinator == null) {
+            this.radianceCache = new RadianceCache(scene.getRadianceCacheCells(), scene.getRadianceCacheVoxelSize());
+        } else {
+            this.radianceCache = null;
+        }
 
         List<String> names = new ArrayList<>();
         for (Scene.Light light : scene.getLights()) {
@@ -429,40 +663,103 @@ public class BakedLighting {
         if (this.currentLight != null) {
             b.append('[').append(this.currentLightIndex).append('/').append(this.currentLightGroupLights.size()).append("] ");
         }
+        if (this.progressive && this.currentLightGroup != null) {
+            b.append("[Pass ").append(this.progressivePass + 1).append('/').append(this.progressivePasses).append("] ");
+        }
         b.append(s);
         this.status.currentStatus = b.toString();
     }
 
+    private void checkInterruption() {
+        if (this.status.paused && !this.status.cancelled) {
+            String previous = this.status.currentStatus;
+            this.status.currentStatus = "Paused. " + previous;
+            synchronized (this.status) {
+                while (this.status.paused && !this.status.cancelled) {
+                    try {
+                        this.status.wait();
+                    } catch (InterruptedException ex) {
+                        throw new RuntimeException(ex);
+                    }
+                }
+            }
+            this.status.currentStatus = previous;
+        }
+        if (this.status.cancelled) {
+            throw new CancellationException("Bake cancelled.");
+        }
+    }
+
+    private boolean waitIfPaused() {
+        synchronized (this.status) {
+            while (this.status.paused && !this.status.cancelled) {
+                try {
+                    this.status.wait();
+                } catch (InterruptedException ex) {
+                    throw new RuntimeException(ex);
+                }
+            }
+        }
+        return this.status.cancelled;
+    }
+
     private void loadTextures() {
         this.status.setProgressBarStep(this.geometries.size());
 
+        List<Integer> missing = new ArrayList<>();
         for (Geometry geo : this.geometries) {
             setStatusText("Loading Texture [" + geo.getMesh().getName() + "]");
 
-            SoftwareTexture t = this.sceneTextures.get(geo.getMesh().getTextureHint());
-            if (t == null) {
-                CompletableFuture<Void> future = new CompletableFuture<>();
-                Main.MAIN_TASKS.add(() -> {
-                    try {
-                        this.sceneTextures.put(
-                                geo.getMesh().getTextureHint(),
-                                SoftwareTexture.fromGLTexture2D(geo.getMesh().getTextureHint())
-                        );
-                        Main.checkGLError();
-                        future.complete(null);
-                    } catch (Exception ex) {
-                        future.completeExceptionally(ex);
-                    }
-                });
-                try {
-                    future.get();
-                } catch (InterruptedException | ExecutionException ex) {
-                    throw new RuntimeException(ex);
+            int hint = geo.getMesh().getTextureHint();
+            if (!this.sceneTextures.containsKey(hint)) {
+                SoftwareTexture t = SoftwareTextures.get(hint);
+                if (t != null) {
+                    this.sceneTextures.put(hint, t);
+                } else if (!missing.contains(hint)) {
+                    missing.add(hint);
                 }
             }
 
             this.status.stepProgressBar();
         }
+
+        if (missing.isEmpty()) {
+            return;
+        }
+
+        setStatusText("Reading back " + missing.size() + " textures...");
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        this.mainExecutor.execute(() -> {
+            try {
+                for (Integer hint : missing) {
+                    SoftwareTexture t = SoftwareTexture.fromGLTexture2D(hint);
+                    SoftwareTextures.register(hint, t);
+                    this.sceneTextures.put(hint, t);
+                }
+                Main.checkGLError();
+                future.complete(null);
+            } catch (Exception ex) {
+                future.completeExceptionally(ex);
+            }
+        });
+        try {
+            future.get();
+        } catch (InterruptedException | ExecutionException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    private void loadMaterials() {
+        setStatusText("Building Materials");
+        this.status.currentProgress = 0f;
+
+        for (Geometry geo : this.geometries) {
+            SoftwareTexture texture = this.sceneTextures.get(geo.getMesh().getTextureHint());
+            geo.setMaterialIndex(this.materials.add(texture));
+        }
+        this.materials.build(this.threads);
+
+        this.status.currentProgress = 100f;
     }
 
     private void scheduleLightmapMeshes() {
@@ -476,12 +773,38 @@ public class BakedLighting {
             setStatusText("[" + geo.getMesh().getName() + "] [" + i + "/" + this.geometries.size() + "] Scheduling Lightmap UVs");
 
             geo.getModel().getScale(scale);
+            float scaleX = scale.x() * geo.getLightmapScale();
+            float scaleY = scale.y() * geo.getLightmapScale();
+            float scaleZ = scale.z() * geo.getLightmapScale();
+
+            if (this.lightmapCache != null) {
+                String key = new ContentHash()
+                        .put("uvs")
+                        .put(LightmapUVs.VERSION)
+                        .put(LightmapUVs.MARGIN)
+                        .put(LightmapUVs.MAINTAIN_ROTATION)
+                        .put(geo.getMesh().getVertices())
+                        .put(geo.getMesh().getIndices())
+                        .put(this.pixelToWorldRatio)
+                        .put(scaleX).put(scaleY).put(scaleZ)
+                        .finish();
+                LightmapUVs.GeneratorOutput cached = null;
+                if (geo.getMesh().getLightmapMesh(this.pixelToWorldRatio, scaleX, scaleY, scaleZ) == null) {
+                    cached = this.lightmapCache.readUVs(key);
+                }
+                if (cached != null) {
+                    geo.getMesh().addLightmapMesh(this.pixelToWorldRatio, scaleX, scaleY, scaleZ, cached);
+                } else if (!this.lightmapCache.contains(key)) {
+                    this.lightmapUVsKeys[i] = key;
+                }
+            }
+
             this.lightmapMeshes[i] = geo.getMesh()
                     .scheduleLightmapMesh(
                             this.pixelToWorldRatio,
-                            scale.x() * geo.getLightmapScale(),
-                            scale.y() * geo.getLightmapScale(),
-                            scale.z() * geo.getLightmapScale()
+                            scaleX,
+                            scaleY,
+                            scaleZ
                     );
 
             this.status.stepProgressBar();
@@ -498,6 +821,17 @@ public class BakedLighting {
 
             this.lightmapMeshes[i].getLightmapSize();
 
+            if (this.lightmapUVsKeys[i] != null) {
+                this.lightmapCache.writeUVs(
+                        this.lightmapUVsKeys[i],
+                        new LightmapUVs.GeneratorOutput(
+                                this.lightmapMeshes[i].getLightmapSize(),
+                                this.lightmapMeshes[i].getUVs(),
+                                this.lightmapMeshes[i].getQuads()
+                        )
+                );
+            }
+
             this.status.stepProgressBar();
         }
     }
@@ -511,6 +845,130 @@ public class BakedLighting {
         }
     }
 
+    private void prepareHemicube() {
+        if (this.scene.getIndirectEngine() != Scene.IndirectEngine.HEMICUBE
+                || this.coordinator != null
+                || !this.scene.isIndirectLightingEnabled()
+                || this.fastMode) {
+            return;
+        }
+        setStatusText("Rasterizing Hemicube Patches");
+        this.status.currentProgress = 0f;
+
+        this.hemicube = new HemicubeRadiosity(
+                this.geometries,
+                this.lightmapMeshes,
+                this.materials,
+                this.scene.getHemicubeResolution(),
+                this.scene.getRayOffset()
+        );
+
+        this.status.currentProgress = 100f;
+    }
+
+    private void prepareCoordinator() {
+        if (this.coordinator == null) {
+            return;
+        }
+        setStatusText("Sending Job to Bake Workers...");
+        this.status.currentProgress = 0f;
+
+        this.coordinator.prepare(BakeJob.create(this.scene, this.pixelToWorldRatio, this.sceneTextures, this.lightmapMeshes));
+
+        this.status.currentProgress = 100f;
+    }
+
+    private void computeHashes() {
+        if (this.cache == null && this.lightmapCache == null) {
+            return;
+        }
+
+        this.settingsHash = new ContentHash()
+                .put(this.samplingMode.name())
+                .put(this.pixelToWorldRatio)
+                .put(this.scene.isDirectLightingEnabled())
+                .put(this.scene.getDirectLightingAttenuation())
+                .put(this.scene.isShadowsEnabled())
+                .put(tracedRays(this.scene.getShadowRaysPerSample()))
+                .put(this.scene.getShadowBlurArea())
+                .put(this.fastMode && this.scene.isSunShadowMapEnabled())
+                .put(this.scene.getSunShadowMapResolution())
+                .put(this.scene.getSunShadowMapBias())
+                .put(this.scene.isIndirectLightingEnabled())
+                .put(tracedRays(this.scene.getIndirectRaysPerSample()))
+                .put(this.scene.getIndirectAdaptiveThreshold())
+                .put(tracedRays(this.scene.getIndirectMaxRaysPerSample()))
+                .put(this.progressivePasses)
+                .put(this.indirectCoarseFactor)
+                .put(this.scene.isIrradianceCacheEnabled())
+                .put(this.scene.getIrradianceCacheError())
+                .put(tracedRays(this.scene.getIrradianceCacheRays()))
+                .put(this.radianceCache != null)
+                .put(this.scene.getRadianceCacheVoxelSize())
+                .put(this.hemicube != null)
+                .put(this.scene.getHemicubeResolution())
+                .put(this.scene.getIndirectBounces())
+                .put(this.scene.getIndirectLightingBlurArea())
+                .put(this.scene.getIndirectLightReflectionFactor())
+                .put(this.scene.getRayOffset())
+                .put(this.scene.fillEmptyValuesWithLightColors())
+                .put(this.scene.isMedianDenoiserEnabled())
+                .put(this.scene.getMedianDenoiserKernelSize())
+                .put(this.scene.getMedianDenoiserTolerance())
+                .put("relative charts")
+                .put(this.scene.isJumpFloodMarginsEnabled())
+                .put(this.fastMode)
+                .put(this.relighting)
+                .put(BakeMaterials.LEVELS_PER_BOUNCE)
+                .finish();
+
+        this.status.setProgressBarStep(this.geometries.size() + 1);
+
+        this.geometryHashes = new String[this.geometries.size()];
+        ContentHash occluders = new ContentHash();
+        for (int i = 0; i < this.geometries.size(); i++) {
+            Geometry geo = this.geometries.get(i);
+
+            setStatusText("[" + geo.getMesh().getName() + "] [" + i + "/" + this.geometries.size() + "] Hashing Geometry");
+
+            this.geometryHashes[i] = new ContentHash()
+                    .put(geo.getMesh().getVertices())
+                    .put(geo.getMesh().getIndices())
+                    .put(geo.getModel())
+                    .put(geo.getLightmapScale())
+                    .finish();
+            occluders.put(this.geometryHashes[i]);
+
+            this.status.stepProgressBar();
+        }
+        this.occludersHash = occluders.finish();
+
+        setStatusText("Hashing Textures");
+        Map<Integer, String> texturesHashes = new HashMap<>();
+        ContentHash textures = new ContentHash();
+        float[] color = new float[4];
+        for (Geometry geo : this.geometries) {
+            int hint = geo.getMesh().getTextureHint();
+            String textureHash = texturesHashes.get(hint);
+            if (textureHash == null) {
+                SoftwareTexture texture = this.sceneTextures.get(hint);
+                ContentHash pixels = new ContentHash();
+                pixels.put(texture.width()).put(texture.height());
+                for (int y = 0; y < texture.height(); y++) {
+                    for (int x = 0; x < texture.width(); x++) {
+                        texture.fetch(x, y, color, 0);
+                        pixels.put(color[0]).put(color[1]).put(color[2]).put(color[3]);
+                    }
+                }
+                textureHash = pixels.finish();
+                texturesHashes.put(hint, textureHash);
+            }
+            textures.put(textureHash);
+        }
+        this.texturesHash = textures.finish();
+        this.status.stepProgressBar();
+    }
+
     private void loadGeometry(int index) {
         this.geometryIndex = index;
         this.geometry = this.geometries.get(index);
@@ -520,6 +978,12 @@ public class BakedLighting {
 
         this.lightmapMesh = this.lightmapMeshes[index];
         this.geometryLightmapSize = this.lightmapMesh.getLightmapSize();
+
+        this.bakedLightGroups = new boolean[this.lightGroups.size()];
+        for (int i = 0; i < this.bakedLightGroups.length; i++) {
+            this.bakedLightGroups[i] = this.dependencies == null
+                    || this.dependencies.isAffected(this.geometry, this.lightGroups.get(i).groupName);
+        }
         this.lightmapperQuads = this.lightmapMesh.getQuads();
 
         this.vertices = this.geometry.getMesh().getVertices();
@@ -530,20 +994,119 @@ public class BakedLighting {
         this.sampleBuffer = new BooleanBuffer(this.geometryLightmapSize, numSamples);
         this.trianglesBuffer = new IntegerBuffer(this.geometryLightmapSize, numSamples);
         this.weightsBuffer = new WeightsBuffer(this.geometryLightmapSize, numSamples);
+        this.quadsBuffer = new IntegerBuffer(this.geometryLightmapSize);
+        this.quadsBuffer.fill(-1);
+        this.quadsBounds = new float[this.lightmapperQuads.length * 6];
+        if (this.geometryHashes != null) {
+            this.geometryKey = new ContentHash()
+                    .put(this.geometryHashes[index])
+                    .put(this.geometryLightmapSize)
+                    .put(this.samplingMode.name())
+                    .put(this.pixelToWorldRatio)
+                    .finish();
+        }
+        if (this.relighting) {
+            this.geometryBasis = new LightmapBasis(this.geometry, this.lightmapMesh, this.geometryLightmapSize, this.groupsNames, this.bakedLightGroups);
+        }
 
         final BakedLightingOutput finalOutput = this.output;
         final Geometry finalGeometry = this.geometry;
         final MeshData.LightmapMesh finalMesh = this.lightmapMesh;
         final int finalLightmapSize = this.geometryLightmapSize;
         final String[] finalGroupsNames = this.groupsNames;
+        final boolean[] finalBakedLightGroups = this.bakedLightGroups;
 
-        Main.MAIN_TASKS.add(() -> {
-            finalOutput.prepare(finalGeometry, finalMesh, finalLightmapSize, finalGroupsNames);
-        });
+        if (this.dependencies == null) {
+            this.mainExecutor.execute(() -> {
+                finalOutput.prepare(finalGeometry, finalMesh, finalLightmapSize, finalGroupsNames);
+            });
+        } else {
+            this.mainExecutor.execute(() -> {
+                finalOutput.prepareUpdate(finalGeometry, finalMesh, finalLightmapSize, finalGroupsNames, finalBakedLightGroups);
+            });
+        }
 
         this.status.currentProgress = 100f;
     }
 
+    private void loadCachedLightmaps() {
+        if (this.lightmapCache == null) {
+            return;
+        }
+
+        this.cachedLightGroups = new boolean[this.lightGroups.size()];
+        this.lightGroupsKeys = new String[this.lightGroups.size()];
+
+        this.status.setProgressBarStep(this.lightGroups.size());
+        for (int i = 0; i < this.lightGroups.size(); i++) {
+            LightGroup group = this.lightGroups.get(i);
+
+            setStatusText("[" + i + "/" + this.lightGroups.size() + "] Loading Cached Lightmaps");
+
+            if (!this.bakedLightGroups[i]) {
+                this.status.stepProgressBar();
+                continue;
+            }
+
+            ContentHash key = new ContentHash()
+                    .put("lightmap")
+                    .put(this.geometryKey)
+                    .put(this.settingsHash)
+                    .put(this.occludersHash)
+                    .put(this.texturesHash)
+                    .put(group.groupName)
+                    .put(group.lights.size());
+            for (Scene.Light light : group.lights) {
+                hashLight(key, light, true);
+            }
+            this.lightGroupsKeys[i] = key.finish();
+
+            LightmapCache.CachedLightmap cached = this.lightmapCache.readLightmap(this.lightGroupsKeys[i]);
+            if (cached == null || cached.getLightmapSize() != this.geometryLightmapSize) {
+                this.status.stepProgressBar();
+                continue;
+            }
+            this.cachedLightGroups[i] = true;
+
+            if (this.geometryBasis != null) {
+                for (int j = 0; j < cached.getBasisLights().length; j++) {
+                    this.geometryBasis.add(new LightmapBasis.LightBasis(
+                            group.lights.get(cached.getBasisLights()[j]),
+                            i,
+                            cached.getDiffuseBasis()[j],
+                            cached.getAmbientBasis()[j]
+                    ));
+                }
+            }
+
+            final BakedLightingOutput finalOutput = this.output;
+            final float[] finalLightmap = cached.getLightmap();
+            final int finalGroupIndex = i;
+
+            this.mainExecutor.execute(() -> {
+                finalOutput.write(finalLightmap, finalGroupIndex);
+            });
+
+            this.status.stepProgressBar();
+        }
+    }
+
+    private boolean isLightGroupSkipped(int index) {
+        if (!this.bakedLightGroups[index]) {
+            return true;
+        }
+        return this.cachedLightGroups != null && this.cachedLightGroups[index];
+    }
+
+    private boolean allLightGroupsSkipped() {
+        for (int i = 0; i < this.lightGroups.size(); i++) {
+            if (!isLightGroupSkipped(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private int clamp(int v, int min, int max) {
         if (v > max) {
             return max;
@@ -555,83 +1118,154 @@ public class BakedLighting {
     }
 
     private void computeGeometryBuffers() {
-        Vector3f weights = new Vector3f();
-
-        Vector3f pixelPos = new Vector3f();
+        SamplingMode mode = this.samplingMode;
+        int numSamples = mode.numSamples();
+        float[] sampleX = new float[numSamples];
+        float[] sampleY = new float[numSamples];
+        for (int s = 0; s < numSamples; s++) {
+            sampleX[s] = mode.sampleX(s);
+            sampleY[s] = mode.sampleY(s);
+        }
 
-        Vector3f a = new Vector3f();
-        Vector3f b = new Vector3f();
-        Vector3f c = new Vector3f();
+        processTasks("Computing Geometry Buffers", this.lightmapperQuads.length, (i) -> {
+            rasterizeQuad(i, sampleX, sampleY);
+        });
 
-        this.status.setProgressBarStep(this.lightmapperQuads.length);
+        computeDeferredSamples();
+    }
 
-        for (int i = 0; i < this.lightmapperQuads.length; i++) {
-            setStatusText("[" + i + "/" + this.lightmapperQuads.length + "] Computing Geometry Buffers");
+    private void rasterizeQuad(int i, float[] sampleX, float[] sampleY) {
+        int numSamples = sampleX.length;
+        Vector3f weights = new Vector3f();
+        float[] sampleOffsets = new float[numSamples * 3];
 
-            LightmapUVs.LightmapperQuad quad = this.lightmapperQuads[i];
+        LightmapUVs.LightmapperQuad quad = this.lightmapperQuads[i];
 
-            int[] triangles = quad.getTriangles();
-            float[] lightmapVertices = quad.getUVs();
+        int[] triangles = quad.getTriangles();
+        float[] lightmapVertices = quad.getUVs();
 
-            for (int j = 0; j < triangles.length; j++) {
-                int triangle = triangles[j];
+        int quadMinX = clamp(quad.getX(), 0, this.geometryLightmapSize);
+        int quadMinY = clamp(quad.getY(), 0, this.geometryLightmapSize);
+        int quadMaxX = clamp(quad.getX() + quad.getWidth(), 0, this.geometryLightmapSize);
+        int quadMaxY = clamp(quad.getY() + quad.getHeight(), 0, this.geometryLightmapSize);
+        for (int y = quadMinY; y < quadMaxY; y++) {
+            for (int x = quadMinX; x < quadMaxX; x++) {
+                this.quadsBuffer.write(i, x, y, 0);
+            }
+        }
 
-                float v0x = lightmapVertices[(((j * 3) + 0) * 2) + 0] + quad.getX();
-                float v0y = lightmapVertices[(((j * 3) + 0) * 2) + 1] + quad.getY();
+        for (int j = 0; j < triangles.length; j++) {
+            int triangle = triangles[j];
 
-                float v1x = lightmapVertices[(((j * 3) + 1) * 2) + 0] + quad.getX();
-                float v1y = lightmapVertices[(((j * 3) + 1) * 2) + 1] + quad.getY();
+            float v0x = lightmapVertices[(((j * 3) + 0) * 2) + 0] + quad.getX();
+            float v0y = lightmapVertices[(((j * 3) + 0) * 2) + 1] + quad.getY();
 
-                float v2x = lightmapVertices[(((j * 3) + 2) * 2) + 0] + quad.getX();
-                float v2y = lightmapVertices[(((j * 3) + 2) * 2) + 1] + quad.getY();
+            float v1x = lightmapVertices[(((j * 3) + 1) * 2) + 0] + quad.getX();
+            float v1y = lightmapVertices[(((j * 3) + 1) * 2) + 1] + quad.getY();
 
-                a.set(v0x, v0y, 0f);
-                b.set(v1x, v1y, 0f);
-                c.set(v2x, v2y, 0f);
+            float v2x = lightmapVertices[(((j * 3) + 2) * 2) + 0] + quad.getX();
+            float v2y = lightmapVertices[(((j * 3) + 2) * 2) + 1] + quad.getY();
 
-                int minX = (int) Math.floor(Math.min(v0x, Math.min(v1x, v2x)));
-                int minY = (int) Math.floor(Math.min(v0y, Math.min(v1y, v2y)));
-                int maxX = (int) Math.ceil(Math.max(v0x, Math.max(v1x, v2x)));
-                int maxY = (int) Math.ceil(Math.max(v0y, Math.max(v1y, v2y)));
+            float area = ((v1x - v0x) * (v2y - v0y)) - ((v1y - v0y) * (v2x - v0x));
+            float invArea = 1f / area;
+            if (!Float.isFinite(invArea)) {
+                continue;
+            }
 
-                minX = clamp(minX, 0, this.geometryLightmapSize - 1);
-                minY = clamp(minY, 0, this.geometryLightmapSize - 1);
-                maxX = clamp(maxX, 0, this.geometryLightmapSize - 1);
-                maxY = clamp(maxY, 0, this.geometryLightmapSize - 1);
+            //edge functions, e0 is the weight of v0 (opposite of v1 -> v2) and so on
+            float e0x = -(v2y - v1y) * invArea;
+            float e0y = (v2x - v1x) * invArea;
+            float e0c = -((e0x * v1x) + (e0y * v1y));
+            float e1x = -(v0y - v2y) * invArea;
+            float e1y = (v0x - v2x) * invArea;
+            float e1c = -((e1x * v2x) + (e1y * v2y));
+            float e2x = -(v1y - v0y) * invArea;
+            float e2y = (v1x - v0x) * invArea;
+            float e2c = -((e2x * v0x) + (e2y * v0y));
+
+            for (int s = 0; s < numSamples; s++) {
+                sampleOffsets[(s * 3) + 0] = (e0x * sampleX[s]) + (e0y * sampleY[s]);
+                sampleOffsets[(s * 3) + 1] = (e1x * sampleX[s]) + (e1y * sampleY[s]);
+                sampleOffsets[(s * 3) + 2] = (e2x * sampleX[s]) + (e2y * sampleY[s]);
+            }
 
-                SamplingMode mode = this.samplingMode;
+            int minX = Math.max((int) Math.floor(Math.min(v0x, Math.min(v1x, v2x))), quadMinX);
+            int minY = Math.max((int) Math.floor(Math.min(v0y, Math.min(v1y, v2y))), quadMinY);
+            int maxX = Math.min((int) Math.ceil(Math.max(v0x, Math.max(v1x, v2x))), quadMaxX - 1);
+            int maxY = Math.min((int) Math.ceil(Math.max(v0y, Math.max(v1y, v2y))), quadMaxY - 1);
 
-                raster:
-                for (int y = minY; y <= maxY; y++) {
-                    for (int x = minX; x <= maxX; x++) {
-                        for (int s = 0; s < mode.numSamples(); s++) {
-                            float sampleX = mode.sampleX(s);
-                            float sampleY = mode.sampleY(s);
+            for (int y = minY; y <= maxY; y++) {
+                float w0 = (e0x * minX) + (e0y * y) + e0c;
+                float w1 = (e1x * minX) + (e1y * y) + e1c;
+                float w2 = (e2x * minX) + (e2y * y) + e2c;
+                for (int x = minX; x <= maxX; x++) {
+                    for (int s = 0; s < numSamples; s++) {
+                        float wx = w0 + sampleOffsets[(s * 3) + 0];
+                        float wy = w1 + sampleOffsets[(s * 3) + 1];
+                        float wz = w2 + sampleOffsets[(s * 3) + 2];
 
-                            pixelPos.set(x + sampleX, y + sampleY, 0f);
+                        if (wx < 0f || wy < 0f || wz < 0f) {
+                            continue;
+                        }
 
-                            RasterUtils.barycentricWeights(pixelPos, a, b, c, weights);
+                        weights.set(wx, wy, wz);
+                        this.sampleBuffer.write(true, x, y, s);
+                        this.trianglesBuffer.write(triangle, x, y, s);
+                        this.weightsBuffer.write(weights, x, y, s);
+                    }
+                    w0 += e0x;
+                    w1 += e1x;
+                    w2 += e2x;
+                }
+            }
+        }
+    }
 
-                            float wx = weights.x();
-                            float wy = weights.y();
-                            float wz = weights.z();
+    private void computeBounds() {
+        Vector3f position = new Vector3f();
 
-                            if (!Float.isFinite(wx) || !Float.isFinite(wy) || !Float.isFinite(wz)) {
-                                break raster;
-                            }
+        this.status.setProgressBarStep(this.lightmapperQuads.length);
 
-                            if (wx < 0f || wy < 0f || wz < 0f) {
-                                continue;
-                            }
+        LightInfluence.geometryBounds(this.geometry, this.geometryMin, this.geometryMax);
 
-                            this.sampleBuffer.write(true, x, y, s);
-                            this.trianglesBuffer.write(triangle, x, y, s);
-                            this.weightsBuffer.write(weights, x, y, s);
-                        }
-                    }
+        for (int i = 0; i < this.lightmapperQuads.length; i++) {
+            setStatusText("[" + i + "/" + this.lightmapperQuads.length + "] Computing Bounds");
+
+            int[] triangles = this.lightmapperQuads[i].getTriangles();
+
+            float minX = Float.POSITIVE_INFINITY;
+            float minY = Float.POSITIVE_INFINITY;
+            float minZ = Float.POSITIVE_INFINITY;
+            float maxX = Float.NEGATIVE_INFINITY;
+            float maxY = Float.NEGATIVE_INFINITY;
+            float maxZ = Float.NEGATIVE_INFINITY;
+
+            for (int triangle : triangles) {
+                for (int v = 0; v < 3; v++) {
+                    int vertex = this.indices[(triangle * 3) + v];
+                    position.set(
+                            this.vertices[(vertex * MeshData.SIZE) + MeshData.XYZ_OFFSET + 0],
+                            this.vertices[(vertex * MeshData.SIZE) + MeshData.XYZ_OFFSET + 1],
+                            this.vertices[(vertex * MeshData.SIZE) + MeshData.XYZ_OFFSET + 2]
+                    );
+                    this.geometry.getModel().transformProject(position);
+
+                    minX = Math.min(minX, position.x());
+                    minY = Math.min(minY, position.y());
+                    minZ = Math.min(minZ, position.z());
+                    maxX = Math.max(maxX, position.x());
+                    maxY = Math.max(maxY, position.y());
+                    maxZ = Math.max(maxZ, position.z());
                 }
             }
 
+            this.quadsBounds[(i * 6) + 0] = minX;
+            this.quadsBounds[(i * 6) + 1] = minY;
+            this.quadsBounds[(i * 6) + 2] = minZ;
+            this.quadsBounds[(i * 6) + 3] = maxX;
+            this.quadsBounds[(i * 6) + 4] = maxY;
+            this.quadsBounds[(i * 6) + 5] = maxZ;
+
             this.status.stepProgressBar();
         }
     }
@@ -644,7 +1278,11 @@ public class BakedLighting {
         setStatusText("Loading Light Group...");
         this.status.currentProgress = 0f;
 
-        this.lightGroupOutput = new ColorBuffer(this.geometryLightmapSize, 1);
+        this.lightGroupOutput = new ColorBuffer(this.geometryLightmapSize);
+        if (this.relighting) {
+            this.lightGroupDiffuseBasis = new ColorBuffer[this.currentLightGroupLights.size()];
+            this.lightGroupAmbientBasis = new ColorBuffer[this.currentLightGroupLights.size()];
+        }
 
         this.status.currentProgress = 100f;
     }
@@ -652,6 +1290,7 @@ public class BakedLighting {
     private void loadLight(int index) {
         this.currentLight = this.currentLightGroup.lights.get(index);
         this.currentLightIndex = index;
+        this.sceneLightIndex = this.scene.getLights().indexOf(this.currentLight);
 
         setStatusText("Loading Light...");
         this.status.currentProgress = 0f;
@@ -675,57 +1314,990 @@ public class BakedLighting {
             throw new RuntimeException("Unsupported Light Type: " + this.currentLight.getClass());
         }
 
+        //lighting is linear in the light colors, relightable bakes use unit colors and scale later
+        if (this.relighting) {
+            this.lightDiffuse.set(1f, 1f, 1f);
+            this.lightAmbient.set(1f, 1f, 1f);
+        } else {
+            this.lightDiffuse.set(this.currentLight.getDiffuse());
+            if (this.sun != null) {
+                this.lightAmbient.set(this.sun.getAmbient());
+            } else {
+                this.lightAmbient.zero();
+            }
+        }
+
+        cullLight();
+        if (this.lightCulled) {
+            this.status.currentProgress = 100f;
+            return;
+        }
+
         int numSamples = this.samplingMode.numSamples();
 
         this.indirectColorBuffer = new ColorBuffer(this.geometryLightmapSize, numSamples);
         this.directColorBuffer = new ColorBuffer(this.geometryLightmapSize, numSamples);
         this.reverseShadowBuffer = new GrayBuffer(this.geometryLightmapSize, numSamples);
+        if (this.relighting && this.lightType == 0) {
+            this.indirectAmbientColorBuffer = new ColorBuffer(this.geometryLightmapSize, numSamples);
+        }
+        if (this.fastMode && this.sun != null && this.scene.isSunShadowMapEnabled() && this.scene.isShadowsEnabled()) {
+            this.sunShadowMap = this.sunShadowMaps.get(this.sceneLightIndex);
+            if (this.sunShadowMap == null) {
+                setStatusText("Rendering Sun Shadow Map...");
+                this.sunShadowMap = new SunShadowMap(
+                        this.geometries,
+                        this.sun.getDirection(),
+                        this.scene.getSunShadowMapResolution(),
+                        this.scene.getSunShadowMapBias()
+                );
+                this.sunShadowMaps.put(this.sceneLightIndex, this.sunShadowMap);
+            }
+        }
+        if (this.scene.isIrradianceCacheEnabled()) {
+            this.irradianceCache = new IrradianceCache(
+                    this.scene.getIrradianceCacheError(),
+                    IRRADIANCE_CACHE_MIN_TEXELS / this.pixelToWorldRatio,
+                    IRRADIANCE_CACHE_MAX_TEXELS / this.pixelToWorldRatio
+            );
+        }
 
         this.status.currentProgress = 100f;
     }
 
-    private float lerp(Vector3fc weights, int i0, int i1, int i2, int offset) {
-        float va  = this.vertices[(i0 * MeshData.SIZE) + offset];
-        float vb = this.vertices[(i1 * MeshData.SIZE) + offset];
-        float vc = this.vertices[(i2 * MeshData.SIZE) + offset];
-        return (va  * weights.x()) + (vb * weights.y()) + (vc * weights.z());
-    }
-
-    private void bakeLightComponents() {
-        int amountOfCores = Runtime.getRuntime().availableProcessors();
+    private void cullLight() {
+        //spot cones can only be culled if nothing is written outside of them
+        boolean coneCulling = !this.scene.fillEmptyValuesWithLightColors()
+                && !this.fastMode
+                && !this.scene.isIndirectLightingEnabled();
 
-        this.status.setProgressBarStep(this.geometryLightmapSize);
+        this.culledQuads = new boolean[this.lightmapperQuads.length];
+        this.lightCulled = LightInfluence.outside(this.currentLight, this.geometryMin, this.geometryMax, coneCulling);
+        if (this.lightCulled) {
+            Arrays.fill(this.culledQuads, true);
+            return;
+        }
 
-        List<Future<?>> tasks = new ArrayList<>(amountOfCores);
+        Vector3f min = new Vector3f();
+        Vector3f max = new Vector3f();
 
-        this.status.timeStart = System.currentTimeMillis();
-        this.status.rays = 0;
-        for (int y = 0; y < this.geometryLightmapSize; y += amountOfCores) {
+        boolean allCulled = true;
+        for (int i = 0; i < this.lightmapperQuads.length; i++) {
+            min.set(this.quadsBounds[(i * 6) + 0], this.quadsBounds[(i * 6) + 1], this.quadsBounds[(i * 6) + 2]);
+            max.set(this.quadsBounds[(i * 6) + 3], this.quadsBounds[(i * 6) + 4], this.quadsBounds[(i * 6) + 5]);
+            this.culledQuads[i] = LightInfluence.outside(this.currentLight, min, max, coneCulling);
+            if (!this.culledQuads[i]) {
+                allCulled = false;
+            }
+        }
+        this.lightCulled = allCulled;
+    }
 
-            setStatusText("[" + y + "/" + this.geometryLightmapSize + "] Baking");
+    private boolean isCulled(int x, int y) {
+        int quad = this.quadsBuffer.read(x, y, 0);
+        return quad >= 0 && this.culledQuads[quad];
+    }
+
+    private float[] compact(ColorBuffer buffer) {
+        int numSamples = this.samplingMode.numSamples();
+        float[] compacted = new float[this.geometryLightmapSize * this.geometryLightmapSize * 3];
+        Vector3f color = new Vector3f();
+        Vector3f average = new Vector3f();
+        for (int y = 0; y < this.geometryLightmapSize; y++) {
+            for (int x = 0; x < this.geometryLightmapSize; x++) {
+                average.zero();
+                int count = 0;
+                for (int s = 0; s < numSamples; s++) {
+                    if (this.sampleBuffer.read(x, y, s)) {
+                        buffer.read(color, x, y, s);
+                        average.add(color);
+                        count++;
+                    }
+                }
+                if (count != 0) {
+                    average.div(count);
+                }
+                compacted[0 + (x * 3) + (y * this.geometryLightmapSize * 3)] = average.x();
+                compacted[1 + (x * 3) + (y * this.geometryLightmapSize * 3)] = average.y();
+                compacted[2 + (x * 3) + (y * this.geometryLightmapSize * 3)] = average.z();
+            }
+        }
+        return compacted;
+    }
+
+    private float[] compact(GrayBuffer buffer) {
+        int numSamples = this.samplingMode.numSamples();
+        float[] compacted = new float[this.geometryLightmapSize * this.geometryLightmapSize];
+        for (int y = 0; y < this.geometryLightmapSize; y++) {
+            for (int x = 0; x < this.geometryLightmapSize; x++) {
+                float average = 0f;
+                int count = 0;
+                for (int s = 0; s < numSamples; s++) {
+                    if (this.sampleBuffer.read(x, y, s)) {
+                        average += buffer.read(x, y, s);
+                        count++;
+                    }
+                }
+                if (count != 0) {
+                    average /= count;
+                }
+                compacted[x + (y * this.geometryLightmapSize)] = average;
+            }
+        }
+        return compacted;
+    }
+
+    private ColorBuffer expandColor(float[] compacted) {
+        int numSamples = this.samplingMode.numSamples();
+        ColorBuffer buffer = new ColorBuffer(this.geometryLightmapSize, numSamples);
+        Vector3f color = new Vector3f();
+        for (int y = 0; y < this.geometryLightmapSize; y++) {
+            for (int x = 0; x < this.geometryLightmapSize; x++) {
+                color.set(
+                        compacted[0 + (x * 3) + (y * this.geometryLightmapSize * 3)],
+                        compacted[1 + (x * 3) + (y * this.geometryLightmapSize * 3)],
+                        compacted[2 + (x * 3) + (y * this.geometryLightmapSize * 3)]
+                );
+                for (int s = 0; s < numSamples; s++) {
+                    if (this.sampleBuffer.read(x, y, s)) {
+                        buffer.write(color, x, y, s);
+                    }
+                }
+            }
+        }
+        return buffer;
+    }
+
+    private GrayBuffer expandGray(float[] compacted) {
+        int numSamples = this.samplingMode.numSamples();
+        GrayBuffer buffer = new GrayBuffer(this.geometryLightmapSize, numSamples);
+        for (int y = 0; y < this.geometryLightmapSize; y++) {
+            for (int x = 0; x < this.geometryLightmapSize; x++) {
+                float value = compacted[x + (y * this.geometryLightmapSize)];
+                for (int s = 0; s < numSamples; s++) {
+                    if (this.sampleBuffer.read(x, y, s)) {
+                        buffer.write(value, x, y, s);
+                    }
+                }
+            }
+        }
+        return buffer;
+    }
+
+    private void hashLight(ContentHash hash, Scene.Light light, boolean colors) {
+        hash
+                .put(light.getClass().getName())
+                .put(light.getLightSize())
+                .put(light.getLuminance());
+        if (colors) {
+            hash.put(light.getDiffuse());
+        }
+        if (light instanceof Scene.DirectionalLight s) {
+            hash.put(s.getDirection());
+            if (colors) {
+                hash.put(s.getAmbient());
+            }
+        }
+        if (light instanceof Scene.PointLight p) {
+            hash
+                    .put(p.getPosition())
+                    .put(p.getBakeCutoff());
+        }
+        if (light instanceof Scene.SpotLight p) {
+            hash
+                    .put(p.getDirection())
+                    .put(p.getCutoffAngle())
+                    .put(p.getOuterCutoffAngle());
+        }
+    }
+
+    private void computeComponentKeys() {
+        ContentHash lightHash = new ContentHash()
+                .put(this.geometryKey)
+                .put(this.relighting);
+        hashLight(lightHash, this.currentLight, !this.relighting);
+        String light = lightHash.finish();
+
+        this.directKey = new ContentHash()
+                .put("direct")
+                .put(light)
+                .put(this.scene.isDirectLightingEnabled())
+                .put(this.scene.fillEmptyValuesWithLightColors())
+                .put(this.scene.getDirectLightingAttenuation())
+                .finish();
+        this.shadowKey = new ContentHash()
+                .put("shadow")
+                .put(light)
+                .put(this.scene.isShadowsEnabled())
+                .put(shadowRaysPerSample() * this.progressivePasses)
+                .put(this.fastMode)
+                .put(this.fastMode && this.scene.isSunShadowMapEnabled())
+                .put(this.scene.getSunShadowMapResolution())
+                .put(this.scene.getSunShadowMapBias())
+                .put(this.scene.getRayOffset())
+                .put(this.occludersHash)
+                .finish();
+        this.shadowDenoisedKey = new ContentHash()
+                .put(this.shadowKey)
+                .put("atrous")
+                .put(this.scene.getShadowBlurArea())
+                .finish();
+        this.indirectKey = new ContentHash()
+                .put("indirect")
+                .put(BakeMaterials.LEVELS_PER_BOUNCE)
+                .put(light)
+                .put(this.scene.isIndirectLightingEnabled())
+                .put(this.fastMode)
+                .put(this.scene.fillEmptyValuesWithLightColors())
+                .put(this.scene.getDirectLightingAttenuation())
+                .put(indirectRaysPerSample() * this.progressivePasses)
+                .put(this.scene.getIndirectAdaptiveThreshold())
+                .put(indirectMaxRaysPerSample() * this.progressivePasses)
+                .put(this.progressivePasses)
+                .put(this.indirectCoarseFactor)
+                .put(this.scene.isIrradianceCacheEnabled())
+                .put(this.scene.getIrradianceCacheError())
+                .put(irradianceCacheRaysPerSample() * this.progressivePasses)
+                .put(this.radianceCache != null)
+                .put(this.scene.getRadianceCacheVoxelSize())
+                .put(this.hemicube != null)
+                .put(this.scene.getHemicubeResolution())
+                .put(this.scene.getIndirectBounces())
+                .put(this.scene.getIndirectLightReflectionFactor())
+                .put(this.scene.getRayOffset())
+                .put(this.occludersHash)
+                .put(this.texturesHash)
+                .finish();
+        this.indirectDenoisedKey = new ContentHash()
+                .put(this.indirectKey)
+                .put("atrous")
+                .put(this.scene.getIndirectLightingBlurArea())
+                .finish();
+    }
+
+    private float[][] partialBuffers() {
+        return new float[][]{
+            (this.computeDirect ? this.directColorBuffer.data : null),
+            (this.computeShadow ? this.reverseShadowBuffer.data : null),
+            (this.computeIndirect ? this.indirectColorBuffer.data : null),
+            (this.computeIndirect && this.indirectAmbientColorBuffer != null ? this.indirectAmbientColorBuffer.data : null)
+        };
+    }
+
+    private int loadPartialComponents() {
+        if (this.checkpoint == null || this.progressive) {
+            return 0;
+        }
+
+        this.partialKey = new ContentHash()
+                .put("partial")
+                .put(TILE_SIZE)
+                .put(this.directKey)
+                .put(this.shadowKey)
+                .put(this.indirectKey)
+                .put(this.computeDirect)
+                .put(this.computeShadow)
+                .put(this.computeIndirect)
+                .finish();
+
+        BakeCheckpoint.Partial partial = this.checkpoint.readPartial(this.partialKey);
+        if (partial == null) {
+            return 0;
+        }
+
+        float[][] buffers = partialBuffers();
+        float[][] saved = partial.getBuffers();
+        if (saved.length != buffers.length) {
+            return 0;
+        }
+        for (int i = 0; i < buffers.length; i++) {
+            int length = (buffers[i] == null ? -1 : buffers[i].length);
+            int savedLength = (saved[i] == null ? -1 : saved[i].length);
+            if (length != savedLength) {
+                return 0;
+            }
+        }
+        for (int i = 0; i < buffers.length; i++) {
+            if (buffers[i] != null) {
+                System.arraycopy(saved[i], 0, buffers[i], 0, buffers[i].length);
+            }
+        }
+
+        return Math.min(Math.max(partial.getCompletedLines(), 0) & ~TILE_MASK, this.geometryLightmapSize);
+    }
+
+    private void storePartialComponents(int completedLines) {
+        if (this.checkpoint == null || this.progressive || (!this.checkpoint.isDue() && !this.status.cancelled)) {
+            return;
+        }
+        setStatusText("Writing Checkpoint...");
+        this.checkpoint.writePartial(this.partialKey, completedLines, partialBuffers());
+    }
+
+    private boolean loadCachedIndirect(String key) {
+        float[] indirect = this.cache.get(key);
+        float[] ambient = null;
+        if (indirect == null) {
+            return false;
+        }
+        if (this.indirectAmbientColorBuffer != null) {
+            ambient = this.cache.get(key + "-ambient");
+            if (ambient == null) {
+                return false;
+            }
+        }
+        this.indirectColorBuffer = expandColor(indirect);
+        if (ambient != null) {
+            this.indirectAmbientColorBuffer = expandColor(ambient);
+        }
+        return true;
+    }
+
+    private void storeIndirect(String key) {
+        this.cache.put(key, compact(this.indirectColorBuffer));
+        if (this.indirectAmbientColorBuffer != null) {
+            this.cache.put(key + "-ambient", compact(this.indirectAmbientColorBuffer));
+        }
+    }
+
+    private void loadCachedComponents() {
+        this.computeDirect = true;
+        this.computeShadow = true;
+        this.computeIndirect = true;
+        this.denoiseShadow = !this.fastMode;
+        this.denoiseIndirect = !this.fastMode;
+
+        if (this.cache == null) {
+            return;
+        }
+
+        setStatusText("Loading Cached Light Components...");
+        this.status.currentProgress = 0f;
+
+        computeComponentKeys();
+
+        float[] direct = this.cache.get(this.directKey);
+        if (direct != null) {
+            this.directColorBuffer = expandColor(direct);
+            this.computeDirect = false;
+        }
+
+        float[] shadow = null;
+        if (this.denoiseShadow) {
+            shadow = this.cache.get(this.shadowDenoisedKey);
+            if (shadow != null) {
+                this.denoiseShadow = false;
+            }
+        }
+        if (shadow == null) {
+            shadow = this.cache.get(this.shadowKey);
+        }
+        if (shadow != null) {
+            this.reverseShadowBuffer = expandGray(shadow);
+            this.computeShadow = false;
+        }
+
+        if (this.denoiseIndirect && loadCachedIndirect(this.indirectDenoisedKey)) {
+            this.denoiseIndirect = false;
+            this.computeIndirect = false;
+        } else if (loadCachedIndirect(this.indirectKey)) {
+            this.computeIndirect = false;
+        }
+
+        this.status.currentProgress = 100f;
+    }
+
+    private void storeComponents() {
+        if (this.cache == null) {
+            return;
+        }
+
+        setStatusText("Storing Light Components...");
+        this.status.currentProgress = 0f;
+
+        if (this.computeDirect) {
+            this.cache.put(this.directKey, compact(this.directColorBuffer));
+        }
+        if (this.computeShadow) {
+            this.cache.put(this.shadowKey, compact(this.reverseShadowBuffer));
+        }
+        if (this.computeIndirect) {
+            storeIndirect(this.indirectKey);
+        }
+        if (this.checkpoint != null) {
+            this.checkpoint.clearPartial();
+        }
+
+        this.status.currentProgress = 100f;
+    }
+
+    private void storeDenoisedComponents() {
+        if (this.cache == null) {
+            return;
+        }
+
+        setStatusText("Storing Denoised Light Components...");
+        this.status.currentProgress = 0f;
+
+        if (this.denoiseShadow) {
+            this.cache.put(this.shadowDenoisedKey, compact(this.reverseShadowBuffer));
+        }
+        if (this.denoiseIndirect) {
+            storeIndirect(this.indirectDenoisedKey);
+        }
+
+        this.status.currentProgress = 100f;
+    }
+
+    private float lerp(Vector3fc weights, int i0, int i1, int i2, int offset) {
+        float va  = this.vertices[(i0 * MeshData.SIZE) + offset];
+        float vb = this.vertices[(i1 * MeshData.SIZE) + offset];
+        float vc = this.vertices[(i2 * MeshData.SIZE) + offset];
+        return (va  * weights.x()) + (vb * weights.y()) + (vc * weights.z());
+    }
+
+    private void bakeRemoteLightComponents() {
+        this.status.setProgressBarStep(this.geometryLightmapSize);
+        this.status.currentProgress = 0f;
+
+        setStatusText("Baking on " + this.coordinator.getAliveWorkers() + " Workers");
+
+        final float[][] buffers = partialBuffers();
+        final int lightmapSize = this.geometryLightmapSize;
+
+        this.coordinator.bakeTiles(
+                this.geometryIndex, this.currentLightGroupIndex, this.currentLightIndex,
+                this.computeDirect, this.computeShadow, this.computeIndirect,
+                0, lightmapSize,
+                (lineStart, lineEnd, tile) -> {
+                    for (int i = 0; i < buffers.length; i++) {
+                        if (buffers[i] == null || tile[i] == null) {
+                            continue;
+                        }
+                        int offset = BufferLayout.tiledLineOffset(buffers[i].length, lightmapSize, lineStart);
+                        System.arraycopy(tile[i], 0, buffers[i], offset, tile[i].length);
+                    }
+                    for (int i = lineStart; i < lineEnd; i++) {
+                        this.status.stepProgressBar();
+                    }
+                },
+                this::waitIfPaused
+        );
+
+        checkInterruption();
+    }
+
+    private void bakeLightComponents() {
+        if (!this.computeDirect && !this.computeShadow && !this.computeIndirect) {
+            return;
+        }
+
+        if (this.coordinator != null) {
+            bakeRemoteLightComponents();
+            fillDeferredSamples(null);
+            return;
+        }
+
+        solveHemicube();
+        prepareCoarseIndirect();
+
+        int amountOfCores = Runtime.getRuntime().availableProcessors();
+
+        this.status.setProgressBarStep(this.geometryLightmapSize);
+
+        List<Future<?>> tasks = new ArrayList<>(amountOfCores);
+
+        int start = loadPartialComponents();
+        this.status.currentProgress = Math.min(start * this.status.progressBarStep, 100f);
+
+        this.status.timeStart = System.currentTimeMillis();
+        this.status.rays = 0;
+        int chunk = amountOfCores << TILE_SHIFT;
+        for (int y = start; y < this.geometryLightmapSize; y += chunk) {
+
+            setStatusText("[" + y + "/" + this.geometryLightmapSize + "] Baking");
 
             for (int i = 0; i < amountOfCores; i++) {
-                final int line = y + i;
-                if (line >= this.geometryLightmapSize) {
+                final int stripStart = y + (i << TILE_SHIFT);
+                if (stripStart >= this.geometryLightmapSize) {
                     break;
                 }
-                tasks.add(this.threads.submit(() -> {
-                    processLine(line);
-                }));
+                final int stripEnd = Math.min(stripStart + TILE_SIZE, this.geometryLightmapSize);
+                tasks.add(this.threads.submit(() -> {
+                    for (int line = stripStart; line < stripEnd; line++) {
+                        processLine(line);
+                    }
+                }));
+            }
+
+            for (int i = 0; i < tasks.size(); i++) {
+                try {
+                    tasks.get(i).get();
+                    int stripStart = y + (i << TILE_SHIFT);
+                    int stripEnd = Math.min(stripStart + TILE_SIZE, this.geometryLightmapSize);
+                    for (int line = stripStart; line < stripEnd; line++) {
+                        this.status.stepProgressBar();
+                    }
+                } catch (InterruptedException | ExecutionException ex) {
+                    throw new RuntimeException(ex);
+                }
+            }
+
+            tasks.clear();
+
+            storePartialComponents(Math.min(y + chunk, this.geometryLightmapSize));
+            checkInterruption();
+        }
+
+        if (this.indirectMask != null) {
+            upsampleIndirect();
+        }
+        fillDeferredSamples(refineAdaptiveSamples());
+        this.status.rays = 0;
+    }
+
+    private boolean isDeferred(int x, int y, int s) {
+        return this.deferredBuffer != null && this.deferredBuffer.read(x, y, s);
+    }
+
+    private void computeDeferredSamples() {
+        this.deferredBuffer = null;
+        if (!this.samplingMode.isAdaptive()) {
+            return;
+        }
+
+        int numSamples = this.samplingMode.numSamples();
+        int baseSamples = this.samplingMode.baseSamples();
+        BooleanBuffer deferred = new BooleanBuffer(this.geometryLightmapSize, numSamples);
+
+        //texels covered by a single triangle with smooth normals only trace their base samples
+        processLines("Choosing Adaptive Samples", (y) -> {
+            Vector3f weights = new Vector3f();
+            Vector3f normal = new Vector3f();
+            Vector3f firstNormal = new Vector3f();
+            for (int x = 0; x < this.geometryLightmapSize; x++) {
+                int covered = 0;
+                int triangle = -1;
+                boolean uniform = true;
+                for (int s = 0; s < numSamples && uniform; s++) {
+                    if (!this.sampleBuffer.read(x, y, s)) {
+                        continue;
+                    }
+                    int currentTriangle = this.trianglesBuffer.read(x, y, s);
+                    int i0 = this.indices[(currentTriangle * 3) + 0];
+                    int i1 = this.indices[(currentTriangle * 3) + 1];
+                    int i2 = this.indices[(currentTriangle * 3) + 2];
+                    this.weightsBuffer.read(weights, x, y, s);
+                    normal.set(
+                            lerp(weights, i0, i1, i2, MeshData.N_XYZ_OFFSET + 0),
+                            lerp(weights, i0, i1, i2, MeshData.N_XYZ_OFFSET + 1),
+                            lerp(weights, i0, i1, i2, MeshData.N_XYZ_OFFSET + 2)
+                    ).normalize();
+                    if (covered == 0) {
+                        triangle = currentTriangle;
+                        firstNormal.set(normal);
+                    } else if (currentTriangle != triangle || normal.dot(firstNormal) < ADAPTIVE_NORMAL_THRESHOLD) {
+                        uniform = false;
+                    }
+                    covered++;
+                }
+                if (!uniform || covered <= baseSamples) {
+                    continue;
+                }
+                int kept = 0;
+                for (int s = 0; s < numSamples; s++) {
+                    if (!this.sampleBuffer.read(x, y, s)) {
+                        continue;
+                    }
+                    if (kept < baseSamples) {
+                        kept++;
+                        continue;
+                    }
+                    deferred.write(true, x, y, s);
+                }
+            }
+        });
+
+        this.deferredBuffer = deferred;
+    }
+
+    private boolean adaptiveDisagreement(int x, int y, int a, int b, Vector3f colorA, Vector3f colorB) {
+        if (this.computeShadow) {
+            float shadowA = this.reverseShadowBuffer.read(x, y, a);
+            float shadowB = this.reverseShadowBuffer.read(x, y, b);
+            if (Math.abs(shadowA - shadowB) > ADAPTIVE_SHADOW_THRESHOLD) {
+                return true;
+            }
+        }
+        if (this.computeIndirect) {
+            this.indirectColorBuffer.read(colorA, x, y, a);
+            this.indirectColorBuffer.read(colorB, x, y, b);
+            float luminanceA = (colorA.x() + colorA.y() + colorA.z()) / 3f;
+            float luminanceB = (colorB.x() + colorB.y() + colorB.z()) / 3f;
+            float reference = Math.max(Math.max(luminanceA, luminanceB), 1e-4f);
+            if (Math.abs(luminanceA - luminanceB) > ADAPTIVE_INDIRECT_THRESHOLD * reference) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private BooleanBuffer refineAdaptiveSamples() {
+        if (this.deferredBuffer == null || (!this.computeShadow && !this.computeIndirect)) {
+            return null;
+        }
+
+        int numSamples = this.samplingMode.numSamples();
+        BooleanBuffer refine = new BooleanBuffer(this.geometryLightmapSize, numSamples);
+        boolean[] anyRefined = new boolean[this.geometryLightmapSize];
+
+        processLines("Comparing Adaptive Samples", (y) -> {
+            Vector3f colorA = new Vector3f();
+            Vector3f colorB = new Vector3f();
+            for (int x = 0; x < this.geometryLightmapSize; x++) {
+                if (isCulled(x, y)) {
+                    continue;
+                }
+                int first = -1;
+                int second = -1;
+                boolean hasDeferred = false;
+                for (int s = 0; s < numSamples; s++) {
+                    if (!this.sampleBuffer.read(x, y, s)) {
+                        continue;
+                    }
+                    if (this.deferredBuffer.read(x, y, s)) {
+                        hasDeferred = true;
+                    } else if (first == -1) {
+                        first = s;
+                    } else if (second == -1) {
+                        second = s;
+                    }
+                }
+                if (!hasDeferred || second == -1 || !adaptiveDisagreement(x, y, first, second, colorA, colorB)) {
+                    continue;
+                }
+                for (int s = 0; s < numSamples; s++) {
+                    if (this.deferredBuffer.read(x, y, s)) {
+                        refine.write(true, x, y, s);
+                    }
+                }
+                anyRefined[y] = true;
+            }
+        });
+
+        //direct is traced too, the fill pass skips refined samples entirely
+        this.refineMask = refine;
+        try {
+            processLines("Refining Adaptive Samples", (y) -> {
+                if (anyRefined[y]) {
+                    processLine(y);
+                }
+            });
+        } finally {
+            this.refineMask = null;
+        }
+
+        return refine;
+    }
+
+    private void fillDeferredSamples(BooleanBuffer refined) {
+        if (this.deferredBuffer == null || (!this.computeDirect && !this.computeShadow && !this.computeIndirect)) {
+            return;
+        }
+
+        int numSamples = this.samplingMode.numSamples();
+        boolean direct = this.computeDirect;
+        boolean shadow = this.computeShadow;
+        boolean indirect = this.computeIndirect;
+        boolean ambient = this.computeIndirect && this.indirectAmbientColorBuffer != null;
+
+        //samples that were not traced take the average of the traced ones, the texel average stays the same
+        processLines("Filling Adaptive Samples", (y) -> {
+            Vector3f color = new Vector3f();
+            Vector3f directSum = new Vector3f();
+            Vector3f indirectSum = new Vector3f();
+            Vector3f ambientSum = new Vector3f();
+            for (int x = 0; x < this.geometryLightmapSize; x++) {
+                if (isCulled(x, y)) {
+                    continue;
+                }
+                directSum.zero();
+                indirectSum.zero();
+                ambientSum.zero();
+                float shadowSum = 0f;
+                int traced = 0;
+                boolean missing = false;
+                for (int s = 0; s < numSamples; s++) {
+                    if (!this.sampleBuffer.read(x, y, s)) {
+                        continue;
+                    }
+                    if (this.deferredBuffer.read(x, y, s) && (refined == null || !refined.read(x, y, s))) {
+                        missing = true;
+                        continue;
+                    }
+                    if (direct) {
+                        this.directColorBuffer.read(color, x, y, s);
+                        directSum.add(color);
+                    }
+                    if (shadow) {
+                        shadowSum += this.reverseShadowBuffer.read(x, y, s);
+                    }
+                    if (indirect) {
+                        this.indirectColorBuffer.read(color, x, y, s);
+                        indirectSum.add(color);
+                    }
+                    if (ambient) {
+                        this.indirectAmbientColorBuffer.read(color, x, y, s);
+                        ambientSum.add(color);
+                    }
+                    traced++;
+                }
+                if (!missing || traced == 0) {
+                    continue;
+                }
+                float invTraced = 1f / traced;
+                directSum.mul(invTraced);
+                indirectSum.mul(invTraced);
+                ambientSum.mul(invTraced);
+                shadowSum *= invTraced;
+                for (int s = 0; s < numSamples; s++) {
+                    if (!this.deferredBuffer.read(x, y, s) || (refined != null && refined.read(x, y, s))) {
+                        continue;
+                    }
+                    if (direct) {
+                        this.directColorBuffer.write(directSum, x, y, s);
+                    }
+                    if (shadow) {
+                        this.reverseShadowBuffer.write(shadowSum, x, y, s);
+                    }
+                    if (indirect) {
+                        this.indirectColorBuffer.write(indirectSum, x, y, s);
+                    }
+                    if (ambient) {
+                        this.indirectAmbientColorBuffer.write(ambientSum, x, y, s);
+                    }
+                }
+            }
+        });
+    }
+
+    private void processLines(String text, IntConsumer line) {
+        int size = this.geometryLightmapSize;
+        processTasks(text, (size + TILE_MASK) >> TILE_SHIFT, (strip) -> {
+            int end = Math.min((strip + 1) << TILE_SHIFT, size);
+            for (int y = strip << TILE_SHIFT; y < end; y++) {
+                line.accept(y);
+            }
+        });
+    }
+
+    private void processTasks(String text, int amount, IntConsumer task) {
+        int amountOfCores = Runtime.getRuntime().availableProcessors();
+        List<Future<?>> tasks = new ArrayList<>(amountOfCores);
+
+        this.status.setProgressBarStep(amount);
+        for (int y = 0; y < amount; y += amountOfCores) {
+            setStatusText("[" + y + "/" + amount + "] " + text);
+            for (int i = 0; i < amountOfCores; i++) {
+                final int l = y + i;
+                if (l >= amount) {
+                    break;
+                }
+                tasks.add(this.threads.submit(() -> {
+                    task.accept(l);
+                }));
+            }
+            for (Future<?> f : tasks) {
+                try {
+                    f.get();
+                    this.status.stepProgressBar();
+                } catch (InterruptedException | ExecutionException ex) {
+                    throw new RuntimeException(ex);
+                }
+            }
+            tasks.clear();
+            checkInterruption();
+        }
+    }
+
+    private void computeSurfaceBuffers() {
+        int numSamples = this.samplingMode.numSamples();
+        this.positionsBuffer = new ColorBuffer(this.geometryLightmapSize, numSamples);
+        this.normalsBuffer = new ColorBuffer(this.geometryLightmapSize, numSamples);
+
+        processLines("Computing Surface Buffers", (y) -> {
+            Vector3f weights = new Vector3f();
+            Vector3f position = new Vector3f();
+            Vector3f normal = new Vector3f();
+            for (int x = 0; x < this.geometryLightmapSize; x++) {
+                for (int s = 0; s < numSamples; s++) {
+                    if (!this.sampleBuffer.read(x, y, s)) {
+                        continue;
+                    }
+                    int triangle = this.trianglesBuffer.read(x, y, s);
+                    int i0 = this.indices[(triangle * 3) + 0];
+                    int i1 = this.indices[(triangle * 3) + 1];
+                    int i2 = this.indices[(triangle * 3) + 2];
+                    this.weightsBuffer.read(weights, x, y, s);
+
+                    position.set(
+                            lerp(weights, i0, i1, i2, MeshData.XYZ_OFFSET + 0),
+                            lerp(weights, i0, i1, i2, MeshData.XYZ_OFFSET + 1),
+                            lerp(weights, i0, i1, i2, MeshData.XYZ_OFFSET + 2)
+                    );
+                    normal.set(
+                            lerp(weights, i0, i1, i2, MeshData.N_XYZ_OFFSET + 0),
+                            lerp(weights, i0, i1, i2, MeshData.N_XYZ_OFFSET + 1),
+                            lerp(weights, i0, i1, i2, MeshData.N_XYZ_OFFSET + 2)
+                    );
+                    this.geometry.getModel().transformProject(position);
+                    this.geometry.getNormalModel().transform(normal);
+                    normal.normalize();
+                    if (!normal.isFinite()) {
+                        normal.zero();
+                    }
+
+                    this.positionsBuffer.write(position, x, y, s);
+                    this.normalsBuffer.write(normal, x, y, s);
+                }
+            }
+        });
+    }
+
+    private void prepareCoarseIndirect() {
+        this.indirectMask = null;
+        if (!this.computeIndirect || this.indirectCoarseFactor <= 1) {
+            return;
+        }
+        if (this.positionsBuffer == null) {
+            computeSurfaceBuffers();
+        }
+
+        int numSamples = this.samplingMode.numSamples();
+        int factor = this.indirectCoarseFactor;
+        this.indirectMask = new BooleanBuffer(this.geometryLightmapSize, numSamples);
+        for (int y = 0; y < this.geometryLightmapSize; y += factor) {
+            for (int x = 0; x < this.geometryLightmapSize; x += factor) {
+                for (int s = 0; s < numSamples; s++) {
+                    this.indirectMask.write(true, x, y, s);
+                }
             }
+        }
+    }
 
-            for (Future<?> f : tasks) {
-                try {
-                    f.get();
-                    this.status.stepProgressBar();
-                } catch (InterruptedException | ExecutionException ex) {
-                    throw new RuntimeException(ex);
+    private void upsampleIndirect() {
+        int numSamples = this.samplingMode.numSamples();
+        int factor = this.indirectCoarseFactor;
+        int size = this.geometryLightmapSize;
+        float sigma = factor / this.pixelToWorldRatio;
+        float invTwoSigmaSquared = 1f / (2f * sigma * sigma);
+        BooleanBuffer coarse = this.indirectMask;
+        BooleanBuffer missing = new BooleanBuffer(size, numSamples);
+        boolean[] anyMissing = new boolean[size];
+
+        //joint bilateral upsampling guided by the surface positions and normals, within the same chart
+        processLines("Upsampling Indirect", (y) -> {
+            Vector3f position = new Vector3f();
+            Vector3f normal = new Vector3f();
+            Vector3f otherPosition = new Vector3f();
+            Vector3f otherNormal = new Vector3f();
+            Vector3f color = new Vector3f();
+            Vector3f indirect = new Vector3f();
+            Vector3f ambient = new Vector3f();
+            int coarseY = (y / factor) * factor;
+            for (int x = 0; x < size; x++) {
+                if (isCulled(x, y)) {
+                    continue;
+                }
+                int quad = this.quadsBuffer.read(x, y, 0);
+                int coarseX = (x / factor) * factor;
+                for (int s = 0; s < numSamples; s++) {
+                    if (!this.sampleBuffer.read(x, y, s) || coarse.read(x, y, s) || isDeferred(x, y, s)) {
+                        continue;
+                    }
+                    this.positionsBuffer.read(position, x, y, s);
+                    this.normalsBuffer.read(normal, x, y, s);
+
+                    indirect.zero();
+                    ambient.zero();
+                    float totalWeight = 0f;
+                    for (int cy = coarseY - factor; cy <= coarseY + (factor * 2); cy += factor) {
+                        if (cy < 0 || cy >= size) {
+                            continue;
+                        }
+                        float weightY = 1f - (Math.abs(cy - y) / (factor * 2f));
+                        for (int cx = coarseX - factor; cx <= coarseX + (factor * 2); cx += factor) {
+                            if (cx < 0 || cx >= size || this.quadsBuffer.read(cx, cy, 0) != quad) {
+                                continue;
+                            }
+                            float weightXY = weightY * (1f - (Math.abs(cx - x) / (factor * 2f)));
+                            if (weightXY <= 0f) {
+                                continue;
+                            }
+                            for (int cs = 0; cs < numSamples; cs++) {
+                                if (!this.sampleBuffer.read(cx, cy, cs) || isDeferred(cx, cy, cs)) {
+                                    continue;
+                                }
+                                this.normalsBuffer.read(otherNormal, cx, cy, cs);
+                                float normalWeight = Math.max(normal.dot(otherNormal), 0f);
+                                normalWeight *= normalWeight;
+                                normalWeight *= normalWeight;
+                                normalWeight *= normalWeight;
+                                if (normalWeight <= 0f) {
+                                    continue;
+                                }
+                                this.positionsBuffer.read(otherPosition, cx, cy, cs);
+                                float weight = weightXY * normalWeight
+                                        * (float) Math.exp(-position.distanceSquared(otherPosition) * invTwoSigmaSquared);
+
+                                this.indirectColorBuffer.read(color, cx, cy, cs);
+                                indirect.add(color.mul(weight));
+                                if (this.indirectAmbientColorBuffer != null) {
+                                    this.indirectAmbientColorBuffer.read(color, cx, cy, cs);
+                                    ambient.add(color.mul(weight));
+                                }
+                                totalWeight += weight;
+                            }
+                        }
+                    }
+
+                    if (totalWeight < 1e-4f) {
+                        missing.write(true, x, y, s);
+                        anyMissing[y] = true;
+                        continue;
+                    }
+
+                    float invTotalWeight = 1f / totalWeight;
+                    this.indirectColorBuffer.write(indirect.mul(invTotalWeight), x, y, s);
+                    if (this.indirectAmbientColorBuffer != null) {
+                        this.indirectAmbientColorBuffer.write(ambient.mul(invTotalWeight), x, y, s);
+                    }
                 }
             }
+        });
 
-            tasks.clear();
+        boolean fill = false;
+        for (boolean b : anyMissing) {
+            fill |= b;
         }
-        this.status.rays = 0;
+
+        //samples with no usable coarse neighbour, like small charts, are traced at full resolution
+        if (fill) {
+            boolean direct = this.computeDirect;
+            boolean shadow = this.computeShadow;
+            this.computeDirect = false;
+            this.computeShadow = false;
+            this.indirectMask = missing;
+            processLines("Filling Indirect", (y) -> {
+                if (anyMissing[y]) {
+                    processLine(y);
+                }
+            });
+            this.computeDirect = direct;
+            this.computeShadow = shadow;
+        }
+
+        this.indirectMask = null;
     }
 
     private static class SampleState {
@@ -756,7 +2328,10 @@ public class BakedLighting {
 
     private class IndirectState {
 
+        public boolean active = true;
+        public float firstHitDistance = Float.POSITIVE_INFINITY;
         public final Vector3f output = new Vector3f();
+        public final Vector3f ambientOutput = new Vector3f();
         public final Vector3f[] bounceColors = new Vector3f[BakedLighting.this.scene.getIndirectBounces()];
 
         {
@@ -771,6 +2346,17 @@ public class BakedLighting {
         public final Vector3f bounceWeights = new Vector3f();
         public final Vector3f smoothNormal = new Vector3f();
         public final float[] bounceColor = new float[4];
+        public final Vector3f cachedRadiance = new Vector3f();
+        public final Vector3f cachedAmbient = new Vector3f();
+        public final Vector3f[] vertexPositions = new Vector3f[this.bounceColors.length];
+        public final Vector3f[] vertexNormals = new Vector3f[this.bounceColors.length];
+
+        {
+            for (int i = 0; i < this.vertexPositions.length; i++) {
+                this.vertexPositions[i] = new Vector3f();
+                this.vertexNormals[i] = new Vector3f();
+            }
+        }
     }
 
     private void processLine(int y) {
@@ -789,11 +2375,22 @@ public class BakedLighting {
         int i2 = -1;
 
         for (int x = 0; x < this.geometryLightmapSize; x++) {
+            if (isCulled(x, y)) {
+                continue;
+            }
             for (int s = 0; s < this.samplingMode.numSamples(); s++) {
                 boolean filled = this.sampleBuffer.read(x, y, s);
                 if (!filled) {
                     continue;
                 }
+                if (this.refineMask != null ? !this.refineMask.read(x, y, s) : isDeferred(x, y, s)) {
+                    continue;
+                }
+
+                indirect.active = this.computeIndirect && (this.indirectMask == null || this.indirectMask.read(x, y, s));
+                if (!this.computeDirect && !this.computeShadow && !indirect.active) {
+                    continue;
+                }
 
                 state.x = x;
                 state.y = y;
@@ -847,6 +2444,7 @@ public class BakedLighting {
                 direct.output.zero();
                 shadow.output = 0f;
                 indirect.output.zero();
+                indirect.ambientOutput.zero();
 
                 processSample(
                         state,
@@ -855,9 +2453,18 @@ public class BakedLighting {
                         indirect
                 );
 
-                this.directColorBuffer.write(direct.output, x, y, s);
-                this.reverseShadowBuffer.write(shadow.output, x, y, s);
-                this.indirectColorBuffer.write(indirect.output, x, y, s);
+                if (this.computeDirect) {
+                    this.directColorBuffer.write(direct.output, x, y, s);
+                }
+                if (this.computeShadow) {
+                    this.reverseShadowBuffer.write(shadow.output, x, y, s);
+                }
+                if (indirect.active) {
+                    this.indirectColorBuffer.write(indirect.output, x, y, s);
+                    if (this.indirectAmbientColorBuffer != null) {
+                        this.indirectAmbientColorBuffer.write(indirect.ambientOutput, x, y, s);
+                    }
+                }
             }
         }
     }
@@ -966,41 +2573,52 @@ public class BakedLighting {
             }
         }
 
-        if (this.scene.isDirectLightingEnabled()) {
-            processDirect(state, direct);
-        } else if (this.scene.fillEmptyValuesWithLightColors()) {
-            switch (this.lightType) {
-                case 0 -> {
-                    direct.output
-                            .set(this.sun.getDiffuse());
-                }
-                case 1, 2 -> {
-                    direct.output
-                            .set(this.point.getDiffuse())
-                            .div(this.point.getPosition().distanceSquared(state.position) + this.scene.getDirectLightingAttenuation());
+        if (this.computeDirect) {
+            if (this.scene.isDirectLightingEnabled()) {
+                processDirect(state, direct);
+            } else if (this.scene.fillEmptyValuesWithLightColors()) {
+                switch (this.lightType) {
+                    case 0 -> {
+                        direct.output
+                                .set(this.lightDiffuse);
+                    }
+                    case 1, 2 -> {
+                        direct.output
+                                .set(this.lightDiffuse)
+                                .div(this.point.getPosition().distanceSquared(state.position) + this.scene.getDirectLightingAttenuation());
+                    }
                 }
             }
         }
 
-        if (this.scene.isShadowsEnabled()) {
-            processShadow(state, shadow);
-        } else {
-            shadow.output = 1f;
+        if (this.computeShadow) {
+            if (this.scene.isShadowsEnabled()) {
+                processShadow(state, shadow);
+            } else {
+                shadow.output = 1f;
+            }
         }
 
-        if (this.scene.isIndirectLightingEnabled() && !this.fastMode) {
-            processIndirect(state, indirect);
-        } else if (this.scene.fillEmptyValuesWithLightColors() || this.fastMode) {
-            switch (this.lightType) {
-                case 0 -> {
-                    indirect.output
-                            .set(this.sun.getAmbient());
-                }
-                case 1, 2 -> {
-                    indirect.output
-                            .set(this.point.getDiffuse())
-                            .mul(0.03f)
-                            .div(this.point.getPosition().distanceSquared(state.position) + this.scene.getDirectLightingAttenuation());
+        if (indirect.active) {
+            if (this.scene.isIndirectLightingEnabled() && !this.fastMode) {
+                processIndirect(state, indirect);
+            } else if (this.scene.fillEmptyValuesWithLightColors() || this.fastMode) {
+                switch (this.lightType) {
+                    case 0 -> {
+                        if (this.relighting) {
+                            indirect.ambientOutput
+                                    .set(this.lightAmbient);
+                        } else {
+                            indirect.output
+                                    .set(this.lightAmbient);
+                        }
+                    }
+                    case 1, 2 -> {
+                        indirect.output
+                                .set(this.lightDiffuse)
+                                .mul(0.03f)
+                                .div(this.point.getPosition().distanceSquared(state.position) + this.scene.getDirectLightingAttenuation());
+                    }
                 }
             }
         }
@@ -1010,7 +2628,7 @@ public class BakedLighting {
         switch (this.lightType) {
             case 0 -> {
                 output
-                        .set(this.sun.getDiffuse())
+                        .set(this.lightDiffuse)
                         .mul(Math.max(normal.dot(this.sun.getDirectionNegated()), 0f));
             }
             case 1, 2 -> {
@@ -1029,7 +2647,7 @@ public class BakedLighting {
                     intensity = Math.min(Math.max((theta - this.spot.getOuterCutoffAngleRadiansCosine()) / epsilon, 0f), 1f);
                 }
                 output
-                        .set(this.point.getDiffuse())
+                        .set(this.lightDiffuse)
                         .mul(Math.max(normal.dot(dirX, dirY, dirZ), 0f))
                         .div((length * length) + this.scene.getDirectLightingAttenuation())
                         .mul(intensity);
@@ -1045,17 +2663,49 @@ public class BakedLighting {
         calculateDirect(state.position, normal, direct.output);
     }
 
+    private int shadowRaysPerSample() {
+        if (this.fastMode) {
+            return 1;
+        }
+        return raysPerPass(this.scene.getShadowRaysPerSample());
+    }
+
+    private int indirectRaysPerSample() {
+        return raysPerPass(this.scene.getIndirectRaysPerSample());
+    }
+
+    private int indirectMaxRaysPerSample() {
+        return raysPerPass(this.scene.getIndirectMaxRaysPerSample());
+    }
+
+    private int irradianceCacheRaysPerSample() {
+        return raysPerPass(this.scene.getIrradianceCacheRays());
+    }
+
+    private int raysPerPass(int rays) {
+        return Math.max((rays + this.progressivePasses - 1) / this.progressivePasses, 1);
+    }
+
+    private int tracedRays(int rays) {
+        return raysPerPass(rays) * this.progressivePasses;
+    }
+
     private void processShadow(SampleState state, ShadowState shadow) {
         shadow.offsetOrigin
                 .set(state.triangleNormal)
                 .mul(this.scene.getRayOffset())
                 .add(state.position);
 
-        int rays = this.scene.getShadowRaysPerSample();
-        if (this.fastMode) {
-            rays = 1;
+        if (this.sunShadowMap != null) {
+            int visibility = this.sunShadowMap.test(shadow.offsetOrigin);
+            if (visibility != SunShadowMap.UNKNOWN) {
+                shadow.output = (visibility == SunShadowMap.LIT ? 1f : 0f);
+                return;
+            }
         }
 
+        int rays = shadowRaysPerSample();
+
         float shadowValue = 0f;
         for (int i = 0; i < rays; i++) {
             randomLightDirection(state.position, shadow.randomDirection, state.random);
@@ -1079,315 +2729,422 @@ public class BakedLighting {
         shadow.output = 1f - shadowValue;
     }
 
-    private void processIndirect(SampleState state, IndirectState indirect) {
-        for (int i = 0; i < this.scene.getIndirectRaysPerSample(); i++) {
-            randomTangentDirection(indirect.bounceDirection, state.random);
-            state.TBN.transform(indirect.bounceDirection);
+    private float traceIndirectPath(SampleState state, IndirectState indirect) {
+        randomTangentDirection(indirect.bounceDirection, state.random);
+        state.TBN.transform(indirect.bounceDirection);
 
-            float rayOffset = this.scene.getRayOffset();
-            float offsetX = state.triangleNormal.x() * rayOffset;
-            float offsetY = state.triangleNormal.y() * rayOffset;
-            float offsetZ = state.triangleNormal.z() * rayOffset;
+        float rayOffset = this.scene.getRayOffset();
+        float offsetX = state.triangleNormal.x() * rayOffset;
+        float offsetY = state.triangleNormal.y() * rayOffset;
+        float offsetZ = state.triangleNormal.z() * rayOffset;
 
-            if (state.normal.isFinite()) {
-                indirect.smoothNormal.set(state.normal);
-            } else {
-                indirect.smoothNormal.set(state.triangleNormal);
-            }
+        if (state.normal.isFinite()) {
+            indirect.smoothNormal.set(state.normal);
+        } else {
+            indirect.smoothNormal.set(state.triangleNormal);
+        }
 
-            indirect.bouncePosition
-                    .set(state.position)
-                    .add(offsetX, offsetY, offsetZ);
-
-            boolean foundLight = false;
-            int bounceCount = 0;
-            for (int j = 0; j < this.scene.getIndirectBounces(); j++) {
-                if (j != 0) {
-                    calculateDirect(indirect.bouncePosition, indirect.smoothNormal, indirect.lightColor);
-                    if (!indirect.lightColor.equals(0f, 0f, 0f)) {
-                        randomLightDirection(indirect.bouncePosition, indirect.randomLightDirection, state.random);
-                        this.status.rays++;
+        indirect.bouncePosition
+                .set(state.position)
+                .add(offsetX, offsetY, offsetZ);
+
+        indirect.firstHitDistance = Float.POSITIVE_INFINITY;
+
+        boolean foundLight = false;
+        boolean foundAmbient = false;
+        boolean foundCache = false;
+        int lastVertex = 0;
+        int bounceCount = 0;
+        for (int j = 0; j < this.scene.getIndirectBounces(); j++) {
+            if (j != 0) {
+                if (this.radianceCache != null) {
+                    indirect.vertexPositions[j].set(indirect.bouncePosition);
+                    indirect.vertexNormals[j].set(indirect.smoothNormal);
+                    lastVertex = j;
+                    if (this.radianceCache.lookup(this.sceneLightIndex, indirect.bouncePosition, indirect.smoothNormal, indirect.cachedRadiance, indirect.cachedAmbient)) {
+                        foundCache = true;
+                        break;
+                    }
+                }
 
-                        switch (this.lightType) {
-                            case 0 -> {
-                                if (!Geometry.fastTestRay(indirect.bouncePosition, indirect.randomLightDirection, Float.POSITIVE_INFINITY, this.geometries)) {
-                                    foundLight = true;
-                                }
-                            }
-                            case 1, 2 -> {
-                                float length = indirect.randomLightDirection.length();
-                                if (!Geometry.fastTestRay(indirect.bouncePosition, indirect.randomLightDirection.div(length), length, this.geometries)) {
-                                    foundLight = true;
-                                }
+                calculateDirect(indirect.bouncePosition, indirect.smoothNormal, indirect.lightColor);
+                if (!indirect.lightColor.equals(0f, 0f, 0f)) {
+                    randomLightDirection(indirect.bouncePosition, indirect.randomLightDirection, state.random);
+                    this.status.rays++;
+
+                    switch (this.lightType) {
+                        case 0 -> {
+                            if (!Geometry.fastTestRay(indirect.bouncePosition, indirect.randomLightDirection, Float.POSITIVE_INFINITY, this.geometries)) {
+                                foundLight = true;
                             }
                         }
-
-                        if (foundLight) {
-                            break;
+                        case 1, 2 -> {
+                            float length = indirect.randomLightDirection.length();
+                            if (!Geometry.fastTestRay(indirect.bouncePosition, indirect.randomLightDirection.div(length), length, this.geometries)) {
+                                foundLight = true;
+                            }
                         }
                     }
-                }
 
-                this.status.rays++;
-                RayResult[] results = Geometry.testRay(indirect.bouncePosition, indirect.bounceDirection, this.scene.getGeometries());
-                if (results.length == 0) {
-                    if (this.lightType == 0) {
-                        foundLight = true;
-                        indirect.lightColor.set(this.sun.getAmbient());
+                    if (foundLight) {
+                        break;
                     }
-                    break;
                 }
+            }
 
-                RayResult closestRay = results[0];
-                closestRay.weights(indirect.bounceWeights);
-
-                float u = closestRay.lerp(indirect.bounceWeights, MeshData.UV_OFFSET + 0);
-                float v = closestRay.lerp(indirect.bounceWeights, MeshData.UV_OFFSET + 1);
+            this.status.rays++;
+            RayResult[] results = Geometry.testRay(indirect.bouncePosition, indirect.bounceDirection, this.scene.getGeometries());
+            if (results.length == 0) {
+                if (this.lightType == 0) {
+                    foundLight = true;
+                    foundAmbient = true;
+                    indirect.lightColor.set(this.lightAmbient);
+                }
+                break;
+            }
 
-                float nx = closestRay.lerp(indirect.bounceWeights, MeshData.N_XYZ_OFFSET + 0);
-                float ny = closestRay.lerp(indirect.bounceWeights, MeshData.N_XYZ_OFFSET + 1);
-                float nz = closestRay.lerp(indirect.bounceWeights, MeshData.N_XYZ_OFFSET + 2);
+            RayResult closestRay = results[0];
+            if (j == 0) {
+                indirect.firstHitDistance = closestRay.getDistance();
+            }
+            closestRay.weights(indirect.bounceWeights);
 
-                indirect.smoothNormal.set(nx, ny, nz).normalize();
-                if (!indirect.smoothNormal.isFinite()) {
-                    indirect.smoothNormal.set(closestRay.getTriangleNormal());
-                }
+            float u = closestRay.lerp(indirect.bounceWeights, MeshData.UV_OFFSET + 0);
+            float v = closestRay.lerp(indirect.bounceWeights, MeshData.UV_OFFSET + 1);
 
-                SoftwareTexture rayTexture = this.sceneTextures.get(closestRay.getGeometry().getMesh().getTextureHint());
-                rayTexture.sampleNearest(u, v, indirect.bounceColor, 0);
+            float nx = closestRay.lerp(indirect.bounceWeights, MeshData.N_XYZ_OFFSET + 0);
+            float ny = closestRay.lerp(indirect.bounceWeights, MeshData.N_XYZ_OFFSET + 1);
+            float nz = closestRay.lerp(indirect.bounceWeights, MeshData.N_XYZ_OFFSET + 2);
 
-                indirect.bounceColor[0] = (float) Math.pow(indirect.bounceColor[0], 2.2);
-                indirect.bounceColor[1] = (float) Math.pow(indirect.bounceColor[1], 2.2);
-                indirect.bounceColor[2] = (float) Math.pow(indirect.bounceColor[2], 2.2);
+            indirect.smoothNormal.set(nx, ny, nz).normalize();
+            if (!indirect.smoothNormal.isFinite()) {
+                indirect.smoothNormal.set(closestRay.getTriangleNormal());
+            }
 
-                indirect.bounceColors[bounceCount].set(indirect.bounceColor);
-                bounceCount++;
+            this.materials.sample(closestRay.getGeometry().getMaterialIndex(), j, u, v, indirect.bounceColor, 0);
 
-                indirect.bouncePosition.set(closestRay.getTriangleNormal());
-                if (!closestRay.frontFace()) {
-                    indirect.bouncePosition.negate();
-                }
-                indirect.bouncePosition
-                        .mul(this.scene.getRayOffset())
-                        .add(closestRay.getHitPosition());
+            indirect.bounceColors[bounceCount].set(indirect.bounceColor);
+            bounceCount++;
 
-                indirect.bounceDirection.reflect(closestRay.getTriangleNormal());
+            indirect.bouncePosition.set(closestRay.getTriangleNormal());
+            if (!closestRay.frontFace()) {
+                indirect.bouncePosition.negate();
             }
+            indirect.bouncePosition
+                    .mul(this.scene.getRayOffset())
+                    .add(closestRay.getHitPosition());
 
-            if (foundLight) {
-                if (bounceCount != 0) {
-                    Vector3f first = indirect.bounceColors[0];
-                    for (int j = 1; j < bounceCount; j++) {
-                        first.mul(indirect.bounceColors[j]);
-                    }
-                    first.mul(this.scene.getIndirectLightReflectionFactor());
-                    float r = Math.min(Math.max(first.x(), 0f), 1f);
-                    float g = Math.min(Math.max(first.y(), 0f), 1f);
-                    float b = Math.min(Math.max(first.z(), 0f), 1f);
-                    indirect.lightColor.mul(r, g, b);
-                }
-                indirect.output.add(indirect.lightColor);
-            }
+            indirect.bounceDirection.reflect(closestRay.getTriangleNormal());
         }
-        indirect.output.div(this.scene.getIndirectRaysPerSample());
-    }
 
-    private void denoiseComponents() {
-        if (this.fastMode) {
-            return;
+        //paths out of bounces still count, as zero radiance
+        if (!foundCache && this.radianceCache != null) {
+            fillRadianceCache(indirect, lastVertex, foundLight, foundAmbient);
         }
 
-        int numSamples = this.samplingMode.numSamples();
-        final ColorBuffer indirectOutput = new ColorBuffer(this.geometryLightmapSize, numSamples);
-        final GrayBuffer reversedShadowOutput = new GrayBuffer(this.geometryLightmapSize, numSamples);
-
-        int amountOfCores = Runtime.getRuntime().availableProcessors();
-        List<Future<?>> tasks = new ArrayList<>(amountOfCores);
-
-        this.status.setProgressBarStep(this.lightmapperQuads.length);
-        for (int i = 0; i < this.lightmapperQuads.length; i += amountOfCores) {
-            setStatusText("[" + i + "/" + this.lightmapperQuads.length + "] Denoising");
+        if (!foundLight && !foundCache) {
+            return 0f;
+        }
 
-            for (int j = 0; j < amountOfCores; j++) {
-                int quad = i + j;
-                if (quad >= this.lightmapperQuads.length) {
-                    break;
-                }
-                tasks.add(this.threads.submit(() -> {
-                    denoiseQuad(indirectOutput, reversedShadowOutput, quad);
-                }));
+        float r = 1f;
+        float g = 1f;
+        float b = 1f;
+        if (bounceCount != 0) {
+            Vector3f first = indirect.bounceColors[0];
+            for (int j = 1; j < bounceCount; j++) {
+                first.mul(indirect.bounceColors[j]);
             }
+            first.mul(this.scene.getIndirectLightReflectionFactor());
+            r = Math.min(Math.max(first.x(), 0f), 1f);
+            g = Math.min(Math.max(first.y(), 0f), 1f);
+            b = Math.min(Math.max(first.z(), 0f), 1f);
+        }
 
-            for (Future<?> f : tasks) {
-                try {
-                    f.get();
-                } catch (InterruptedException | ExecutionException ex) {
-                    throw new RuntimeException(ex);
-                }
-                this.status.stepProgressBar();
+        if (foundCache) {
+            indirect.lightColor.set(indirect.cachedRadiance).mul(r, g, b);
+            indirect.cachedAmbient.mul(r, g, b);
+            if (this.relighting) {
+                indirect.ambientOutput.add(indirect.cachedAmbient);
+            } else {
+                indirect.lightColor.add(indirect.cachedAmbient);
             }
-
-            tasks.clear();
+            indirect.output.add(indirect.lightColor);
+            return luminance(indirect.lightColor);
         }
 
-        this.indirectColorBuffer = indirectOutput;
-        this.reverseShadowBuffer = reversedShadowOutput;
+        indirect.lightColor.mul(r, g, b);
+        if (foundAmbient && this.relighting) {
+            indirect.ambientOutput.add(indirect.lightColor);
+        } else {
+            indirect.output.add(indirect.lightColor);
+        }
+        return luminance(indirect.lightColor);
     }
 
-    private void denoiseQuad(ColorBuffer indirectOutput, GrayBuffer reversedShadowOutput, int i) {
-        int numSamples = this.samplingMode.numSamples();
-
-        Vector3f color = new Vector3f();
+    private float luminance(Vector3fc color) {
+        return (color.x() * 0.2126f) + (color.y() * 0.7152f) + (color.z() * 0.0722f);
+    }
 
-        LightmapUVs.LightmapperQuad quad = this.lightmapperQuads[i];
+    private void fillRadianceCache(IndirectState indirect, int lastVertex, boolean foundLight, boolean foundAmbient) {
+        //radiance leaving each vertex towards the previous one, albedos are applied walking back
+        Vector3f radiance = indirect.cachedRadiance.zero();
+        Vector3f ambient = indirect.cachedAmbient.zero();
+        if (foundLight) {
+            if (foundAmbient && this.relighting) {
+                ambient.set(indirect.lightColor);
+            } else {
+                radiance.set(indirect.lightColor);
+            }
+        }
+        for (int j = lastVertex; j >= 1; j--) {
+            this.radianceCache.add(this.sceneLightIndex, indirect.vertexPositions[j], indirect.vertexNormals[j], radiance, ambient);
+            radiance.mul(indirect.bounceColors[j - 1]);
+            ambient.mul(indirect.bounceColors[j - 1]);
+        }
+    }
 
-        int minX = clamp(quad.getX(), 0, this.geometryLightmapSize);
-        int minY = clamp(quad.getY(), 0, this.geometryLightmapSize);
-        int maxX = clamp(quad.getX() + quad.getWidth(), 0, this.geometryLightmapSize);
-        int maxY = clamp(quad.getY() + quad.getHeight(), 0, this.geometryLightmapSize);
-
-        final int width = maxX - minX;
-        final int height = maxY - minY;
-        final int xOffset = minX;
-        final int yOffset = minY;
-        final boolean[] sampleMap = new boolean[width * height * numSamples];
-        final boolean[] boundsMap = new boolean[width * height];
-        final float[] colorMap = new float[width * height * 3];
-        final float[] reversedShadowMap = new float[width * height];
-
-        if (width <= 0 || height <= 0) {
+    private void processCachedIndirect(SampleState state, IndirectState indirect) {
+        Vector3fc normal = state.normal;
+        if (!normal.isFinite()) {
+            normal = state.triangleNormal;
+        }
+        if (this.irradianceCache.interpolate(state.position, normal, indirect.output, indirect.ambientOutput)) {
             return;
         }
 
-        for (int y = minY; y < maxY; y++) {
-            for (int x = minX; x < maxX; x++) {
-                float r = 0f;
-                float g = 0f;
-                float b = 0f;
-                float reversedShadow = 0f;
-                int sampleCount = 0;
-                for (int s = 0; s < numSamples; s++) {
-                    if (!this.sampleBuffer.read(x, y, s)) {
-                        continue;
-                    }
+        int rays = irradianceCacheRaysPerSample();
+        float inverseDistances = 0f;
+        for (int i = 0; i < rays; i++) {
+            traceIndirectPath(state, indirect);
+            inverseDistances += 1f / indirect.firstHitDistance;
+        }
+        indirect.output.div(rays);
+        indirect.ambientOutput.div(rays);
 
-                    this.indirectColorBuffer.read(color, x, y, s);
-                    r += color.x();
-                    g += color.y();
-                    b += color.z();
-                    reversedShadow += this.reverseShadowBuffer.read(x, y, s);
-                    sampleCount++;
+        float harmonicMeanDistance = (inverseDistances > 0f ? rays / inverseDistances : Float.POSITIVE_INFINITY);
+        this.irradianceCache.add(state.position, normal, harmonicMeanDistance, indirect.output, indirect.ambientOutput);
+    }
 
-                    sampleMap[s + ((x - xOffset) * numSamples) + ((y - yOffset) * width * numSamples)] = true;
-                }
-                if (sampleCount != 0) {
-                    float invSampleCount = 1f / sampleCount;
-                    r *= invSampleCount;
-                    g *= invSampleCount;
-                    b *= invSampleCount;
-                    reversedShadow *= invSampleCount;
+    private void processHemicubeIndirect(SampleState state, IndirectState indirect) {
+        if (this.scene.getIndirectBounces() <= 0) {
+            return;
+        }
+        Vector3fc normal = state.normal;
+        if (!normal.isFinite()) {
+            normal = state.triangleNormal;
+        }
+        indirect.bouncePosition
+                .set(state.triangleNormal)
+                .mul(this.scene.getRayOffset())
+                .add(state.position);
+        HemicubeSolution solution = this.hemicubeSolution;
+        this.hemicube.gather(indirect.bouncePosition, normal, solution.radiance, solution.radianceSky, indirect.output);
+        if (solution.ambient != null) {
+            this.hemicube.gather(indirect.bouncePosition, normal, solution.ambient, solution.ambientSky, indirect.ambientOutput);
+        }
+    }
 
-                    int localX = x - xOffset;
-                    int localY = y - yOffset;
+    private void processIndirect(SampleState state, IndirectState indirect) {
+        if (this.hemicube != null) {
+            processHemicubeIndirect(state, indirect);
+            return;
+        }
+        if (this.irradianceCache != null) {
+            processCachedIndirect(state, indirect);
+            return;
+        }
 
-                    colorMap[(localX * 3) + (localY * width * 3) + 0] = r;
-                    colorMap[(localX * 3) + (localY * width * 3) + 1] = g;
-                    colorMap[(localX * 3) + (localY * width * 3) + 2] = b;
-                    reversedShadowMap[localX + (localY * width)] = reversedShadow;
+        int rays = indirectRaysPerSample();
+        int minRays = rays;
+        int maxRays = rays;
+        float threshold = this.scene.getIndirectAdaptiveThreshold();
+        if (threshold > 0f) {
+            minRays = Math.max(rays / 4, 2);
+            maxRays = Math.max(indirectMaxRaysPerSample(), Math.max(minRays, rays));
+        }
 
-                    boundsMap[localX + (localY * width)] = true;
+        //welford's running mean and variance of the path luminance
+        int paths = 0;
+        float mean = 0f;
+        float m2 = 0f;
+        while (paths < maxRays) {
+            //a texel with no light found yet gets at least the configured rays
+            if (paths >= minRays && (mean > 0f || paths >= rays)) {
+                float error = 1.96f * (float) Math.sqrt((m2 / (paths - 1)) / paths);
+                if (error <= threshold * mean) {
+                    break;
                 }
             }
+            float value = traceIndirectPath(state, indirect);
+            paths++;
+            float delta = value - mean;
+            mean += delta / paths;
+            m2 += delta * (value - mean);
         }
 
-        GaussianBlur.GaussianIO indirectIO = new GaussianBlur.GaussianIO() {
-            private final Vector3f ioColor = new Vector3f();
-
-            @Override
-            public int width() {
-                return width;
-            }
+        indirect.output.div(paths);
+        indirect.ambientOutput.div(paths);
+    }
 
-            @Override
-            public int height() {
-                return height;
-            }
+    private void denoiseComponents() {
+        if (!this.denoiseIndirect && !this.denoiseShadow) {
+            return;
+        }
+        if (this.positionsBuffer == null) {
+            computeSurfaceBuffers();
+        }
 
-            @Override
-            public boolean outOfBounds(int x, int y) {
-                if (x < 0 || y < 0 || x >= width || y >= height) {
-                    return true;
+        int numSamples = this.samplingMode.numSamples();
+        int size = this.geometryLightmapSize;
+        int pixels = size * size;
+
+        final int[] charts = new int[pixels];
+        final float[] positions = new float[pixels * 3];
+        final float[] normals = new float[pixels * 3];
+        final float[] indirectMap = (this.denoiseIndirect ? new float[pixels * 3] : null);
+        final float[] ambientMap = (this.denoiseIndirect && this.indirectAmbientColorBuffer != null ? new float[pixels * 3] : null);
+        final float[] shadowMap = (this.denoiseShadow ? new float[pixels] : null);
+
+        processLines("Preparing Denoiser", (y) -> {
+            Vector3f color = new Vector3f();
+            Vector3f indirect = new Vector3f();
+            Vector3f ambient = new Vector3f();
+            Vector3f position = new Vector3f();
+            Vector3f normal = new Vector3f();
+            Vector3f sum = new Vector3f();
+            Vector3f normalSum = new Vector3f();
+            for (int x = 0; x < size; x++) {
+                int i = x + (y * size);
+                int quad = this.quadsBuffer.read(x, y, 0);
+                charts[i] = -1;
+                if (quad < 0 || this.culledQuads[quad]) {
+                    continue;
                 }
-                return !boundsMap[x + (y * width)];
-            }
 
-            @Override
-            public void write(int x, int y, GaussianBlur.GaussianColor color) {
-                this.ioColor.set(color.r, color.g, color.b);
+                indirect.zero();
+                ambient.zero();
+                sum.zero();
+                normalSum.zero();
+                float shadow = 0f;
+                int sampleCount = 0;
                 for (int s = 0; s < numSamples; s++) {
-                    if (sampleMap[s + (x * numSamples) + (y * width * numSamples)]) {
-                        indirectOutput.write(this.ioColor, x + xOffset, y + yOffset, s);
+                    if (!this.sampleBuffer.read(x, y, s)) {
+                        continue;
+                    }
+                    if (indirectMap != null) {
+                        this.indirectColorBuffer.read(color, x, y, s);
+                        indirect.add(color);
                     }
+                    if (ambientMap != null) {
+                        this.indirectAmbientColorBuffer.read(color, x, y, s);
+                        ambient.add(color);
+                    }
+                    if (shadowMap != null) {
+                        shadow += this.reverseShadowBuffer.read(x, y, s);
+                    }
+                    this.positionsBuffer.read(position, x, y, s);
+                    this.normalsBuffer.read(normal, x, y, s);
+                    sum.add(position);
+                    normalSum.add(normal);
+                    sampleCount++;
+                }
+                if (sampleCount == 0) {
+                    continue;
                 }
-            }
 
-            @Override
-            public void read(int x, int y, GaussianBlur.GaussianColor color) {
-                color.r = colorMap[(x * 3) + (y * width * 3) + 0];
-                color.g = colorMap[(x * 3) + (y * width * 3) + 1];
-                color.b = colorMap[(x * 3) + (y * width * 3) + 2];
+                float invSampleCount = 1f / sampleCount;
+                sum.mul(invSampleCount);
+                normalSum.normalize();
+                if (!normalSum.isFinite()) {
+                    normalSum.zero();
+                }
+
+                charts[i] = quad;
+                positions[(i * 3) + 0] = sum.x();
+                positions[(i * 3) + 1] = sum.y();
+                positions[(i * 3) + 2] = sum.z();
+                normals[(i * 3) + 0] = normalSum.x();
+                normals[(i * 3) + 1] = normalSum.y();
+                normals[(i * 3) + 2] = normalSum.z();
+                if (indirectMap != null) {
+                    indirect.mul(invSampleCount);
+                    indirectMap[(i * 3) + 0] = indirect.x();
+                    indirectMap[(i * 3) + 1] = indirect.y();
+                    indirectMap[(i * 3) + 2] = indirect.z();
+                }
+                if (ambientMap != null) {
+                    ambient.mul(invSampleCount);
+                    ambientMap[(i * 3) + 0] = ambient.x();
+                    ambientMap[(i * 3) + 1] = ambient.y();
+                    ambientMap[(i * 3) + 2] = ambient.z();
+                }
+                if (shadowMap != null) {
+                    shadowMap[i] = shadow * invSampleCount;
+                }
             }
-        };
+        });
 
-        GaussianBlur.blur(
-                indirectIO,
-                51,
-                this.scene.getIndirectLightingBlurArea()
-        );
+        AtrousFilter filter = new AtrousFilter(size, size, charts, positions, normals, 1f / this.pixelToWorldRatio);
+        int indirectPasses = AtrousFilter.passesFor(this.scene.getIndirectLightingBlurArea());
+        int shadowPasses = AtrousFilter.passesFor(this.scene.getShadowBlurArea());
 
-        GaussianBlur.GaussianIO reversedShadowIO = new GaussianBlur.GaussianIO() {
-            @Override
-            public int width() {
-                return width;
-            }
+        final float[] indirectDenoised = (indirectMap != null ? atrous(filter, indirectPasses, 3, indirectMap, "Denoising Indirect") : null);
+        final float[] ambientDenoised = (ambientMap != null ? atrous(filter, indirectPasses, 3, ambientMap, "Denoising Ambient") : null);
+        final float[] shadowDenoised = (shadowMap != null ? atrous(filter, shadowPasses, 1, shadowMap, "Denoising Shadows") : null);
 
-            @Override
-            public int height() {
-                return height;
-            }
+        final ColorBuffer indirectOutput = (indirectDenoised != null ? new ColorBuffer(size, numSamples) : null);
+        final ColorBuffer indirectAmbientOutput = (ambientDenoised != null ? new ColorBuffer(size, numSamples) : null);
+        final GrayBuffer reversedShadowOutput = (shadowDenoised != null ? new GrayBuffer(size, numSamples) : null);
 
-            @Override
-            public boolean outOfBounds(int x, int y) {
-                if (x < 0 || y < 0 || x >= width || y >= height) {
-                    return true;
+        processLines("Storing Denoised Texels", (y) -> {
+            Vector3f color = new Vector3f();
+            for (int x = 0; x < size; x++) {
+                int i = x + (y * size);
+                if (charts[i] < 0) {
+                    continue;
                 }
-                return !boundsMap[x + (y * width)];
-            }
-            
-            @Override
-            public void write(int x, int y, GaussianBlur.GaussianColor color) {
-                float shadow = (color.r + color.g + color.b) / 3f;
                 for (int s = 0; s < numSamples; s++) {
-                    if (sampleMap[s + (x * numSamples) + (y * width * numSamples)]) {
-                        reversedShadowOutput.write(shadow, x + xOffset, y + yOffset, s);
+                    if (!this.sampleBuffer.read(x, y, s)) {
+                        continue;
+                    }
+                    if (indirectOutput != null) {
+                        color.set(indirectDenoised[(i * 3) + 0], indirectDenoised[(i * 3) + 1], indirectDenoised[(i * 3) + 2]);
+                        indirectOutput.write(color, x, y, s);
+                    }
+                    if (indirectAmbientOutput != null) {
+                        color.set(ambientDenoised[(i * 3) + 0], ambientDenoised[(i * 3) + 1], ambientDenoised[(i * 3) + 2]);
+                        indirectAmbientOutput.write(color, x, y, s);
+                    }
+                    if (reversedShadowOutput != null) {
+                        reversedShadowOutput.write(shadowDenoised[i], x, y, s);
                     }
                 }
             }
+        });
 
-            @Override
-            public void read(int x, int y, GaussianBlur.GaussianColor color) {
-                float shadow = reversedShadowMap[x + (y * width)];
-                color.r = shadow;
-                color.g = shadow;
-                color.b = shadow;
-            }
-        };
+        if (this.denoiseIndirect) {
+            this.indirectColorBuffer = indirectOutput;
+            this.indirectAmbientColorBuffer = indirectAmbientOutput;
+        }
+        if (this.denoiseShadow) {
+            this.reverseShadowBuffer = reversedShadowOutput;
+        }
+    }
 
-        GaussianBlur.blur(
-                reversedShadowIO,
-                51,
-                this.scene.getShadowBlurArea()
-        );
+    private float[] atrous(AtrousFilter filter, int passes, int channels, float[] map, String text) {
+        float[] input = map;
+        float[] output = new float[map.length];
+        for (int pass = 0; pass < passes; pass++) {
+            final int currentPass = pass;
+            final float[] currentInput = input;
+            final float[] currentOutput = output;
+            processTasks("(" + (pass + 1) + "/" + passes + ") " + text, filter.getAmountOfTiles(), (tile) -> {
+                filter.filterTile(tile, currentPass, channels, currentInput, currentOutput);
+            });
+            input = currentOutput;
+            output = currentInput;
+        }
+        return input;
     }
 
     private void combineComponents() {
@@ -1397,13 +3154,29 @@ public class BakedLighting {
 
         Vector3f direct = new Vector3f();
         Vector3f indirect = new Vector3f();
+        Vector3f ambient = new Vector3f();
         Vector3f sampleAverage = new Vector3f();
 
+        ColorBuffer diffuseBasis = null;
+        ColorBuffer ambientBasis = null;
+        if (this.relighting) {
+            diffuseBasis = new ColorBuffer(this.geometryLightmapSize);
+            this.lightGroupDiffuseBasis[this.currentLightIndex] = diffuseBasis;
+            if (this.indirectAmbientColorBuffer != null) {
+                ambientBasis = new ColorBuffer(this.geometryLightmapSize);
+                this.lightGroupAmbientBasis[this.currentLightIndex] = ambientBasis;
+            }
+        }
+
         this.status.setProgressBarStep(this.geometryLightmapSize);
         for (int y = 0; y < this.geometryLightmapSize; y++) {
             setStatusText("[" + y + "/" + this.geometryLightmapSize + "] Combining Light Components");
             
             for (int x = 0; x < this.geometryLightmapSize; x++) {
+                if (isCulled(x, y)) {
+                    continue;
+                }
+
                 int processedSamples = 0;
                 for (int s = 0; s < numSamples; s++) {
                     if (this.sampleBuffer.read(x, y, s)) {
@@ -1413,6 +3186,7 @@ public class BakedLighting {
 
                 direct.zero();
                 indirect.zero();
+                ambient.zero();
 
                 if (processedSamples != 0) {
                     float invProcessedSamples = 1f / processedSamples;
@@ -1443,6 +3217,25 @@ public class BakedLighting {
                     indirect.set(sampleAverage.mul(invProcessedSamples));
 
                     direct.add(indirect);
+
+                    //indirect ambient
+                    if (ambientBasis != null) {
+                        sampleAverage.zero();
+                        for (int s = 0; s < numSamples; s++) {
+                            this.indirectAmbientColorBuffer.read(ambient, x, y, s);
+                            sampleAverage.add(ambient);
+                        }
+                        ambient.set(sampleAverage.mul(invProcessedSamples));
+                    }
+                }
+
+                if (diffuseBasis != null) {
+                    diffuseBasis.write(direct, x, y, 0);
+                    direct.mul(this.currentLight.getDiffuse());
+                }
+                if (ambientBasis != null) {
+                    ambientBasis.write(ambient, x, y, 0);
+                    direct.add(ambient.mul(this.sun.getAmbient()));
                 }
 
                 this.lightGroupOutput.read(currentColor, x, y, 0);
@@ -1454,95 +3247,407 @@ public class BakedLighting {
 
     }
 
-    private void unloadLight() {
-        setStatusText("Unloading Light...");
-        this.status.currentProgress = 0f;
+    private static class HemicubeSolution {
 
-        this.currentLightIndex = 0;
-        this.currentLight = null;
-        this.lightType = 0;
-        this.sun = null;
-        this.point = null;
-        this.spot = null;
-        this.indirectColorBuffer = null;
-        this.directColorBuffer = null;
-        this.reverseShadowBuffer = null;
+        public SoftwareTexture[] radiance = null;
+        public final Vector3f radianceSky = new Vector3f();
+        public SoftwareTexture[] ambient = null;
+        public final Vector3f ambientSky = new Vector3f();
+    }
 
-        this.status.currentProgress = 100f;
+    private static interface PatchRange {
+
+        public void process(int geometry, int start, int end);
     }
 
-    private void generateMargins() {
-        int numberOfCores = Runtime.getRuntime().availableProcessors();
-        this.status.setProgressBarStep(this.lightmapperQuads.length);
+    private void processPatches(String text, PatchRange range) {
+        int amountOfCores = Runtime.getRuntime().availableProcessors();
+        List<Future<?>> tasks = new ArrayList<>(amountOfCores);
 
-        List<Future<?>> tasks = new ArrayList<>();
-        for (int i = 0; i < this.lightmapperQuads.length; i += numberOfCores) {
-            setStatusText("[" + i + "/" + this.lightmapperQuads.length + "] Generating Margins");
-            for (int j = 0; j < numberOfCores; j++) {
-                final int index = i + j;
-                if (index < this.lightmapperQuads.length) {
-                    tasks.add(this.threads.submit(() -> {
-                        generateMargin(this.lightmapperQuads[index]);
-                    }));
-                }
+        int amountOfGeometries = this.hemicube.getAmountOfGeometries();
+        this.status.setProgressBarStep(amountOfGeometries);
+        for (int g = 0; g < amountOfGeometries; g++) {
+            setStatusText("[" + g + "/" + amountOfGeometries + "] " + text);
+            int count = this.hemicube.getPatches(g).count;
+            int step = Math.max((count + amountOfCores - 1) / amountOfCores, 1);
+            for (int start = 0; start < count; start += step) {
+                final int geometry = g;
+                final int s = start;
+                final int e = Math.min(start + step, count);
+                tasks.add(this.threads.submit(() -> {
+                    range.process(geometry, s, e);
+                }));
             }
-            for (Future<?> task : tasks) {
+            for (Future<?> f : tasks) {
                 try {
-                    task.get();
-                    this.status.stepProgressBar();
+                    f.get();
                 } catch (InterruptedException | ExecutionException ex) {
                     throw new RuntimeException(ex);
                 }
             }
             tasks.clear();
+            this.status.stepProgressBar();
+            checkInterruption();
+        }
+    }
+
+    private float[][] hemicubeDirect() {
+        float[][] direct = new float[this.hemicube.getAmountOfGeometries()][];
+        for (int g = 0; g < direct.length; g++) {
+            direct[g] = new float[this.hemicube.getPatches(g).count * 3];
         }
+        processPatches("Hemicube Direct Lighting", (geometry, start, end) -> {
+            HemicubeRadiosity.Patches patches = this.hemicube.getPatches(geometry);
+            float[] output = direct[geometry];
+            Random random = new Random();
+            Vector3f position = new Vector3f();
+            Vector3f normal = new Vector3f();
+            Vector3f direction = new Vector3f();
+            Vector3f color = new Vector3f();
+            int rays = shadowRaysPerSample();
+            for (int i = start; i < end; i++) {
+                position.set(patches.positions[(i * 3) + 0], patches.positions[(i * 3) + 1], patches.positions[(i * 3) + 2]);
+                normal.set(patches.normals[(i * 3) + 0], patches.normals[(i * 3) + 1], patches.normals[(i * 3) + 2]);
+                if (this.lightType == 1 || this.lightType == 2) {
+                    float distance = position.distance(this.point.getPosition());
+                    if ((this.point.getLuminance() / (distance * distance)) < this.point.getBakeCutoff()) {
+                        continue;
+                    }
+                }
+                calculateDirect(position, normal, color);
+                if (color.equals(0f, 0f, 0f)) {
+                    continue;
+                }
+                if (this.scene.isShadowsEnabled()) {
+                    int visible = 0;
+                    for (int j = 0; j < rays; j++) {
+                        randomLightDirection(position, direction, random);
+                        switch (this.lightType) {
+                            case 0 -> {
+                                if (!Geometry.fastTestRay(position, direction, Float.POSITIVE_INFINITY, this.geometries)) {
+                                    visible++;
+                                }
+                            }
+                            case 1, 2 -> {
+                                float length = direction.length();
+                                if (!Geometry.fastTestRay(position, direction.div(length), length, this.geometries)) {
+                                    visible++;
+                                }
+                            }
+                        }
+                        this.status.rays++;
+                    }
+                    color.mul(visible / ((float) rays));
+                }
+                output[(i * 3) + 0] = color.x();
+                output[(i * 3) + 1] = color.y();
+                output[(i * 3) + 2] = color.z();
+            }
+        });
+        return direct;
     }
 
-    private void generateMargin(LightmapUVs.LightmapperQuad quad) {
-        MarginAutomata.MarginAutomataIO io = new MarginAutomata.MarginAutomataIO() {
-            final Vector3f vec = new Vector3f();
+    private SoftwareTexture[] solveHemicubeBounces(float[][] direct, Vector3fc sky) {
+        int amountOfGeometries = this.hemicube.getAmountOfGeometries();
+        int bounces = this.scene.getIndirectBounces();
 
-            @Override
-            public int width() {
-                return quad.getWidth();
+        float[][] exitance = new float[amountOfGeometries][];
+        SoftwareTexture[] textures = new SoftwareTexture[amountOfGeometries];
+        for (int g = 0; g < amountOfGeometries; g++) {
+            exitance[g] = this.hemicube.newExitance(g);
+            textures[g] = this.hemicube.texture(g, exitance[g]);
+        }
+
+        //the final gather from the lightmap samples is the first bounce
+        for (int bounce = 1; bounce < bounces; bounce++) {
+            final SoftwareTexture[] previous = textures;
+            final float[][] next = new float[amountOfGeometries][];
+            for (int g = 0; g < amountOfGeometries; g++) {
+                next[g] = this.hemicube.newExitance(g);
+            }
+            processPatches("[" + bounce + "/" + (bounces - 1) + "] Hemicube Radiosity", (geometry, start, end) -> {
+                HemicubeRadiosity.Patches patches = this.hemicube.getPatches(geometry);
+                float[] output = next[geometry];
+                Vector3f position = new Vector3f();
+                Vector3f normal = new Vector3f();
+                Vector3f gathered = new Vector3f();
+                for (int i = start; i < end; i++) {
+                    position.set(patches.positions[(i * 3) + 0], patches.positions[(i * 3) + 1], patches.positions[(i * 3) + 2]);
+                    normal.set(patches.normals[(i * 3) + 0], patches.normals[(i * 3) + 1], patches.normals[(i * 3) + 2]);
+                    this.hemicube.gather(position, normal, previous, sky, gathered);
+                    if (direct != null) {
+                        gathered.add(direct[geometry][(i * 3) + 0], direct[geometry][(i * 3) + 1], direct[geometry][(i * 3) + 2]);
+                    }
+                    int texel = patches.texels[i];
+                    output[(texel * 3) + 0] = gathered.x() * patches.albedos[(i * 3) + 0];
+                    output[(texel * 3) + 1] = gathered.y() * patches.albedos[(i * 3) + 1];
+                    output[(texel * 3) + 2] = gathered.z() * patches.albedos[(i * 3) + 2];
+                }
+            });
+            textures = new SoftwareTexture[amountOfGeometries];
+            for (int g = 0; g < amountOfGeometries; g++) {
+                this.hemicube.dilate(g, next[g]);
+                textures[g] = this.hemicube.texture(g, next[g]);
             }
+            exitance = next;
+        }
 
-            @Override
-            public int height() {
-                return quad.getHeight();
+        float factor = this.scene.getIndirectLightReflectionFactor();
+        for (float[] e : exitance) {
+            for (int i = 0; i < e.length; i++) {
+                e[i] *= factor;
             }
+        }
+        return textures;
+    }
 
-            @Override
-            public boolean outOfBounds(int x, int y) {
-                return x < 0 || y < 0 || x >= width() || y >= height();
+    private void solveHemicube() {
+        if (this.hemicube == null || !this.computeIndirect) {
+            return;
+        }
+        this.hemicubeSolution = this.hemicubeSolutions.get(this.sceneLightIndex);
+        if (this.hemicubeSolution != null) {
+            return;
+        }
+
+        HemicubeSolution solution = new HemicubeSolution();
+        Vector3f sky = new Vector3f();
+        if (this.lightType == 0) {
+            sky.set(this.lightAmbient);
+        }
+
+        float[][] direct = hemicubeDirect();
+        if (this.indirectAmbientColorBuffer != null) {
+            solution.radiance = solveHemicubeBounces(direct, solution.radianceSky);
+            solution.ambientSky.set(sky);
+            solution.ambient = solveHemicubeBounces(null, solution.ambientSky);
+        } else {
+            solution.radianceSky.set(sky);
+            solution.radiance = solveHemicubeBounces(direct, solution.radianceSky);
+        }
+        this.status.rays = 0;
+
+        this.hemicubeSolutions.put(this.sceneLightIndex, solution);
+        this.hemicubeSolution = solution;
+    }
+
+    private static class ProgressiveLight {
+
+        public boolean computeDirect;
+        public boolean computeShadow;
+        public boolean computeIndirect;
+        public boolean denoiseShadow;
+        public boolean denoiseIndirect;
+        public ColorBuffer direct;
+        public GrayBuffer shadow;
+        public ColorBuffer indirect;
+        public ColorBuffer indirectAmbient;
+    }
+
+    private ColorBuffer copy(ColorBuffer buffer) {
+        if (buffer == null) {
+            return null;
+        }
+        ColorBuffer c = new ColorBuffer(this.geometryLightmapSize, this.samplingMode.numSamples());
+        System.arraycopy(buffer.data, 0, c.data, 0, c.data.length);
+        return c;
+    }
+
+    private GrayBuffer copy(GrayBuffer buffer) {
+        GrayBuffer c = new GrayBuffer(this.geometryLightmapSize, this.samplingMode.numSamples());
+        System.arraycopy(buffer.data, 0, c.data, 0, c.data.length);
+        return c;
+    }
+
+    private void accumulate(float[] average, float[] pass, int passIndex) {
+        float weight = 1f / (passIndex + 1);
+        for (int i = 0; i < average.length; i++) {
+            average[i] += (pass[i] - average[i]) * weight;
+        }
+    }
+
+    private void bakeProgressiveLight(ProgressiveLight p, int pass, boolean last) {
+        if (pass == 0) {
+            loadCachedComponents();
+            p.computeDirect = this.computeDirect;
+            p.computeShadow = this.computeShadow;
+            //the hemicube gather has no noise either
+            p.computeIndirect = this.computeIndirect && this.hemicube == null;
+            p.denoiseShadow = this.denoiseShadow;
+            p.denoiseIndirect = this.denoiseIndirect;
+        } else {
+            //direct lighting has no noise, one pass is enough
+            this.computeDirect = false;
+            this.computeShadow = p.computeShadow;
+            this.computeIndirect = p.computeIndirect;
+            this.denoiseShadow = p.denoiseShadow;
+            this.denoiseIndirect = p.denoiseIndirect;
+        }
+
+        bakeLightComponents();
+
+        if (pass == 0) {
+            p.direct = this.directColorBuffer;
+            p.shadow = this.reverseShadowBuffer;
+            p.indirect = this.indirectColorBuffer;
+            p.indirectAmbient = this.indirectAmbientColorBuffer;
+            if (this.cache != null && this.computeDirect) {
+                this.cache.put(this.directKey, compact(this.directColorBuffer));
+            }
+        } else {
+            if (this.computeShadow) {
+                accumulate(p.shadow.data, this.reverseShadowBuffer.data, pass);
             }
+            if (this.computeIndirect) {
+                accumulate(p.indirect.data, this.indirectColorBuffer.data, pass);
+                if (p.indirectAmbient != null) {
+                    accumulate(p.indirectAmbient.data, this.indirectAmbientColorBuffer.data, pass);
+                }
+            }
+        }
 
-            @Override
-            public boolean empty(int x, int y) {
-                for (int s = 0; s < BakedLighting.this.samplingMode.numSamples(); s++) {
-                    if (BakedLighting.this.sampleBuffer.read(quad.getX() + x, quad.getY() + y, s)) {
-                        return false;
+        this.directColorBuffer = p.direct;
+        this.reverseShadowBuffer = (this.denoiseShadow ? copy(p.shadow) : p.shadow);
+        this.indirectColorBuffer = (this.denoiseIndirect ? copy(p.indirect) : p.indirect);
+        this.indirectAmbientColorBuffer = (this.denoiseIndirect ? copy(p.indirectAmbient) : p.indirectAmbient);
+
+        //only a bake with every pass done matches the cache keys
+        boolean complete = last && pass == this.progressivePasses - 1 && this.cache != null;
+        if (complete) {
+            computeComponentKeys();
+            this.computeDirect = false;
+            storeComponents();
+        }
+        denoiseComponents();
+        if (complete) {
+            storeDenoisedComponents();
+        }
+        combineComponents();
+    }
+
+    private boolean bakeProgressiveLightGroup() {
+        int lights = this.currentLightGroupLights.size();
+        ProgressiveLight[] states = new ProgressiveLight[lights];
+        long budget = (long) (this.scene.getProgressiveTimeBudget() * 1000f);
+        long start = System.currentTimeMillis();
+        long lastPassTime = 0;
+        boolean complete = false;
+
+        for (int pass = 0; pass < this.progressivePasses; pass++) {
+            long passStart = System.currentTimeMillis();
+            boolean last = pass == this.progressivePasses - 1
+                    || (budget > 0 && ((passStart - start) + lastPassTime) >= budget);
+            boolean refining = false;
+
+            this.progressivePass = pass;
+            for (int k = 0; k < lights; k++) {
+                checkInterruption();
+                loadLight(k);
+                if (!this.lightCulled) {
+                    if (states[k] == null) {
+                        states[k] = new ProgressiveLight();
                     }
+                    bakeProgressiveLight(states[k], pass, last);
+                    refining |= states[k].computeShadow || states[k].computeIndirect;
                 }
-                return true;
+                unloadLight();
             }
 
-            @Override
-            public void read(int x, int y, MarginAutomata.MarginAutomataColor color) {
-                BakedLighting.this.lightGroupOutput.read(this.vec, quad.getX() + x, quad.getY() + y, 0);
-                color.r = this.vec.x();
-                color.g = this.vec.y();
-                color.b = this.vec.z();
+            if (last || !refining) {
+                complete = !refining || pass == this.progressivePasses - 1;
+                break;
             }
 
-            @Override
-            public void write(int x, int y, MarginAutomata.MarginAutomataColor color) {
-                this.vec.set(color.r, color.g, color.b);
-                BakedLighting.this.lightGroupOutput.write(this.vec, quad.getX() + x, quad.getY() + y, 0);
+            setStatusText("Writing Preview...");
+            denoiseOutput(this.lightGroupOutput);
+            generateMargins(this.lightGroupOutput);
+            outputLightmap();
+            this.lightGroupOutput = new ColorBuffer(this.geometryLightmapSize);
+
+            lastPassTime = System.currentTimeMillis() - passStart;
+        }
+        this.progressivePass = 0;
+        return complete;
+    }
+
+    private void unloadLight() {
+        setStatusText("Unloading Light...");
+        this.status.currentProgress = 0f;
+
+        this.currentLightIndex = 0;
+        this.currentLight = null;
+        this.lightType = 0;
+        this.sun = null;
+        this.point = null;
+        this.spot = null;
+        this.lightCulled = false;
+        this.culledQuads = null;
+        this.lightDiffuse.zero();
+        this.lightAmbient.zero();
+        this.directKey = null;
+        this.shadowKey = null;
+        this.shadowDenoisedKey = null;
+        this.indirectKey = null;
+        this.indirectDenoisedKey = null;
+        this.partialKey = null;
+        this.indirectColorBuffer = null;
+        this.indirectAmbientColorBuffer = null;
+        this.directColorBuffer = null;
+        this.reverseShadowBuffer = null;
+        this.irradianceCache = null;
+        this.hemicubeSolution = null;
+        this.sunShadowMap = null;
+
+        this.status.currentProgress = 100f;
+    }
+
+    private boolean[] filledTexels() {
+        int size = this.geometryLightmapSize;
+        int numSamples = this.samplingMode.numSamples();
+        boolean[] filled = new boolean[size * size];
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                for (int s = 0; s < numSamples; s++) {
+                    if (this.sampleBuffer.read(x, y, s)) {
+                        filled[x + (y * size)] = true;
+                        break;
+                    }
+                }
             }
-        };
+        }
+        return filled;
+    }
+
+    private void denoiseOutput(ColorBuffer lightmap) {
+        if (!this.scene.isMedianDenoiserEnabled()) {
+            return;
+        }
+        setStatusText("Removing Outliers");
+
+        FloatImage output = lightmap.view(filledTexels());
+        float tolerance = this.scene.getMedianDenoiserTolerance();
+        Denoiser.denoise(
+                output.copy(), output, this.quadsBuffer.data, this.threads,
+                this.scene.getMedianDenoiserKernelSize(),
+                true, 5, tolerance, tolerance, true,
+                true
+        );
+        checkInterruption();
+    }
 
-        MarginAutomata.generateMargin(io, LightmapUVs.MARGIN * 10);
+    private void generateMargins(ColorBuffer lightmap) {
+        FloatImage image = lightmap.view(filledTexels());
+        if (!this.scene.isJumpFloodMarginsEnabled()) {
+            processTasks("Generating Margins", this.lightmapperQuads.length, (i) -> {
+                LightmapUVs.LightmapperQuad quad = this.lightmapperQuads[i];
+                FloatImage region = image.region(quad.getX(), quad.getY(), quad.getWidth(), quad.getHeight());
+                MarginAutomata.generateMargin(region, LightmapUVs.MARGIN * 10, null);
+            });
+            return;
+        }
+        setStatusText("Generating Margins");
+        MarginJumpFlood.generateMargin(image, this.quadsBuffer.data, this.threads);
+        checkInterruption();
     }
 
     private void outputLightmap() {
@@ -1565,9 +3670,109 @@ public class BakedLighting {
             this.status.stepProgressBar();
         }
 
-        Main.MAIN_TASKS.add(() -> {
+        this.mainExecutor.execute(() -> {
             finalOutput.write(finalOutputBuffer, finalGroupIndex);
         });
+
+        this.lightGroupLightmap = finalOutputBuffer;
+    }
+
+    private void storeCachedLightmap() {
+        if (this.lightmapCache == null) {
+            return;
+        }
+
+        setStatusText("Storing Cached Lightmap...");
+        this.status.currentProgress = 0f;
+
+        List<LightmapBasis.LightBasis> groupBasis = new ArrayList<>();
+        if (this.geometryBasis != null) {
+            for (LightmapBasis.LightBasis basis : this.geometryBasis.getLights()) {
+                if (basis.getGroupIndex() == this.currentLightGroupIndex) {
+                    groupBasis.add(basis);
+                }
+            }
+        }
+
+        int[] basisLights = new int[groupBasis.size()];
+        int[][] diffuseBasis = new int[groupBasis.size()][];
+        int[][] ambientBasis = new int[groupBasis.size()][];
+        for (int i = 0; i < groupBasis.size(); i++) {
+            LightmapBasis.LightBasis basis = groupBasis.get(i);
+            basisLights[i] = this.currentLightGroupLights.indexOf(basis.getLight());
+            diffuseBasis[i] = basis.getDiffuse();
+            ambientBasis[i] = basis.getAmbient();
+        }
+
+        this.lightmapCache.writeLightmap(
+                this.lightGroupsKeys[this.currentLightGroupIndex],
+                new LightmapCache.CachedLightmap(
+                        this.geometryLightmapSize,
+                        this.lightGroupLightmap,
+                        basisLights,
+                        diffuseBasis,
+                        ambientBasis
+                )
+        );
+
+        this.status.currentProgress = 100f;
+    }
+
+    private void generateBasisMargins() {
+        if (!this.relighting) {
+            return;
+        }
+        for (int i = 0; i < this.currentLightGroupLights.size(); i++) {
+            if (this.lightGroupDiffuseBasis[i] != null) {
+                denoiseOutput(this.lightGroupDiffuseBasis[i]);
+                generateMargins(this.lightGroupDiffuseBasis[i]);
+            }
+            if (this.lightGroupAmbientBasis[i] != null) {
+                denoiseOutput(this.lightGroupAmbientBasis[i]);
+                generateMargins(this.lightGroupAmbientBasis[i]);
+            }
+        }
+    }
+
+    private void storeBasis() {
+        if (!this.relighting) {
+            return;
+        }
+
+        setStatusText("Storing Relighting Basis...");
+        this.status.setProgressBarStep(this.currentLightGroupLights.size());
+        for (int i = 0; i < this.currentLightGroupLights.size(); i++) {
+            int[] diffuse = null;
+            int[] ambient = null;
+            if (this.lightGroupDiffuseBasis[i] != null) {
+                diffuse = LightmapBasis.encode(this.lightGroupDiffuseBasis[i].data);
+            }
+            if (this.lightGroupAmbientBasis[i] != null) {
+                ambient = LightmapBasis.encode(this.lightGroupAmbientBasis[i].data);
+            }
+            this.geometryBasis.add(new LightmapBasis.LightBasis(
+                    this.currentLightGroupLights.get(i),
+                    this.currentLightGroupIndex,
+                    diffuse,
+                    ambient
+            ));
+            this.lightGroupDiffuseBasis[i] = null;
+            this.lightGroupAmbientBasis[i] = null;
+            this.status.stepProgressBar();
+        }
+    }
+
+    private void outputBasis() {
+        if (!this.relighting) {
+            return;
+        }
+
+        final BakedLightingOutput finalOutput = this.output;
+        final LightmapBasis finalBasis = this.geometryBasis;
+
+        this.mainExecutor.execute(() -> {
+            finalOutput.basis(finalBasis);
+        });
     }
 
     private void unloadLightGroup() {
@@ -1578,6 +3783,9 @@ public class BakedLighting {
         this.currentLightGroup = null;
         this.currentLightGroupLights = null;
         this.lightGroupOutput = null;
+        this.lightGroupDiffuseBasis = null;
+        this.lightGroupAmbientBasis = null;
+        this.lightGroupLightmap = null;
 
         this.status.currentProgress = 100f;
     }
@@ -1596,36 +3804,213 @@ public class BakedLighting {
         this.sampleBuffer = null;
         this.trianglesBuffer = null;
         this.weightsBuffer = null;
+        this.quadsBuffer = null;
+        this.quadsBounds = null;
+        this.geometryBasis = null;
+        this.positionsBuffer = null;
+        this.normalsBuffer = null;
+        this.deferredBuffer = null;
+        this.geometryKey = null;
+        this.bakedLightGroups = null;
+        this.cachedLightGroups = null;
+        this.lightGroupsKeys = null;
 
         this.status.currentProgress = 100f;
     }
 
+    public static class TileBaker {
+
+        private static final BakedLightingOutput NO_OUTPUT = new BakedLightingOutput() {
+            @Override
+            public void prepare(Geometry geometry, MeshData.LightmapMesh mesh, int lightmapSize, String[] groups) {
+
+            }
+
+            @Override
+            public void write(float[] lightmap, int groupIndex) {
+
+            }
+        };
+
+        private final BakedLighting baked;
+
+        public TileBaker(Scene scene, float pixelToWorldRatio, Map<Integer, SoftwareTexture> textures) {
+            this.baked = new BakedLighting(NO_OUTPUT, scene, pixelToWorldRatio, null, Runnable::run, textures, null, new Status());
+            try {
+                this.baked.loadTextures();
+                this.baked.loadMaterials();
+                this.baked.scheduleLightmapMeshes();
+                this.baked.waitForLightmapMeshes();
+                this.baked.waitForBVHs();
+                this.baked.prepareHemicube();
+            } catch (Throwable t) {
+                this.baked.threads.shutdownNow();
+                throw t;
+            }
+        }
+
+        private void load(int geometry, int group, int light) {
+            BakedLighting b = this.baked;
+            if (geometry < 0 || geometry >= b.geometries.size()) {
+                throw new IllegalArgumentException("Invalid geometry index: " + geometry);
+            }
+            if (group < 0 || group >= b.lightGroups.size()) {
+                throw new IllegalArgumentException("Invalid light group index: " + group);
+            }
+            if (light < 0 || light >= b.lightGroups.get(group).lights.size()) {
+                throw new IllegalArgumentException("Invalid light index: " + light);
+            }
+
+            boolean geometryLoaded = b.geometry != null && b.geometryIndex == geometry;
+            boolean groupLoaded = geometryLoaded && b.currentLightGroup != null && b.currentLightGroupIndex == group;
+            boolean lightLoaded = groupLoaded && b.currentLight != null && b.currentLightIndex == light;
+            if (lightLoaded) {
+                return;
+            }
+
+            if (b.currentLight != null) {
+                b.unloadLight();
+            }
+            if (!groupLoaded && b.currentLightGroup != null) {
+                b.unloadLightGroup();
+            }
+            if (!geometryLoaded) {
+                if (b.geometry != null) {
+                    b.unloadGeometry();
+                }
+                b.loadGeometry(geometry);
+                b.computeGeometryBuffers();
+                b.computeBounds();
+            }
+            if (!groupLoaded) {
+                b.loadLightGroup(group);
+            }
+            b.loadLight(light);
+        }
+
+        public synchronized float[][] bake(
+                int geometry, int group, int light,
+                boolean direct, boolean shadow, boolean indirect,
+                int lineStart, int lineEnd
+        ) {
+            BakedLighting b = this.baked;
+            load(geometry, group, light);
+
+            if (lineStart < 0 || lineEnd > b.geometryLightmapSize || lineStart > lineEnd) {
+                throw new IllegalArgumentException("Invalid line range: " + lineStart + " to " + lineEnd);
+            }
+
+            if (b.lightCulled) {
+                return new float[4][];
+            }
+
+            b.computeDirect = direct;
+            b.computeShadow = shadow;
+            b.computeIndirect = indirect;
+            b.solveHemicube();
+
+            List<Future<?>> tasks = new ArrayList<>();
+            for (int y = lineStart; y < lineEnd; y += TILE_SIZE) {
+                final int stripStart = y;
+                final int stripEnd = Math.min(y + TILE_SIZE, lineEnd);
+                tasks.add(b.threads.submit(() -> {
+                    for (int line = stripStart; line < stripEnd; line++) {
+                        b.processLine(line);
+                    }
+                }));
+            }
+            for (Future<?> f : tasks) {
+                try {
+                    f.get();
+                } catch (InterruptedException | ExecutionException ex) {
+                    throw new RuntimeException(ex);
+                }
+            }
+
+            float[][] buffers = b.partialBuffers();
+            float[][] tile = new float[buffers.length][];
+            for (int i = 0; i < buffers.length; i++) {
+                if (buffers[i] == null) {
+                    continue;
+                }
+                tile[i] = Arrays.copyOfRange(
+                        buffers[i],
+                        BufferLayout.tiledLineOffset(buffers[i].length, b.geometryLightmapSize, lineStart),
+                        BufferLayout.tiledLineOffset(buffers[i].length, b.geometryLightmapSize, lineEnd)
+                );
+            }
+            return tile;
+        }
+
+        public void close() {
+            this.baked.threads.shutdownNow();
+        }
+    }
+
     public void bake() {
         try {
             loadTextures();
+            loadMaterials();
             scheduleLightmapMeshes();
             waitForLightmapMeshes();
             waitForBVHs();
+            prepareHemicube();
+            prepareCoordinator();
+            computeHashes();
             for (int i = 0; i < this.geometries.size(); i++) {
+                checkInterruption();
+                if (this.dependencies != null && !this.dependencies.isAffected(this.geometries.get(i))) {
+                    continue;
+                }
                 loadGeometry(i);
+                loadCachedLightmaps();
+                if (allLightGroupsSkipped()) {
+                    outputBasis();
+                    unloadGeometry();
+                    continue;
+                }
                 computeGeometryBuffers();
+                computeBounds();
                 for (int j = 0; j < this.lightGroups.size(); j++) {
+                    if (isLightGroupSkipped(j)) {
+                        continue;
+                    }
                     loadLightGroup(j);
-                    for (int k = 0; k < this.currentLightGroupLights.size(); k++) {
-                        loadLight(k);
-                        bakeLightComponents();
-                        denoiseComponents();
-                        combineComponents();
-                        unloadLight();
-                    }
-                    generateMargins();
+                    boolean complete = true;
+                    if (this.progressive) {
+                        complete = bakeProgressiveLightGroup();
+                    } else {
+                        for (int k = 0; k < this.currentLightGroupLights.size(); k++) {
+                            checkInterruption();
+                            loadLight(k);
+                            if (!this.lightCulled) {
+                                loadCachedComponents();
+                                bakeLightComponents();
+                                storeComponents();
+                                denoiseComponents();
+                                storeDenoisedComponents();
+                                combineComponents();
+                            }
+                            unloadLight();
+                        }
+                    }
+                    denoiseOutput(this.lightGroupOutput);
+                    generateMargins(this.lightGroupOutput);
+                    generateBasisMargins();
                     outputLightmap();
+                    storeBasis();
+                    if (complete) {
+                        storeCachedLightmap();
+                    }
                     unloadLightGroup();
                 }
+                outputBasis();
                 unloadGeometry();
             }
         } finally {
-            this.threads.shutdownNow();
+            if (!this.sharedThreads) {
+                this.threads.shutdownNow();
+            }
         }
     }
 
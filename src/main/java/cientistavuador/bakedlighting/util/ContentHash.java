@@ -0,0 +1,148 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <https://unlicense.org>
+ */
+package cientistavuador.bakedlighting.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import org.joml.Matrix4fc;
+import org.joml.Vector3fc;
+
+/**
+ *
+ * @author Cien
+ */
+public class ContentHash {
+
+    private final MessageDigest digest;
+    private final ByteBuffer buffer = ByteBuffer.allocate(8192).order(ByteOrder.LITTLE_ENDIAN);
+
+    public ContentHash() {
+        try {
+            this.digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    private void ensure(int bytes) {
+        if (this.buffer.remaining() < bytes) {
+            flush();
+        }
+    }
+
+    private void flush() {
+        this.buffer.flip();
+        this.digest.update(this.buffer);
+        this.buffer.clear();
+    }
+
+    public ContentHash put(boolean value) {
+        ensure(1);
+        this.buffer.put((byte) (value ? 1 : 0));
+        return this;
+    }
+
+    public ContentHash put(int value) {
+        ensure(4);
+        this.buffer.putInt(value);
+        return this;
+    }
+
+    public ContentHash put(long value) {
+        ensure(8);
+        this.buffer.putLong(value);
+        return this;
+    }
+
+    public ContentHash put(float value) {
+        ensure(4);
+        this.buffer.putInt(Float.floatToIntBits(value));
+        return this;
+    }
+
+    public ContentHash put(String value) {
+        if (value == null) {
+            return put(-1);
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        put(bytes.length);
+        flush();
+        this.digest.update(bytes);
+        return this;
+    }
+
+    public ContentHash put(Vector3fc value) {
+        return put(value.x()).put(value.y()).put(value.z());
+    }
+
+    public ContentHash put(Matrix4fc value) {
+        for (int column = 0; column < 4; column++) {
+            for (int row = 0; row < 4; row++) {
+                put(value.get(column, row));
+            }
+        }
+        return this;
+    }
+
+    public ContentHash put(float[] values) {
+        put(values.length);
+        for (float f : values) {
+            put(f);
+        }
+        return this;
+    }
+
+    public ContentHash put(int[] values) {
+        put(values.length);
+        for (int i : values) {
+            put(i);
+        }
+        return this;
+    }
+
+    public ContentHash put(byte[] values) {
+        put(values.length);
+        flush();
+        this.digest.update(values);
+        return this;
+    }
+
+    public String finish() {
+        flush();
+        byte[] hash = this.digest.digest();
+        StringBuilder b = new StringBuilder(hash.length * 2);
+        for (byte e : hash) {
+            b.append(Character.forDigit((e >>> 4) & 0xF, 16));
+            b.append(Character.forDigit(e & 0xF, 16));
+        }
+        return b.toString();
+    }
+
+}
@@ -26,7 +26,7 @@
  */
 package cientistavuador.bakedlighting.util;
 
-import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
 
 /**
  *
@@ -34,9 +34,10 @@ import java.util.Arrays;
  */
 public class Denoiser {
 
+    public static final float MIN_RELATIVE_MAGNITUDE = 1f / 256f;
+
     public static class DenoiserColor {
 
-        private boolean outOfBounds;
         public float r;
         public float g;
         public float b;
@@ -56,27 +57,90 @@ public class Denoiser {
     }
 
     public static void denoise(DenoiserIO io, int kernelSize, boolean averageSimilar, int similarSearchKernelSize, float similarTolerance, float sharpnessTolerance, boolean useGaussianWeights) {
-        new Denoiser(io, kernelSize, averageSimilar, similarSearchKernelSize, similarTolerance, sharpnessTolerance, useGaussianWeights).process();
+        int width = io.width();
+        int height = io.height();
+        FloatImage input = FloatImage.allocate(width, height, 3, true);
+        FloatImage output = FloatImage.allocate(width, height, 3, true);
+
+        DenoiserColor color = new DenoiserColor();
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (io.outOfBounds(x, y)) {
+                    continue;
+                }
+                io.read(x, y, color);
+                input.set(x, y, 0, color.r);
+                input.set(x, y, 1, color.g);
+                input.set(x, y, 2, color.b);
+                input.setFilled(x, y, true);
+            }
+        }
+
+        denoise(input, output, null, null, kernelSize, averageSimilar, similarSearchKernelSize, similarTolerance, sharpnessTolerance, useGaussianWeights, false);
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (!input.isFilled(x, y)) {
+                    continue;
+                }
+                color.r = output.get(x, y, 0);
+                color.g = output.get(x, y, 1);
+                color.b = output.get(x, y, 2);
+                io.write(x, y, color);
+            }
+        }
+    }
+
+    public static void denoise(
+            FloatImage input, FloatImage output, ExecutorService threads,
+            int kernelSize, boolean averageSimilar, int similarSearchKernelSize,
+            float similarTolerance, float sharpnessTolerance, boolean useGaussianWeights
+    ) {
+        denoise(input, output, null, threads, kernelSize, averageSimilar, similarSearchKernelSize, similarTolerance, sharpnessTolerance, useGaussianWeights, false);
+    }
+
+    public static void denoise(
+            FloatImage input, FloatImage output, int[] charts, ExecutorService threads,
+            int kernelSize, boolean averageSimilar, int similarSearchKernelSize,
+            float similarTolerance, float sharpnessTolerance, boolean useGaussianWeights,
+            boolean relativeTolerance
+    ) {
+        if (input.getWidth() != output.getWidth() || input.getHeight() != output.getHeight() || input.getChannels() != output.getChannels()) {
+            throw new IllegalArgumentException("Input and output have different dimensions.");
+        }
+        if (charts != null && charts.length != input.getWidth() * input.getHeight()) {
+            throw new IllegalArgumentException("Charts map has a different size.");
+        }
+        Denoiser denoiser = new Denoiser(input, output, charts, kernelSize, averageSimilar, similarSearchKernelSize, similarTolerance, sharpnessTolerance, useGaussianWeights, relativeTolerance);
+        FloatImage.forEachTile(threads, input.getWidth(), input.getHeight(), denoiser::processTile);
     }
 
-    private final DenoiserIO io;
+    private final FloatImage input;
+    private final FloatImage output;
+    private final int[] charts;
+    private final int channels;
     private final int kernelSize;
     private final boolean averageSimilar;
     private final int similarSearchKernelSize;
-    private final float similarTolerance;
-    private final float sharpnessTolerance;
+    private final float similarToleranceSquared;
+    private final float sharpnessToleranceSquared;
     private final boolean useGaussianWeights;
+    private final boolean relativeTolerance;
 
     private final float[] similarSearchGaussian;
-    
-    private Denoiser(DenoiserIO io, int kernelSize, boolean averageSimilar, int similarSearchKernelSize, float similarTolerance, float sharpnessTolerance, boolean useGaussianWeights) {
-        this.io = io;
+
+    private Denoiser(FloatImage input, FloatImage output, int[] charts, int kernelSize, boolean averageSimilar, int similarSearchKernelSize, float similarTolerance, float sharpnessTolerance, boolean useGaussianWeights, boolean relativeTolerance) {
+        this.input = input;
+        this.output = output;
+        this.charts = charts;
+        this.channels = input.getChannels();
         this.kernelSize = kernelSize;
         this.averageSimilar = averageSimilar;
         this.similarSearchKernelSize = similarSearchKernelSize;
-        this.similarTolerance = similarTolerance;
-        this.sharpnessTolerance = sharpnessTolerance;
+        this.similarToleranceSquared = similarTolerance * similarTolerance;
+        this.sharpnessToleranceSquared = sharpnessTolerance * sharpnessTolerance;
         this.useGaussianWeights = useGaussianWeights;
+        this.relativeTolerance = relativeTolerance;
         this.similarSearchGaussian = new float[similarSearchKernelSize * similarSearchKernelSize];
         float sum = 0f;
         for (int y = 0; y < this.similarSearchKernelSize; y++) {
@@ -92,162 +156,201 @@ public class Denoiser {
             this.similarSearchGaussian[i] /= sum;
         }
     }
-    
-    public void fillKernel(DenoiserColor[] pixels, int xCenter, int yCenter) {
-        for (int y = 0; y < this.kernelSize; y++) {
-            for (int x = 0; x < this.kernelSize; x++) {
-                int pX = (x + xCenter) - (this.kernelSize / 2);
-                int pY = (y + yCenter) - (this.kernelSize / 2);
 
-                DenoiserColor kernelColor = pixels[x + (y * this.kernelSize)];
+    private boolean isOtherChart(int x, int y, int chart) {
+        return this.charts != null && this.charts[x + (y * this.input.getWidth())] != chart;
+    }
 
-                if (this.io.outOfBounds(pX, pY)) {
-                    kernelColor.outOfBounds = true;
-                    kernelColor.r = -1f;
-                    kernelColor.g = -1f;
-                    kernelColor.b = -1f;
-                    continue;
-                }
+    private int chartAt(int x, int y) {
+        return (this.charts != null ? this.charts[x + (y * this.input.getWidth())] : 0);
+    }
 
-                this.io.read(pX, pY, kernelColor);
-                kernelColor.outOfBounds = false;
+    private float toleranceScale(float[] reference) {
+        if (!this.relativeTolerance) {
+            return 1f;
+        }
+        float magnitude;
+        if (this.channels == 3) {
+            magnitude = (reference[0] * 0.2126f) + (reference[1] * 0.7152f) + (reference[2] * 0.0722f);
+        } else {
+            magnitude = 0f;
+            for (int c = 0; c < this.channels; c++) {
+                magnitude += reference[c];
             }
+            magnitude /= this.channels;
         }
+        magnitude = Math.max(Math.abs(magnitude), MIN_RELATIVE_MAGNITUDE);
+        return magnitude * magnitude;
     }
 
-    public DenoiserColor findMedian(DenoiserColor[] pixels) {
+    private int fillKernel(float[][] kernel, int xCenter, int yCenter, int chart) {
+        float[] data = this.input.getData();
+        int half = this.kernelSize / 2;
         int filled = 0;
-        for (int i = 0; i < pixels.length; i++) {
-            DenoiserColor color = pixels[i];
-            if (!color.outOfBounds) {
+        for (int pY = yCenter - half; pY < (yCenter - half) + this.kernelSize; pY++) {
+            if (pY < 0 || pY >= this.input.getHeight()) {
+                continue;
+            }
+            for (int pX = xCenter - half; pX < (xCenter - half) + this.kernelSize; pX++) {
+                if (pX < 0 || pX >= this.input.getWidth() || !this.input.isFilled(pX, pY) || isOtherChart(pX, pY, chart)) {
+                    continue;
+                }
+                int index = this.input.index(pX, pY);
+                for (int c = 0; c < this.channels; c++) {
+                    kernel[c][filled] = data[index + c];
+                }
                 filled++;
             }
         }
-        
-        if (filled == 0) {
-            return null;
-        }
-        
-        float[] redChannel = new float[filled];
-        float[] greenChannel = new float[filled];
-        float[] blueChannel = new float[filled];
-        
-        int filledIndex = 0;
-        for (int i = 0; i < pixels.length; i++) {
-            DenoiserColor color = pixels[i];
-            if (!color.outOfBounds) {
-                redChannel[filledIndex] = color.r;
-                greenChannel[filledIndex] = color.g;
-                blueChannel[filledIndex] = color.b;
-                filledIndex++;
+        return filled;
+    }
+
+    private static float select(float[] values, int length, int k) {
+        int left = 0;
+        int right = length - 1;
+        while (left < right) {
+            int middle = (left + right) >>> 1;
+            if (values[middle] < values[left]) {
+                swap(values, middle, left);
+            }
+            if (values[right] < values[left]) {
+                swap(values, right, left);
             }
+            if (values[right] < values[middle]) {
+                swap(values, right, middle);
+            }
+            float pivot = values[middle];
+
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (values[i] < pivot) {
+                    i++;
+                }
+                while (values[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(values, i, j);
+                    i++;
+                    j--;
+                }
+            }
+
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                break;
+            }
+        }
+        return values[k];
+    }
+
+    private static void swap(float[] values, int a, int b) {
+        float value = values[a];
+        values[a] = values[b];
+        values[b] = value;
+    }
+
+    private void findMedian(float[][] kernel, int filled, float[] median) {
+        for (int c = 0; c < this.channels; c++) {
+            median[c] = select(kernel[c], filled, filled / 2);
+        }
+    }
+
+    private boolean isSimilar(float[] a, float[] data, int index, float toleranceSquared) {
+        float distance = 0f;
+        for (int c = 0; c < this.channels; c++) {
+            float delta = a[c] - data[index + c];
+            distance += delta * delta;
+        }
+        return distance < toleranceSquared;
+    }
+
+    private void averageSimilar(float[] toFindSimilar, int xCenter, int yCenter, int chart, float toleranceSquared, float[] outAverage) {
+        float[] data = this.input.getData();
+        for (int c = 0; c < this.channels; c++) {
+            outAverage[c] = 0f;
         }
-        
-        Arrays.sort(redChannel);
-        Arrays.sort(greenChannel);
-        Arrays.sort(blueChannel);
-        
-        float medianR = redChannel[redChannel.length / 2];
-        float medianG = greenChannel[greenChannel.length / 2];
-        float medianB = blueChannel[blueChannel.length / 2];
-        
-        DenoiserColor median = pixels[pixels.length / 2];
-        
-        median.r = medianR;
-        median.g = medianG;
-        median.b = medianB;
-        
-        return median;
-    }
-    
-    public boolean isSimilar(DenoiserColor a, DenoiserColor b, float tolerance) {
-        return Math.sqrt(Math.pow(a.r - b.r, 2.0) + Math.pow(a.g - b.g, 2.0) + Math.pow(a.b - b.b, 2.0)) < tolerance;
-    }
-
-    public void averageSimilar(DenoiserColor toFindSimilar, int xCenter, int yCenter, DenoiserColor outAverage) {
-        float r = 0f;
-        float g = 0f;
-        float b = 0f;
         float weightSum = 0f;
         for (int y = 0; y < this.similarSearchKernelSize; y++) {
+            int pY = (y + yCenter) - (this.similarSearchKernelSize / 2);
+            if (pY < 0 || pY >= this.input.getHeight()) {
+                continue;
+            }
             for (int x = 0; x < this.similarSearchKernelSize; x++) {
                 int pX = (x + xCenter) - (this.similarSearchKernelSize / 2);
-                int pY = (y + yCenter) - (this.similarSearchKernelSize / 2);
-
-                if (this.io.outOfBounds(pX, pY)) {
+                if (pX < 0 || pX >= this.input.getWidth() || !this.input.isFilled(pX, pY) || isOtherChart(pX, pY, chart)) {
                     continue;
                 }
 
-                this.io.read(pX, pY, outAverage);
-
-                if (isSimilar(toFindSimilar, outAverage, this.similarTolerance)) {
+                int index = this.input.index(pX, pY);
+                if (isSimilar(toFindSimilar, data, index, toleranceSquared)) {
                     float weight;
                     if (this.useGaussianWeights) {
                         weight = this.similarSearchGaussian[x + (y * this.similarSearchKernelSize)];
                     } else {
                         weight = 1f;
                     }
-                    
-                    r += (outAverage.r * weight);
-                    g += (outAverage.g * weight);
-                    b += (outAverage.b * weight);
-                    
+
+                    for (int c = 0; c < this.channels; c++) {
+                        outAverage[c] += data[index + c] * weight;
+                    }
+
                     weightSum += weight;
                 }
             }
         }
         float inverseWeight = 1f / weightSum;
-        if (Float.isFinite(inverseWeight)) {
-            outAverage.r = r * inverseWeight;
-            outAverage.g = g * inverseWeight;
-            outAverage.b = b * inverseWeight;
-        } else {
-            outAverage.r = toFindSimilar.r;
-            outAverage.g = toFindSimilar.g;
-            outAverage.b = toFindSimilar.b;
+        for (int c = 0; c < this.channels; c++) {
+            if (Float.isFinite(inverseWeight)) {
+                outAverage[c] *= inverseWeight;
+            } else {
+                outAverage[c] = toFindSimilar[c];
+            }
         }
     }
 
-    public void process() {
-        DenoiserColor outAverage = new DenoiserColor();
+    private void processTile(int minX, int minY, int maxX, int maxY) {
+        float[][] kernel = new float[this.channels][this.kernelSize * this.kernelSize];
+        float[] median = new float[this.channels];
+        float[] outAverage = new float[this.channels];
+        float[] inputData = this.input.getData();
+        float[] outputData = this.output.getData();
 
-        DenoiserColor[] kernel = new DenoiserColor[this.kernelSize * this.kernelSize];
-        for (int i = 0; i < kernel.length; i++) {
-            kernel[i] = new DenoiserColor();
-        }
-        
-        DenoiserColor currentColor = new DenoiserColor();
-
-        for (int y = 0; y < this.io.height(); y++) {
-            for (int x = 0; x < this.io.width(); x++) {
-
-                if (this.io.outOfBounds(x, y)) {
+        for (int y = minY; y < maxY; y++) {
+            for (int x = minX; x < maxX; x++) {
+                if (!this.input.isFilled(x, y)) {
                     continue;
                 }
 
-                fillKernel(kernel, x, y);
-                DenoiserColor median = findMedian(kernel);
-                
-                if (median == null) {
-                    continue;
-                }
-                
+                int chart = chartAt(x, y);
+                int filled = fillKernel(kernel, x, y, chart);
+                findMedian(kernel, filled, median);
+
+                int index = this.input.index(x, y);
                 if (this.averageSimilar) {
-                    this.io.read(x, y, currentColor);
-                    if (isSimilar(median, currentColor, this.sharpnessTolerance)) {
-                        outAverage.r = currentColor.r;
-                        outAverage.g = currentColor.g;
-                        outAverage.b = currentColor.b;
+                    float scale = toleranceScale(median);
+                    if (isSimilar(median, inputData, index, this.sharpnessToleranceSquared * scale)) {
+                        for (int c = 0; c < this.channels; c++) {
+                            outAverage[c] = inputData[index + c];
+                        }
                     } else {
-                        averageSimilar(median, x, y, outAverage);
+                        averageSimilar(median, x, y, chart, this.similarToleranceSquared * scale, outAverage);
                     }
                 } else {
-                    outAverage.r = median.r;
-                    outAverage.g = median.g;
-                    outAverage.b = median.b;
+                    System.arraycopy(median, 0, outAverage, 0, this.channels);
                 }
 
-                this.io.write(x, y, outAverage);
+                int outputIndex = this.output.index(x, y);
+                for (int c = 0; c < this.channels; c++) {
+                    outputData[outputIndex + c] = outAverage[c];
+                }
+                if (this.output.isMasked()) {
+                    this.output.setFilled(x, y, true);
+                }
             }
         }
     }
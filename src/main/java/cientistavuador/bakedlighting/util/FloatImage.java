@@ -0,0 +1,254 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <https://unlicense.org>
+ */
+package cientistavuador.bakedlighting.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Strided view of a float image with an optional mask of filled pixels. The
+ * data can be shared with other images or buffers, a pixel starts at
+ * {@code offset + (x * pixelStride) + (y * rowStride)} and its channels are
+ * contiguous.
+ *
+ * @author Cien
+ */
+public class FloatImage {
+
+    public static final int TILE_SIZE = 64;
+
+    public static interface TileTask {
+
+        public void process(int minX, int minY, int maxX, int maxY);
+    }
+
+    public static FloatImage allocate(int width, int height, int channels, boolean masked) {
+        return new FloatImage(
+                new float[width * height * channels], 0,
+                width, height, channels,
+                channels, width * channels,
+                (masked ? new boolean[width * height] : null), 0, width
+        );
+    }
+
+    public static void forEachTile(ExecutorService threads, int width, int height, TileTask task) {
+        int tilesX = (width + TILE_SIZE - 1) / TILE_SIZE;
+        int tilesY = (height + TILE_SIZE - 1) / TILE_SIZE;
+        if (threads == null) {
+            for (int tileY = 0; tileY < tilesY; tileY++) {
+                for (int tileX = 0; tileX < tilesX; tileX++) {
+                    int minX = tileX * TILE_SIZE;
+                    int minY = tileY * TILE_SIZE;
+                    task.process(minX, minY, Math.min(minX + TILE_SIZE, width), Math.min(minY + TILE_SIZE, height));
+                }
+            }
+            return;
+        }
+        List<Future<?>> tasks = new ArrayList<>(tilesX * tilesY);
+        for (int tileY = 0; tileY < tilesY; tileY++) {
+            for (int tileX = 0; tileX < tilesX; tileX++) {
+                int minX = tileX * TILE_SIZE;
+                int minY = tileY * TILE_SIZE;
+                tasks.add(threads.submit(() -> {
+                    task.process(minX, minY, Math.min(minX + TILE_SIZE, width), Math.min(minY + TILE_SIZE, height));
+                }));
+            }
+        }
+        for (Future<?> f : tasks) {
+            try {
+                f.get();
+            } catch (InterruptedException | ExecutionException ex) {
+                throw new RuntimeException(ex);
+            }
+        }
+    }
+
+    private final float[] data;
+    private final int offset;
+    private final int width;
+    private final int height;
+    private final int channels;
+    private final int pixelStride;
+    private final int rowStride;
+    private final boolean[] mask;
+    private final int maskOffset;
+    private final int maskRowStride;
+
+    public FloatImage(
+            float[] data, int offset,
+            int width, int height, int channels,
+            int pixelStride, int rowStride,
+            boolean[] mask, int maskOffset, int maskRowStride
+    ) {
+        if (width < 0 || height < 0 || channels <= 0 || pixelStride < channels) {
+            throw new IllegalArgumentException("Invalid image layout.");
+        }
+        this.data = data;
+        this.offset = offset;
+        this.width = width;
+        this.height = height;
+        this.channels = channels;
+        this.pixelStride = pixelStride;
+        this.rowStride = rowStride;
+        this.mask = mask;
+        this.maskOffset = maskOffset;
+        this.maskRowStride = maskRowStride;
+    }
+
+    public float[] getData() {
+        return data;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    public int getPixelStride() {
+        return pixelStride;
+    }
+
+    public int getRowStride() {
+        return rowStride;
+    }
+
+    public boolean[] getMask() {
+        return mask;
+    }
+
+    public int getMaskOffset() {
+        return maskOffset;
+    }
+
+    public int getMaskRowStride() {
+        return maskRowStride;
+    }
+
+    public boolean isMasked() {
+        return this.mask != null;
+    }
+
+    public boolean contains(int x, int y) {
+        return x >= 0 && y >= 0 && x < this.width && y < this.height;
+    }
+
+    public int index(int x, int y) {
+        return this.offset + (x * this.pixelStride) + (y * this.rowStride);
+    }
+
+    public int maskIndex(int x, int y) {
+        return this.maskOffset + x + (y * this.maskRowStride);
+    }
+
+    public boolean isFilled(int x, int y) {
+        return this.mask == null || this.mask[maskIndex(x, y)];
+    }
+
+    public void setFilled(int x, int y, boolean filled) {
+        this.mask[maskIndex(x, y)] = filled;
+    }
+
+    public float get(int x, int y, int channel) {
+        return this.data[index(x, y) + channel];
+    }
+
+    public void set(int x, int y, int channel, float value) {
+        this.data[index(x, y) + channel] = value;
+    }
+
+    public FloatImage region(int x, int y, int width, int height) {
+        if (x < 0 || y < 0 || width < 0 || height < 0 || x + width > this.width || y + height > this.height) {
+            throw new IllegalArgumentException("Region out of bounds.");
+        }
+        return new FloatImage(
+                this.data, index(x, y),
+                width, height, this.channels,
+                this.pixelStride, this.rowStride,
+                this.mask, (this.mask != null ? maskIndex(x, y) : 0), this.maskRowStride
+        );
+    }
+
+    public FloatImage copy() {
+        FloatImage copy = allocate(this.width, this.height, this.channels, this.mask != null);
+        for (int y = 0; y < this.height; y++) {
+            int source = index(0, y);
+            int destination = copy.index(0, y);
+            if (this.pixelStride == this.channels) {
+                System.arraycopy(this.data, source, copy.data, destination, this.width * this.channels);
+            } else {
+                for (int x = 0; x < this.width; x++) {
+                    System.arraycopy(this.data, source, copy.data, destination, this.channels);
+                    source += this.pixelStride;
+                    destination += this.channels;
+                }
+            }
+            if (this.mask != null) {
+                System.arraycopy(this.mask, maskIndex(0, y), copy.mask, copy.maskIndex(0, y), this.width);
+            }
+        }
+        return copy;
+    }
+
+    public void copyFilledTo(FloatImage destination) {
+        if (destination.width != this.width || destination.height != this.height || destination.channels != this.channels) {
+            throw new IllegalArgumentException("Images have different dimensions.");
+        }
+        for (int y = 0; y < this.height; y++) {
+            int source = index(0, y);
+            int target = destination.index(0, y);
+            int sourceMask = maskIndex(0, y);
+            int targetMask = destination.maskIndex(0, y);
+            for (int x = 0; x < this.width; x++) {
+                if (this.mask == null || this.mask[sourceMask + x]) {
+                    for (int c = 0; c < this.channels; c++) {
+                        destination.data[target + c] = this.data[source + c];
+                    }
+                    if (destination.mask != null) {
+                        destination.mask[targetMask + x] = true;
+                    }
+                }
+                source += this.pixelStride;
+                target += destination.pixelStride;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,507 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <https://unlicense.org>
+ */
+package cientistavuador.bakedlighting.util;
+
+import cientistavuador.bakedlighting.geometry.Geometry;
+import cientistavuador.bakedlighting.resources.mesh.MeshData;
+import java.util.Arrays;
+import java.util.List;
+import org.joml.Vector3f;
+import org.joml.Vector3fc;
+
+/**
+ * Hemicube gather for radiosity, the scene is rasterized with the software
+ * renderer into the five faces of a hemicube using the exitance of the
+ * previous bounce as lightmap textures. Patches are the lightmap texels of
+ * every geometry.
+ *
+ * @author Cien
+ */
+public class HemicubeRadiosity {
+
+    public static final int MARGIN = 2;
+
+    public static class Patches {
+
+        public final int size;
+        public final int count;
+        public final int[] texels;
+        public final float[] positions;
+        public final float[] normals;
+        public final float[] albedos;
+
+        private final int[] fillTargets;
+        private final int[] fillSources;
+
+        private Patches(int size, int count, int[] texels, float[] positions, float[] normals, float[] albedos, int[] fillTargets, int[] fillSources) {
+            this.size = size;
+            this.count = count;
+            this.texels = texels;
+            this.positions = positions;
+            this.normals = normals;
+            this.albedos = albedos;
+            this.fillTargets = fillTargets;
+            this.fillSources = fillSources;
+        }
+    }
+
+    private class Hemicube {
+
+        public final SoftwareRenderer front = new SoftwareRenderer(HemicubeRadiosity.this.resolution, HemicubeRadiosity.this.resolution);
+        public final SoftwareRenderer side = new SoftwareRenderer(HemicubeRadiosity.this.resolution, HemicubeRadiosity.this.resolution / 2);
+        public final float[] frontColors = new float[HemicubeRadiosity.this.frontWeights.length * 4];
+        public final float[] sideColors = new float[HemicubeRadiosity.this.sideWeights.length * 4];
+        public final boolean[] visible = new boolean[HemicubeRadiosity.this.geometries.size()];
+        public final Vector3f tangent = new Vector3f();
+        public final Vector3f bitangent = new Vector3f();
+        public final Vector3f direction = new Vector3f();
+
+        {
+            float near = HemicubeRadiosity.this.near;
+            float far = HemicubeRadiosity.this.far;
+            this.front.getProjection().setFrustum(-near, near, -near, near, near, far);
+            this.side.getProjection().setFrustum(-near, near, 0f, near, near, far);
+            this.front.setMultithreadEnabled(false);
+            this.side.setMultithreadEnabled(false);
+        }
+    }
+
+    private final List<Geometry> geometries;
+    private final int resolution;
+    private final float near;
+    private final float far;
+    private final float[][] meshes;
+    private final float[] bounds;
+    private final Patches[] patches;
+    private final float[] frontWeights;
+    private final float[] sideWeights;
+    private final ThreadLocal<Hemicube> hemicubes = ThreadLocal.withInitial(Hemicube::new);
+
+    public HemicubeRadiosity(List<Geometry> geometries, MeshData.LightmapMesh[] lightmapMeshes, BakeMaterials materials, int resolution, float rayOffset) {
+        this.geometries = geometries;
+        this.resolution = Math.max(resolution & ~1, 2);
+        this.meshes = new float[geometries.size()][];
+        this.bounds = new float[geometries.size() * 6];
+        this.patches = new Patches[geometries.size()];
+
+        Vector3f min = new Vector3f();
+        Vector3f max = new Vector3f();
+        Vector3f sceneMin = new Vector3f(Float.POSITIVE_INFINITY);
+        Vector3f sceneMax = new Vector3f(Float.NEGATIVE_INFINITY);
+        for (int i = 0; i < geometries.size(); i++) {
+            Geometry geometry = geometries.get(i);
+            LightInfluence.geometryBounds(geometry, min, max);
+            this.bounds[(i * 6) + 0] = min.x();
+            this.bounds[(i * 6) + 1] = min.y();
+            this.bounds[(i * 6) + 2] = min.z();
+            this.bounds[(i * 6) + 3] = max.x();
+            this.bounds[(i * 6) + 4] = max.y();
+            this.bounds[(i * 6) + 5] = max.z();
+            sceneMin.min(min);
+            sceneMax.max(max);
+
+            this.meshes[i] = rendererMesh(geometry, lightmapMeshes[i]);
+            this.patches[i] = rasterizePatches(geometry, lightmapMeshes[i], materials, rayOffset);
+        }
+        this.near = Math.max(rayOffset, 0.0001f);
+        this.far = Math.max(sceneMin.distance(sceneMax) * 2f, this.near * 2f);
+
+        int res = this.resolution;
+        this.frontWeights = new float[res * res];
+        this.sideWeights = new float[res * (res / 2)];
+
+        //solid angle of each pixel, same estimator as the uniform hemisphere paths
+        float total = 0f;
+        for (int y = 0; y < res; y++) {
+            for (int x = 0; x < res; x++) {
+                float px = (((x + 0.5f) * 2f) / res) - 1f;
+                float py = (((y + 0.5f) * 2f) / res) - 1f;
+                float d = (px * px) + (py * py) + 1f;
+                float w = (float) (1.0 / (d * Math.sqrt(d)));
+                this.frontWeights[x + (y * res)] = w;
+                total += w;
+            }
+        }
+        for (int y = 0; y < res / 2; y++) {
+            for (int x = 0; x < res; x++) {
+                float px = (((x + 0.5f) * 2f) / res) - 1f;
+                float pz = ((y + 0.5f) * 2f) / res;
+                float d = (px * px) + (pz * pz) + 1f;
+                float w = (float) (1.0 / (d * Math.sqrt(d)));
+                this.sideWeights[x + (y * res)] = w;
+                total += w * 4f;
+            }
+        }
+        float invTotal = 1f / total;
+        for (int i = 0; i < this.frontWeights.length; i++) {
+            this.frontWeights[i] *= invTotal;
+        }
+        for (int i = 0; i < this.sideWeights.length; i++) {
+            this.sideWeights[i] *= invTotal;
+        }
+    }
+
+    private float[] rendererMesh(Geometry geometry, MeshData.LightmapMesh lightmapMesh) {
+        float[] vertices = geometry.getMesh().getVertices();
+        int[] indices = geometry.getMesh().getIndices();
+        float[] uvs = lightmapMesh.getUVs();
+
+        int size = SoftwareRenderer.MeshBuilder.VERTEX_SIZE;
+        float[] mesh = new float[indices.length * size];
+        for (int i = 0; i < indices.length; i++) {
+            int v = indices[i] * MeshData.SIZE;
+            int o = i * size;
+            mesh[o + SoftwareRenderer.MeshBuilder.POS_X] = vertices[v + MeshData.XYZ_OFFSET + 0];
+            mesh[o + SoftwareRenderer.MeshBuilder.POS_Y] = vertices[v + MeshData.XYZ_OFFSET + 1];
+            mesh[o + SoftwareRenderer.MeshBuilder.POS_Z] = vertices[v + MeshData.XYZ_OFFSET + 2];
+            mesh[o + SoftwareRenderer.MeshBuilder.TEX_U] = uvs[(indices[i] * 2) + 0];
+            mesh[o + SoftwareRenderer.MeshBuilder.TEX_V] = uvs[(indices[i] * 2) + 1];
+            mesh[o + SoftwareRenderer.MeshBuilder.NRM_X] = vertices[v + MeshData.N_XYZ_OFFSET + 0];
+            mesh[o + SoftwareRenderer.MeshBuilder.NRM_Y] = vertices[v + MeshData.N_XYZ_OFFSET + 1];
+            mesh[o + SoftwareRenderer.MeshBuilder.NRM_Z] = vertices[v + MeshData.N_XYZ_OFFSET + 2];
+            mesh[o + SoftwareRenderer.MeshBuilder.CLR_R] = 1f;
+            mesh[o + SoftwareRenderer.MeshBuilder.CLR_G] = 1f;
+            mesh[o + SoftwareRenderer.MeshBuilder.CLR_B] = 1f;
+            mesh[o + SoftwareRenderer.MeshBuilder.CLR_A] = 1f;
+        }
+        return mesh;
+    }
+
+    private float lerp(float[] vertices, Vector3fc weights, int i0, int i1, int i2, int offset) {
+        return (vertices[(i0 * MeshData.SIZE) + offset] * weights.x())
+                + (vertices[(i1 * MeshData.SIZE) + offset] * weights.y())
+                + (vertices[(i2 * MeshData.SIZE) + offset] * weights.z());
+    }
+
+    private Patches rasterizePatches(Geometry geometry, MeshData.LightmapMesh lightmapMesh, BakeMaterials materials, float rayOffset) {
+        float[] vertices = geometry.getMesh().getVertices();
+        int[] indices = geometry.getMesh().getIndices();
+        float[] uvs = lightmapMesh.getUVs();
+        int size = lightmapMesh.getLightmapSize();
+
+        int[] triangles = new int[size * size];
+        float[] texelWeights = new float[size * size * 3];
+        Arrays.fill(triangles, -1);
+
+        Vector3f weights = new Vector3f();
+        int count = 0;
+        for (int t = 0; t < indices.length / 3; t++) {
+            int i0 = indices[(t * 3) + 0];
+            int i1 = indices[(t * 3) + 1];
+            int i2 = indices[(t * 3) + 2];
+
+            float v0x = uvs[(i0 * 2) + 0] * size;
+            float v0y = uvs[(i0 * 2) + 1] * size;
+            float v1x = uvs[(i1 * 2) + 0] * size;
+            float v1y = uvs[(i1 * 2) + 1] * size;
+            float v2x = uvs[(i2 * 2) + 0] * size;
+            float v2y = uvs[(i2 * 2) + 1] * size;
+
+            int minX = Math.max((int) Math.floor(Math.min(v0x, Math.min(v1x, v2x))), 0);
+            int minY = Math.max((int) Math.floor(Math.min(v0y, Math.min(v1y, v2y))), 0);
+            int maxX = Math.min((int) Math.ceil(Math.max(v0x, Math.max(v1x, v2x))), size - 1);
+            int maxY = Math.min((int) Math.ceil(Math.max(v0y, Math.max(v1y, v2y))), size - 1);
+
+            raster:
+            for (int y = minY; y <= maxY; y++) {
+                for (int x = minX; x <= maxX; x++) {
+                    int texel = x + (y * size);
+                    if (triangles[texel] != -1) {
+                        continue;
+                    }
+                    RasterUtils.barycentricWeights(
+                            x + 0.5f, y + 0.5f, 0f,
+                            v0x, v0y, 0f,
+                            v1x, v1y, 0f,
+                            v2x, v2y, 0f,
+                            weights
+                    );
+                    if (!weights.isFinite()) {
+                        break raster;
+                    }
+                    if (weights.x() < 0f || weights.y() < 0f || weights.z() < 0f) {
+                        continue;
+                    }
+                    triangles[texel] = t;
+                    texelWeights[(texel * 3) + 0] = weights.x();
+                    texelWeights[(texel * 3) + 1] = weights.y();
+                    texelWeights[(texel * 3) + 2] = weights.z();
+                    count++;
+                }
+            }
+        }
+
+        int[] texels = new int[count];
+        float[] positions = new float[count * 3];
+        float[] normals = new float[count * 3];
+        float[] albedos = new float[count * 3];
+
+        Vector3f position = new Vector3f();
+        Vector3f normal = new Vector3f();
+        Vector3f triangleNormal = new Vector3f();
+        float[] color = new float[4];
+
+        int patch = 0;
+        for (int texel = 0; texel < triangles.length; texel++) {
+            int t = triangles[texel];
+            if (t == -1) {
+                continue;
+            }
+            int i0 = indices[(t * 3) + 0];
+            int i1 = indices[(t * 3) + 1];
+            int i2 = indices[(t * 3) + 2];
+            weights.set(texelWeights[(texel * 3) + 0], texelWeights[(texel * 3) + 1], texelWeights[(texel * 3) + 2]);
+
+            MeshUtils.calculateTriangleNormal(vertices, MeshData.SIZE, MeshData.XYZ_OFFSET, i0, i1, i2, triangleNormal);
+            geometry.getNormalModel().transform(triangleNormal).normalize();
+
+            position.set(
+                    lerp(vertices, weights, i0, i1, i2, MeshData.XYZ_OFFSET + 0),
+                    lerp(vertices, weights, i0, i1, i2, MeshData.XYZ_OFFSET + 1),
+                    lerp(vertices, weights, i0, i1, i2, MeshData.XYZ_OFFSET + 2)
+            );
+            geometry.getModel().transformProject(position);
+            position.fma(rayOffset, triangleNormal);
+
+            normal.set(
+                    lerp(vertices, weights, i0, i1, i2, MeshData.N_XYZ_OFFSET + 0),
+                    lerp(vertices, weights, i0, i1, i2, MeshData.N_XYZ_OFFSET + 1),
+                    lerp(vertices, weights, i0, i1, i2, MeshData.N_XYZ_OFFSET + 2)
+            );
+            geometry.getNormalModel().transform(normal).normalize();
+            if (!normal.isFinite()) {
+                normal.set(triangleNormal);
+            }
+
+            materials.sample(
+                    geometry.getMaterialIndex(), 0,
+                    lerp(vertices, weights, i0, i1, i2, MeshData.UV_OFFSET + 0),
+                    lerp(vertices, weights, i0, i1, i2, MeshData.UV_OFFSET + 1),
+                    color, 0
+            );
+
+            texels[patch] = texel;
+            positions[(patch * 3) + 0] = position.x();
+            positions[(patch * 3) + 1] = position.y();
+            positions[(patch * 3) + 2] = position.z();
+            normals[(patch * 3) + 0] = normal.x();
+            normals[(patch * 3) + 1] = normal.y();
+            normals[(patch * 3) + 2] = normal.z();
+            System.arraycopy(color, 0, albedos, patch * 3, 3);
+            patch++;
+        }
+
+        //empty texels next to patches copy them, nearest sampling at triangle edges would read black
+        int[] owners = new int[size * size];
+        for (int texel = 0; texel < owners.length; texel++) {
+            owners[texel] = (triangles[texel] != -1 ? texel : -1);
+        }
+        int[] targets = new int[64];
+        int[] sources = new int[64];
+        int fills = 0;
+        for (int ring = 0; ring < MARGIN; ring++) {
+            int[] previous = owners.clone();
+            for (int y = 0; y < size; y++) {
+                for (int x = 0; x < size; x++) {
+                    int texel = x + (y * size);
+                    if (previous[texel] != -1) {
+                        continue;
+                    }
+                    int owner = -1;
+                    if (x > 0 && previous[texel - 1] != -1) {
+                        owner = previous[texel - 1];
+                    } else if (x < size - 1 && previous[texel + 1] != -1) {
+                        owner = previous[texel + 1];
+                    } else if (y > 0 && previous[texel - size] != -1) {
+                        owner = previous[texel - size];
+                    } else if (y < size - 1 && previous[texel + size] != -1) {
+                        owner = previous[texel + size];
+                    }
+                    if (owner == -1) {
+                        continue;
+                    }
+                    owners[texel] = owner;
+                    if (fills == targets.length) {
+                        targets = Arrays.copyOf(targets, fills * 2);
+                        sources = Arrays.copyOf(sources, fills * 2);
+                    }
+                    targets[fills] = texel;
+                    sources[fills] = owner;
+                    fills++;
+                }
+            }
+        }
+
+        return new Patches(size, count, texels, positions, normals, albedos, Arrays.copyOf(targets, fills), Arrays.copyOf(sources, fills));
+    }
+
+    public int getResolution() {
+        return resolution;
+    }
+
+    public int getAmountOfGeometries() {
+        return this.patches.length;
+    }
+
+    public Patches getPatches(int geometry) {
+        return this.patches[geometry];
+    }
+
+    public float[] newExitance(int geometry) {
+        int size = this.patches[geometry].size;
+        return new float[size * size * 3];
+    }
+
+    public void dilate(int geometry, float[] exitance) {
+        Patches p = this.patches[geometry];
+        for (int i = 0; i < p.fillTargets.length; i++) {
+            System.arraycopy(exitance, p.fillSources[i] * 3, exitance, p.fillTargets[i] * 3, 3);
+        }
+    }
+
+    public SoftwareTexture texture(int geometry, float[] exitance) {
+        final int size = this.patches[geometry].size;
+        return new SoftwareTexture() {
+            @Override
+            public int width() {
+                return size;
+            }
+
+            @Override
+            public int height() {
+                return size;
+            }
+
+            @Override
+            public TextureWrapping getWrappingX() {
+                return TextureWrapping.CLAMP_TO_EDGE;
+            }
+
+            @Override
+            public TextureWrapping getWrappingY() {
+                return TextureWrapping.CLAMP_TO_EDGE;
+            }
+
+            @Override
+            public TextureFiltering getPreferredFiltering() {
+                return TextureFiltering.NEAREST;
+            }
+
+            @Override
+            public void fetch(int x, int y, float[] result, int offset) {
+                int index = (x + (y * size)) * 3;
+                result[offset + 0] = exitance[index + 0];
+                result[offset + 1] = exitance[index + 1];
+                result[offset + 2] = exitance[index + 2];
+                result[offset + 3] = 1f;
+            }
+        };
+    }
+
+    private boolean above(int geometry, Vector3fc position, Vector3fc normal) {
+        int o = geometry * 6;
+        for (int i = 0; i < 8; i++) {
+            float x = this.bounds[o + ((i & 1) == 0 ? 0 : 3)] - position.x();
+            float y = this.bounds[o + 1 + ((i & 2) == 0 ? 0 : 3)] - position.y();
+            float z = this.bounds[o + 2 + ((i & 4) == 0 ? 0 : 3)] - position.z();
+            if ((x * normal.x()) + (y * normal.y()) + (z * normal.z()) > 0f) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void renderFace(Hemicube cube, SoftwareRenderer renderer, float[] colors, Vector3fc position, Vector3fc direction, Vector3fc up, SoftwareTexture[] exitance, Vector3fc sky) {
+        renderer.getClearColor().set(sky.x(), sky.y(), sky.z(), 1f);
+        renderer.clearBuffers();
+        renderer.getCameraPosition().set(position);
+        renderer.getView().setLookAlong(direction, up);
+        for (int i = 0; i < this.meshes.length; i++) {
+            if (!cube.visible[i]) {
+                continue;
+            }
+            renderer.setMesh(this.meshes[i]);
+            renderer.getModel().set(this.geometries.get(i).getModel());
+            renderer.setTexture(exitance[i]);
+            renderer.render();
+        }
+        renderer.getSurface().getColor(0, 0, colors, 0, colors.length);
+    }
+
+    public void gather(Vector3fc position, Vector3fc normal, SoftwareTexture[] exitance, Vector3fc sky, Vector3f output) {
+        Hemicube cube = this.hemicubes.get();
+
+        for (int i = 0; i < cube.visible.length; i++) {
+            cube.visible[i] = above(i, position, normal);
+        }
+
+        if (Math.abs(normal.x()) < 0.9f) {
+            cube.tangent.set(1f, 0f, 0f);
+        } else {
+            cube.tangent.set(0f, 1f, 0f);
+        }
+        cube.tangent.fma(-cube.tangent.dot(normal), normal).normalize();
+        cube.bitangent.set(normal).cross(cube.tangent);
+
+        float r = 0f;
+        float g = 0f;
+        float b = 0f;
+        for (int face = 0; face < 5; face++) {
+            SoftwareRenderer renderer;
+            float[] colors;
+            float[] weights;
+            Vector3fc up;
+            switch (face) {
+                case 0 -> {
+                    cube.direction.set(normal);
+                    renderer = cube.front;
+                    colors = cube.frontColors;
+                    weights = this.frontWeights;
+                    up = cube.tangent;
+                }
+                default -> {
+                    cube.direction.set(face < 3 ? cube.tangent : cube.bitangent);
+                    if ((face & 1) == 0) {
+                        cube.direction.negate();
+                    }
+                    renderer = cube.side;
+                    colors = cube.sideColors;
+                    weights = this.sideWeights;
+                    up = normal;
+                }
+            }
+            renderFace(cube, renderer, colors, position, cube.direction, up, exitance, sky);
+            for (int i = 0; i < weights.length; i++) {
+                r += colors[(i * 4) + 0] * weights[i];
+                g += colors[(i * 4) + 1] * weights[i];
+                b += colors[(i * 4) + 2] * weights[i];
+            }
+        }
+        output.set(r, g, b);
+    }
+
+}
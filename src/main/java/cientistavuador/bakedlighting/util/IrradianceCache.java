@@ -0,0 +1,170 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <https://unlicense.org>
+ */
+package cientistavuador.bakedlighting.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.joml.Vector3f;
+import org.joml.Vector3fc;
+
+/**
+ * Ward style irradiance cache, records are placed where the interpolation
+ * error estimate from the harmonic mean distance and the normal change is too
+ * high and are stored in a uniform grid, every record is added to every cell
+ * its influence radius overlaps.
+ *
+ * @author Cien
+ */
+public class IrradianceCache {
+
+    private static class Record {
+
+        public final float x, y, z;
+        public final float nx, ny, nz;
+        public final float radius;
+        public final float r, g, b;
+        public final float ar, ag, ab;
+
+        public Record(Vector3fc position, Vector3fc normal, float radius, Vector3fc irradiance, Vector3fc ambient) {
+            this.x = position.x();
+            this.y = position.y();
+            this.z = position.z();
+            this.nx = normal.x();
+            this.ny = normal.y();
+            this.nz = normal.z();
+            this.radius = radius;
+            this.r = irradiance.x();
+            this.g = irradiance.y();
+            this.b = irradiance.z();
+            this.ar = ambient.x();
+            this.ag = ambient.y();
+            this.ab = ambient.z();
+        }
+    }
+
+    private final float error;
+    private final float minRadius;
+    private final float maxRadius;
+    private final float cellSize;
+    private final ConcurrentHashMap<Long, ConcurrentLinkedQueue<Record>> cells = new ConcurrentHashMap<>();
+    private final AtomicInteger records = new AtomicInteger();
+
+    public IrradianceCache(float error, float minRadius, float maxRadius) {
+        this.error = error;
+        this.minRadius = minRadius;
+        this.maxRadius = Math.max(maxRadius, minRadius);
+        this.cellSize = this.maxRadius * error;
+    }
+
+    public float getError() {
+        return error;
+    }
+
+    public int getRecords() {
+        return this.records.get();
+    }
+
+    private int cell(float v) {
+        return (int) Math.floor(v / this.cellSize);
+    }
+
+    private static long key(int x, int y, int z) {
+        return ((x & 0x1FFFFFL) << 42) | ((y & 0x1FFFFFL) << 21) | (z & 0x1FFFFFL);
+    }
+
+    public boolean interpolate(Vector3fc position, Vector3fc normal, Vector3f irradiance, Vector3f ambient) {
+        ConcurrentLinkedQueue<Record> candidates = this.cells.get(key(cell(position.x()), cell(position.y()), cell(position.z())));
+        if (candidates == null) {
+            return false;
+        }
+
+        float totalWeight = 0f;
+        float r = 0f, g = 0f, b = 0f;
+        float ar = 0f, ag = 0f, ab = 0f;
+        for (Record rec : candidates) {
+            float dx = position.x() - rec.x;
+            float dy = position.y() - rec.y;
+            float dz = position.z() - rec.z;
+
+            //records in front of the point see a different part of the scene
+            float front = (dx * (normal.x() + rec.nx)) + (dy * (normal.y() + rec.ny)) + (dz * (normal.z() + rec.nz));
+            if ((front * 0.5f) < -0.05f * rec.radius) {
+                continue;
+            }
+
+            float normalChange = 1f - ((normal.x() * rec.nx) + (normal.y() * rec.ny) + (normal.z() * rec.nz));
+            float estimate = ((float) Math.sqrt((dx * dx) + (dy * dy) + (dz * dz)) / rec.radius)
+                    + (float) Math.sqrt(Math.max(normalChange, 0f));
+            if (estimate >= this.error) {
+                continue;
+            }
+
+            float weight = 1f / Math.max(estimate, 1e-4f);
+            r += rec.r * weight;
+            g += rec.g * weight;
+            b += rec.b * weight;
+            ar += rec.ar * weight;
+            ag += rec.ag * weight;
+            ab += rec.ab * weight;
+            totalWeight += weight;
+        }
+
+        if (totalWeight == 0f) {
+            return false;
+        }
+
+        float invTotalWeight = 1f / totalWeight;
+        irradiance.set(r, g, b).mul(invTotalWeight);
+        ambient.set(ar, ag, ab).mul(invTotalWeight);
+        return true;
+    }
+
+    public void add(Vector3fc position, Vector3fc normal, float harmonicMeanDistance, Vector3fc irradiance, Vector3fc ambient) {
+        float radius = Math.min(Math.max(harmonicMeanDistance, this.minRadius), this.maxRadius);
+        Record rec = new Record(position, normal, radius, irradiance, ambient);
+
+        float influence = radius * this.error;
+        int minX = cell(rec.x - influence);
+        int minY = cell(rec.y - influence);
+        int minZ = cell(rec.z - influence);
+        int maxX = cell(rec.x + influence);
+        int maxY = cell(rec.y + influence);
+        int maxZ = cell(rec.z + influence);
+        for (int z = minZ; z <= maxZ; z++) {
+            for (int y = minY; y <= maxY; y++) {
+                for (int x = minX; x <= maxX; x++) {
+                    this.cells
+                            .computeIfAbsent(key(x, y, z), (k) -> new ConcurrentLinkedQueue<>())
+                            .add(rec);
+                }
+            }
+        }
+        this.records.incrementAndGet();
+    }
+
+}
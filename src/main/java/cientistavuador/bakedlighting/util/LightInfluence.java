@@ -0,0 +1,121 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <https://unlicense.org>
+ */
+package cientistavuador.bakedlighting.util;
+
+import cientistavuador.bakedlighting.geometry.Geometry;
+import org.joml.Matrix4fc;
+import org.joml.Vector3f;
+import org.joml.Vector3fc;
+
+/**
+ *
+ * @author Cien
+ */
+public class LightInfluence {
+
+    public static final float EPSILON = 0.001f;
+
+    public static void geometryBounds(Geometry geometry, Vector3f outMin, Vector3f outMax) {
+        geometryBounds(geometry, geometry.getModel(), outMin, outMax);
+    }
+
+    public static void geometryBounds(Geometry geometry, Matrix4fc model, Vector3f outMin, Vector3f outMax) {
+        BVH bvh = geometry.getMesh().getBVH();
+        model.transformAab(
+                bvh.getMin().x(), bvh.getMin().y(), bvh.getMin().z(),
+                bvh.getMax().x(), bvh.getMax().y(), bvh.getMax().z(),
+                outMin, outMax
+        );
+    }
+
+    public static boolean outsideRadius(Scene.PointLight light, Vector3fc min, Vector3fc max) {
+        float radius = light.getInfluenceRadius();
+        if (!Float.isFinite(radius)) {
+            return false;
+        }
+        radius = (radius * (1f + EPSILON)) + EPSILON;
+
+        Vector3fc position = light.getPosition();
+
+        float dx = Math.max(Math.max(min.x() - position.x(), 0f), position.x() - max.x());
+        float dy = Math.max(Math.max(min.y() - position.y(), 0f), position.y() - max.y());
+        float dz = Math.max(Math.max(min.z() - position.z(), 0f), position.z() - max.z());
+
+        return ((dx * dx) + (dy * dy) + (dz * dz)) > (radius * radius);
+    }
+
+    public static boolean outsideCone(Scene.SpotLight light, Vector3fc min, Vector3fc max) {
+        float cutoffCosine = light.getCutoffAngleRadiansCosine();
+        float outerCutoffCosine = light.getOuterCutoffAngleRadiansCosine();
+        if (!(cutoffCosine > outerCutoffCosine)) {
+            return false;
+        }
+
+        float centerX = (min.x() + max.x()) * 0.5f;
+        float centerY = (min.y() + max.y()) * 0.5f;
+        float centerZ = (min.z() + max.z()) * 0.5f;
+
+        float extentX = (max.x() - min.x()) * 0.5f;
+        float extentY = (max.y() - min.y()) * 0.5f;
+        float extentZ = (max.z() - min.z()) * 0.5f;
+        float boundsRadius = (float) Math.sqrt((extentX * extentX) + (extentY * extentY) + (extentZ * extentZ));
+        boundsRadius = (boundsRadius * (1f + EPSILON)) + EPSILON;
+
+        float toCenterX = centerX - light.getPosition().x();
+        float toCenterY = centerY - light.getPosition().y();
+        float toCenterZ = centerZ - light.getPosition().z();
+        float distance = (float) Math.sqrt((toCenterX * toCenterX) + (toCenterY * toCenterY) + (toCenterZ * toCenterZ));
+
+        if (distance <= boundsRadius) {
+            return false;
+        }
+
+        float cosine = light.getDirection().dot(toCenterX, toCenterY, toCenterZ) / distance;
+        double angle = Math.acos(Math.min(Math.max(cosine, -1f), 1f));
+        double boundsAngle = Math.asin(boundsRadius / distance);
+        double outerAngle = Math.acos(outerCutoffCosine);
+
+        return (angle - boundsAngle) > (outerAngle + EPSILON);
+    }
+
+    public static boolean outside(Scene.Light light, Vector3fc min, Vector3fc max, boolean coneCulling) {
+        if (light instanceof Scene.PointLight p) {
+            if (outsideRadius(p, min, max)) {
+                return true;
+            }
+            if (coneCulling && light instanceof Scene.SpotLight s) {
+                return outsideCone(s, min, max);
+            }
+        }
+        return false;
+    }
+
+    private LightInfluence() {
+
+    }
+
+}
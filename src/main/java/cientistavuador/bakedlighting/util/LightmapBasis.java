@@ -0,0 +1,262 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <https://unlicense.org>
+ */
+package cientistavuador.bakedlighting.util;
+
+import cientistavuador.bakedlighting.geometry.Geometry;
+import cientistavuador.bakedlighting.resources.mesh.MeshData;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.joml.Vector3fc;
+
+/**
+ *
+ * @author Cien
+ */
+public class LightmapBasis {
+
+    private static final int MANTISSA_BITS = 9;
+    private static final int EXPONENT_BIAS = 15;
+    private static final int MAX_EXPONENT = 31;
+    private static final float MAX_VALUE = ((1 << MANTISSA_BITS) - 1) / ((float) (1 << MANTISSA_BITS)) * (1 << (MAX_EXPONENT - EXPONENT_BIAS));
+
+    public static int encode(float r, float g, float b) {
+        r = Math.min(Math.max(r, 0f), MAX_VALUE);
+        g = Math.min(Math.max(g, 0f), MAX_VALUE);
+        b = Math.min(Math.max(b, 0f), MAX_VALUE);
+        float max = Math.max(r, Math.max(g, b));
+        if (max == 0f) {
+            return 0;
+        }
+
+        int exponent = Math.max(-EXPONENT_BIAS - 1, Math.getExponent(max)) + 1 + EXPONENT_BIAS;
+        float scale = (float) Math.scalb(1.0, exponent - EXPONENT_BIAS - MANTISSA_BITS);
+        if ((int) Math.floor((max / scale) + 0.5f) == (1 << MANTISSA_BITS)) {
+            exponent++;
+            scale *= 2f;
+        }
+
+        int rs = (int) Math.floor((r / scale) + 0.5f);
+        int gs = (int) Math.floor((g / scale) + 0.5f);
+        int bs = (int) Math.floor((b / scale) + 0.5f);
+
+        return rs | (gs << 9) | (bs << 18) | (exponent << 27);
+    }
+
+    public static float decodeScale(int packed) {
+        return (float) Math.scalb(1.0, (packed >>> 27) - EXPONENT_BIAS - MANTISSA_BITS);
+    }
+
+    public static float decodeRed(int packed) {
+        return (packed & 0x1FF) * decodeScale(packed);
+    }
+
+    public static float decodeGreen(int packed) {
+        return ((packed >>> 9) & 0x1FF) * decodeScale(packed);
+    }
+
+    public static float decodeBlue(int packed) {
+        return ((packed >>> 18) & 0x1FF) * decodeScale(packed);
+    }
+
+    public static int[] encode(float[] rgb) {
+        int[] packed = new int[rgb.length / 3];
+        boolean empty = true;
+        for (int i = 0; i < packed.length; i++) {
+            packed[i] = encode(rgb[(i * 3) + 0], rgb[(i * 3) + 1], rgb[(i * 3) + 2]);
+            if (packed[i] != 0) {
+                empty = false;
+            }
+        }
+        if (empty) {
+            return null;
+        }
+        return packed;
+    }
+
+    public static class LightBasis {
+
+        private final Scene.Light light;
+        private final int groupIndex;
+        private final int[] diffuse;
+        private final int[] ambient;
+
+        public LightBasis(Scene.Light light, int groupIndex, int[] diffuse, int[] ambient) {
+            this.light = light;
+            this.groupIndex = groupIndex;
+            this.diffuse = diffuse;
+            this.ambient = ambient;
+        }
+
+        public Scene.Light getLight() {
+            return light;
+        }
+
+        public int getGroupIndex() {
+            return groupIndex;
+        }
+
+        public int[] getDiffuse() {
+            return diffuse;
+        }
+
+        public int[] getAmbient() {
+            return ambient;
+        }
+
+        public boolean isEmpty() {
+            return this.diffuse == null && this.ambient == null;
+        }
+
+        public long getMemoryUsage() {
+            long usage = 0;
+            if (this.diffuse != null) {
+                usage += this.diffuse.length * 4L;
+            }
+            if (this.ambient != null) {
+                usage += this.ambient.length * 4L;
+            }
+            return usage;
+        }
+    }
+
+    private final Geometry geometry;
+    private final MeshData.LightmapMesh mesh;
+    private final int lightmapSize;
+    private final String[] groups;
+    private final boolean[] bakedGroups;
+    private final List<LightBasis> lights = new ArrayList<>();
+
+    public LightmapBasis(Geometry geometry, MeshData.LightmapMesh mesh, int lightmapSize, String[] groups, boolean[] bakedGroups) {
+        this.geometry = geometry;
+        this.mesh = mesh;
+        this.lightmapSize = lightmapSize;
+        this.groups = groups;
+        this.bakedGroups = bakedGroups;
+    }
+
+    public Geometry getGeometry() {
+        return geometry;
+    }
+
+    public MeshData.LightmapMesh getMesh() {
+        return mesh;
+    }
+
+    public int getLightmapSize() {
+        return lightmapSize;
+    }
+
+    public String[] getGroups() {
+        return groups;
+    }
+
+    public boolean isGroupBaked(int groupIndex) {
+        return this.bakedGroups[groupIndex];
+    }
+
+    public List<LightBasis> getLights() {
+        return Collections.unmodifiableList(this.lights);
+    }
+
+    public void add(LightBasis basis) {
+        if (basis.isEmpty()) {
+            return;
+        }
+        this.lights.add(basis);
+    }
+
+    public void inherit(LightmapBasis previous) {
+        if (previous.getLightmapSize() != this.lightmapSize) {
+            return;
+        }
+        for (LightBasis basis : previous.lights) {
+            String group = previous.groups[basis.getGroupIndex()];
+            for (int i = 0; i < this.groups.length; i++) {
+                if (!this.bakedGroups[i] && this.groups[i].equals(group)) {
+                    this.lights.add(new LightBasis(basis.getLight(), i, basis.getDiffuse(), basis.getAmbient()));
+                    break;
+                }
+            }
+        }
+    }
+
+    public long getMemoryUsage() {
+        long usage = 0;
+        for (LightBasis basis : this.lights) {
+            usage += basis.getMemoryUsage();
+        }
+        return usage;
+    }
+
+    private void accumulate(int[] basis, Vector3fc color, float[] output) {
+        if (basis == null) {
+            return;
+        }
+        float r = color.x();
+        float g = color.y();
+        float b = color.z();
+        if (r == 0f && g == 0f && b == 0f) {
+            return;
+        }
+        for (int i = 0; i < basis.length; i++) {
+            int packed = basis[i];
+            if (packed == 0) {
+                continue;
+            }
+            float scale = decodeScale(packed);
+            output[(i * 3) + 0] += (packed & 0x1FF) * scale * r;
+            output[(i * 3) + 1] += ((packed >>> 9) & 0x1FF) * scale * g;
+            output[(i * 3) + 2] += ((packed >>> 18) & 0x1FF) * scale * b;
+        }
+    }
+
+    public void recompose(int groupIndex, float[] output) {
+        if (output.length != this.lightmapSize * this.lightmapSize * 3) {
+            throw new IllegalArgumentException("Output size is not " + this.lightmapSize + "x" + this.lightmapSize + " RGB");
+        }
+        for (int i = 0; i < output.length; i++) {
+            output[i] = 0f;
+        }
+        for (LightBasis basis : this.lights) {
+            if (basis.getGroupIndex() != groupIndex) {
+                continue;
+            }
+            accumulate(basis.getDiffuse(), basis.getLight().getDiffuse(), output);
+            if (basis.getLight() instanceof Scene.DirectionalLight sun) {
+                accumulate(basis.getAmbient(), sun.getAmbient(), output);
+            }
+        }
+    }
+
+    public float[] recompose(int groupIndex) {
+        float[] output = new float[this.lightmapSize * this.lightmapSize * 3];
+        recompose(groupIndex, output);
+        return output;
+    }
+
+}
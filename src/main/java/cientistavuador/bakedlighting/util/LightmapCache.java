@@ -0,0 +1,254 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <https://unlicense.org>
+ */
+package cientistavuador.bakedlighting.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ *
+ * @author Cien
+ */
+public class LightmapCache {
+
+    private static final int UVS_MAGIC = 0x4C4D5501;
+    private static final int LIGHTMAP_MAGIC = 0x4C4D4C01;
+
+    public static class CachedLightmap {
+
+        private final int lightmapSize;
+        private final float[] lightmap;
+        private final int[] basisLights;
+        private final int[][] diffuseBasis;
+        private final int[][] ambientBasis;
+
+        public CachedLightmap(int lightmapSize, float[] lightmap, int[] basisLights, int[][] diffuseBasis, int[][] ambientBasis) {
+            this.lightmapSize = lightmapSize;
+            this.lightmap = lightmap;
+            this.basisLights = basisLights;
+            this.diffuseBasis = diffuseBasis;
+            this.ambientBasis = ambientBasis;
+        }
+
+        public int getLightmapSize() {
+            return lightmapSize;
+        }
+
+        public float[] getLightmap() {
+            return lightmap;
+        }
+
+        public int[] getBasisLights() {
+            return basisLights;
+        }
+
+        public int[][] getDiffuseBasis() {
+            return diffuseBasis;
+        }
+
+        public int[][] getAmbientBasis() {
+            return ambientBasis;
+        }
+
+    }
+
+    private final Path directory;
+
+    public LightmapCache(Path directory) {
+        this.directory = directory;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    private static void writeFloats(DataOutputStream out, float[] array) throws IOException {
+        out.writeInt(array.length);
+        for (float f : array) {
+            out.writeFloat(f);
+        }
+    }
+
+    private static float[] readFloats(DataInputStream in) throws IOException {
+        float[] array = new float[in.readInt()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = in.readFloat();
+        }
+        return array;
+    }
+
+    private static void writeInts(DataOutputStream out, int[] array) throws IOException {
+        if (array == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(array.length);
+        for (int i : array) {
+            out.writeInt(i);
+        }
+    }
+
+    private static int[] readInts(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        int[] array = new int[length];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = in.readInt();
+        }
+        return array;
+    }
+
+    public static LightmapUVs.GeneratorOutput readGeneratorOutput(DataInputStream in) throws IOException {
+        int lightmapSize = in.readInt();
+        float[] uvs = readFloats(in);
+        LightmapUVs.LightmapperQuad[] quads = new LightmapUVs.LightmapperQuad[in.readInt()];
+        for (int i = 0; i < quads.length; i++) {
+            int x = in.readInt();
+            int y = in.readInt();
+            int width = in.readInt();
+            int height = in.readInt();
+            int[] triangles = readInts(in);
+            float[] quadUVs = readFloats(in);
+            quads[i] = new LightmapUVs.LightmapperQuad(x, y, width, height, triangles, quadUVs);
+        }
+        return new LightmapUVs.GeneratorOutput(lightmapSize, uvs, quads);
+    }
+
+    public static void writeGeneratorOutput(DataOutputStream out, LightmapUVs.GeneratorOutput output) throws IOException {
+        out.writeInt(output.getLightmapSize());
+        writeFloats(out, output.getUVs());
+        out.writeInt(output.getQuads().length);
+        for (LightmapUVs.LightmapperQuad quad : output.getQuads()) {
+            out.writeInt(quad.getX());
+            out.writeInt(quad.getY());
+            out.writeInt(quad.getWidth());
+            out.writeInt(quad.getHeight());
+            writeInts(out, quad.getTriangles());
+            writeFloats(out, quad.getUVs());
+        }
+    }
+
+    private DataInputStream open(String key) throws IOException {
+        Path path = this.directory.resolve(key + ".bin");
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        return new DataInputStream(new BufferedInputStream(new InflaterInputStream(Files.newInputStream(path))));
+    }
+
+    private Path temporary(String key) throws IOException {
+        Files.createDirectories(this.directory);
+        return Files.createTempFile(this.directory, key, ".tmp");
+    }
+
+    private DataOutputStream create(Path temp) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(new DeflaterOutputStream(Files.newOutputStream(temp), new Deflater(Deflater.BEST_SPEED))));
+    }
+
+    private void commit(Path temp, String key) throws IOException {
+        Files.move(temp, this.directory.resolve(key + ".bin"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public boolean contains(String key) {
+        return Files.isRegularFile(this.directory.resolve(key + ".bin"));
+    }
+
+    public LightmapUVs.GeneratorOutput readUVs(String key) {
+        try (DataInputStream in = open(key)) {
+            if (in == null || in.readInt() != UVS_MAGIC) {
+                return null;
+            }
+            return readGeneratorOutput(in);
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    public void writeUVs(String key, LightmapUVs.GeneratorOutput output) {
+        try {
+            Path temp = temporary(key);
+            try (DataOutputStream out = create(temp)) {
+                out.writeInt(UVS_MAGIC);
+                writeGeneratorOutput(out, output);
+            }
+            commit(temp, key);
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    public CachedLightmap readLightmap(String key) {
+        try (DataInputStream in = open(key)) {
+            if (in == null || in.readInt() != LIGHTMAP_MAGIC) {
+                return null;
+            }
+            int lightmapSize = in.readInt();
+            float[] lightmap = readFloats(in);
+            int[] basisLights = readInts(in);
+            int[][] diffuseBasis = new int[basisLights.length][];
+            int[][] ambientBasis = new int[basisLights.length][];
+            for (int i = 0; i < basisLights.length; i++) {
+                diffuseBasis[i] = readInts(in);
+                ambientBasis[i] = readInts(in);
+            }
+            return new CachedLightmap(lightmapSize, lightmap, basisLights, diffuseBasis, ambientBasis);
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    public void writeLightmap(String key, CachedLightmap lightmap) {
+        try {
+            Path temp = temporary(key);
+            try (DataOutputStream out = create(temp)) {
+                out.writeInt(LIGHTMAP_MAGIC);
+                out.writeInt(lightmap.getLightmapSize());
+                writeFloats(out, lightmap.getLightmap());
+                writeInts(out, lightmap.getBasisLights());
+                for (int i = 0; i < lightmap.getBasisLights().length; i++) {
+                    writeInts(out, lightmap.getDiffuseBasis()[i]);
+                    writeInts(out, lightmap.getAmbientBasis()[i]);
+                }
+            }
+            commit(temp, key);
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+}
@@ -0,0 +1,161 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <https://unlicense.org>
+ */
+package cientistavuador.bakedlighting.util;
+
+import cientistavuador.bakedlighting.geometry.Geometry;
+import cientistavuador.bakedlighting.resources.mesh.MeshData;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes every baked lightmap to a Radiance HDR (.hdr) file.
+ *
+ * @author Cien
+ */
+public class LightmapFileOutput implements BakedLighting.BakedLightingOutput {
+
+    private final Path directory;
+
+    private int geometryIndex = -1;
+    private String geometryName = null;
+    private int lightmapSize = 0;
+    private String[] groups = null;
+
+    private int files = 0;
+    private long bytes = 0;
+    private long texels = 0;
+
+    public LightmapFileOutput(Path directory) {
+        this.directory = directory;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public int getFiles() {
+        return files;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getTexels() {
+        return texels;
+    }
+
+    @Override
+    public void prepare(Geometry geometry, MeshData.LightmapMesh mesh, int lightmapSize, String[] groups) {
+        this.geometryIndex++;
+        this.geometryName = geometry.getMesh().getName().replaceAll("[^A-Za-z0-9_.-]", "_");
+        this.lightmapSize = lightmapSize;
+        this.groups = groups;
+    }
+
+    @Override
+    public void write(float[] lightmap, int groupIndex) {
+        String group = this.groups[groupIndex];
+        if (group.isEmpty()) {
+            group = "default";
+        }
+        String fileName = this.geometryIndex + "_" + this.geometryName + "_" + group.replaceAll("[^A-Za-z0-9_.-]", "_") + ".hdr";
+        Path file = this.directory.resolve(fileName);
+        try {
+            Files.createDirectories(this.directory);
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), 65536)) {
+                writeHDR(out, lightmap, this.lightmapSize);
+            }
+            this.files++;
+            this.bytes += Files.size(file);
+            this.texels += this.lightmapSize * this.lightmapSize;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private static void writeHDR(OutputStream out, float[] lightmap, int size) throws IOException {
+        out.write(("#?RADIANCE\nFORMAT=32-bit_rle_rgbe\n\n-Y " + size + " +X " + size + "\n").getBytes(StandardCharsets.US_ASCII));
+
+        byte[] scanline = new byte[size * 4];
+        for (int y = size - 1; y >= 0; y--) {
+            for (int x = 0; x < size; x++) {
+                int index = (x * 3) + (y * size * 3);
+                float r = Math.max(lightmap[index + 0], 0f);
+                float g = Math.max(lightmap[index + 1], 0f);
+                float b = Math.max(lightmap[index + 2], 0f);
+                float max = Math.max(r, Math.max(g, b));
+
+                if (max < 1e-32f) {
+                    scanline[x + (size * 0)] = 0;
+                    scanline[x + (size * 1)] = 0;
+                    scanline[x + (size * 2)] = 0;
+                    scanline[x + (size * 3)] = 0;
+                    continue;
+                }
+
+                int exponent = Math.getExponent(max) + 1;
+                float scale = Math.scalb(256f, -exponent);
+                scanline[x + (size * 0)] = (byte) Math.min((int) (r * scale), 255);
+                scanline[x + (size * 1)] = (byte) Math.min((int) (g * scale), 255);
+                scanline[x + (size * 2)] = (byte) Math.min((int) (b * scale), 255);
+                scanline[x + (size * 3)] = (byte) (exponent + 128);
+            }
+
+            if (size < 8 || size > 0x7FFF) {
+                for (int x = 0; x < size; x++) {
+                    out.write(scanline[x + (size * 0)]);
+                    out.write(scanline[x + (size * 1)]);
+                    out.write(scanline[x + (size * 2)]);
+                    out.write(scanline[x + (size * 3)]);
+                }
+                continue;
+            }
+
+            out.write(2);
+            out.write(2);
+            out.write(size >> 8);
+            out.write(size & 0xFF);
+            for (int c = 0; c < 4; c++) {
+                int offset = size * c;
+                int x = 0;
+                while (x < size) {
+                    int count = Math.min(size - x, 128);
+                    out.write(count);
+                    out.write(scanline, offset + x, count);
+                    x += count;
+                }
+            }
+        }
+    }
+
+}
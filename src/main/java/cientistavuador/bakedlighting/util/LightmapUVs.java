@@ -226,6 +226,7 @@ public class LightmapUVs {
     private static final float EPSILON = 1f - (1f / 256f);
     private static final int VERTEX_SIZE = 3;
     public static final int MARGIN = 1;
+    public static final int VERSION = 1;
     private static final int OPTIMIZATION_TRIGGER = 1024;
     public static volatile boolean MAINTAIN_ROTATION = false;
 
@@ -26,6 +26,9 @@
  */
 package cientistavuador.bakedlighting.util;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 /**
  *
  * @author Cien
@@ -59,7 +62,53 @@ public class MarginAutomata {
     }
 
     public static void generateMargin(MarginAutomataIO io, int iterations) {
-        new MarginAutomata(io, iterations).process();
+        int width = io.width();
+        int height = io.height();
+        FloatImage image = FloatImage.allocate(width, height, 3, true);
+        boolean[] outOfBounds = new boolean[width * height];
+
+        MarginAutomataColor color = new MarginAutomataColor();
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (io.outOfBounds(x, y)) {
+                    outOfBounds[x + (y * width)] = true;
+                    continue;
+                }
+                if (io.empty(x, y)) {
+                    continue;
+                }
+                io.read(x, y, color);
+                image.set(x, y, 0, color.r);
+                image.set(x, y, 1, color.g);
+                image.set(x, y, 2, color.b);
+                image.setFilled(x, y, true);
+            }
+        }
+
+        generateMargin(image, iterations, null);
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (outOfBounds[x + (y * width)]) {
+                    continue;
+                }
+                if (!image.isFilled(x, y)) {
+                    io.writeEmptyPixel(x, y);
+                    continue;
+                }
+                color.r = image.get(x, y, 0);
+                color.g = image.get(x, y, 1);
+                color.b = image.get(x, y, 2);
+                io.write(x, y, color);
+            }
+        }
+    }
+
+    public static void generateMargin(FloatImage image, int iterations, ExecutorService threads) {
+        if (!image.isMasked()) {
+            return;
+        }
+        new MarginAutomata(image, iterations, threads).process();
     }
 
     private static final int[] NEIGHBORS_POSITIONS = new int[]{
@@ -78,194 +127,123 @@ public class MarginAutomata {
     };
     private static final int NEIGHBORS_ROTATED = NEIGHBORS_POSITIONS_ROTATED.length / 2;
 
-    private final MarginAutomataIO io;
+    private final FloatImage image;
     private final int iterations;
+    private final ExecutorService threads;
 
-    private int width;
-    private int height;
-
-    private float[] colorMap = null;
-    private boolean[] emptyMap = null;
+    private final int width;
+    private final int height;
+    private final int channels;
 
-    private float[] nextColorMap = null;
-    private boolean[] nextEmptyMap = null;
+    private FloatImage current = null;
+    private FloatImage next = null;
 
-    private MarginAutomata(MarginAutomataIO io, int iterations) {
-        this.io = io;
+    private MarginAutomata(FloatImage image, int iterations, ExecutorService threads) {
+        this.image = image;
         if (iterations < 0) {
             iterations = Integer.MAX_VALUE;
         }
         this.iterations = iterations;
+        this.threads = threads;
+        this.width = image.getWidth();
+        this.height = image.getHeight();
+        this.channels = image.getChannels();
     }
 
-    public void load() {
-        this.width = this.io.width();
-        this.height = this.io.height();
-
-        this.colorMap = new float[this.width * this.height * 3];
-        this.emptyMap = new boolean[this.width * this.height];
-
-        this.nextColorMap = new float[this.width * this.height * 3];
-        this.nextEmptyMap = new boolean[this.width * this.height];
-
-        MarginAutomataColor color = new MarginAutomataColor();
-
-        for (int y = 0; y < this.height; y++) {
-            for (int x = 0; x < this.width; x++) {
-                if (this.io.outOfBounds(x, y)) {
-                    continue;
-                }
-
-                if (this.io.empty(x, y)) {
-                    this.emptyMap[x + (y * this.width)] = true;
-                    continue;
-                }
-
-                this.io.read(x, y, color);
-
-                int colorIndex = (x * 3) + (y * this.width * 3);
-                this.colorMap[colorIndex + 0] = color.r;
-                this.colorMap[colorIndex + 1] = color.g;
-                this.colorMap[colorIndex + 2] = color.b;
-            }
-        }
-    }
+    private boolean iterateTile(int minX, int minY, int maxX, int maxY) {
+        float[] colorMap = this.current.getData();
+        boolean[] filledMap = this.current.getMask();
+        float[] nextColorMap = this.next.getData();
+        boolean[] nextFilledMap = this.next.getMask();
+        int c = this.channels;
 
-    public boolean iterate() {
         boolean finished = true;
-        for (int y = 0; y < this.height; y++) {
-            for (int x = 0; x < this.width; x++) {
-                if (this.io.outOfBounds(x, y)) {
-                    continue;
-                }
-
-                int emptyIndex = x + (y * this.width);
-                int colorIndex = (x * 3) + (y * this.width * 3);
-
-                if (!this.emptyMap[emptyIndex]) {
-                    System.arraycopy(
-                            this.colorMap,
-                            colorIndex,
-                            this.nextColorMap,
-                            colorIndex,
-                            3
-                    );
-                    this.nextEmptyMap[emptyIndex] = false;
+        for (int y = minY; y < maxY; y++) {
+            for (int x = minX; x < maxX; x++) {
+                int filledIndex = x + (y * this.width);
+                int colorIndex = filledIndex * c;
+
+                if (filledMap[filledIndex]) {
+                    System.arraycopy(colorMap, colorIndex, nextColorMap, colorIndex, c);
+                    nextFilledMap[filledIndex] = true;
                     continue;
                 }
 
-                float r = 0f;
-                float g = 0f;
-                float b = 0f;
-                int numSamples = 0;
-                for (int s = 0; s < NEIGHBORS; s++) {
-                    int xOffset = NEIGHBORS_POSITIONS[(s * 2) + 0];
-                    int yOffset = NEIGHBORS_POSITIONS[(s * 2) + 1];
-
-                    int sX = x + xOffset;
-                    int sY = y + yOffset;
-
-                    if (this.io.outOfBounds(sX, sY)) {
-                        continue;
-                    }
-
-                    if (this.emptyMap[sX + (sY * this.width)]) {
-                        continue;
-                    }
-
-                    int sampleColorIndex = (sX * 3) + (sY * this.width * 3);
-                    r += this.colorMap[sampleColorIndex + 0];
-                    g += this.colorMap[sampleColorIndex + 1];
-                    b += this.colorMap[sampleColorIndex + 2];
-                    numSamples++;
-                }
-
+                int numSamples = accumulate(x, y, NEIGHBORS_POSITIONS, NEIGHBORS, colorIndex);
                 if (numSamples == 0) {
-                    for (int s = 0; s < NEIGHBORS_ROTATED; s++) {
-                        int xOffset = NEIGHBORS_POSITIONS_ROTATED[(s * 2) + 0];
-                        int yOffset = NEIGHBORS_POSITIONS_ROTATED[(s * 2) + 1];
-
-                        int sX = x + xOffset;
-                        int sY = y + yOffset;
-
-                        if (this.io.outOfBounds(sX, sY)) {
-                            continue;
-                        }
-
-                        if (this.emptyMap[sX + (sY * this.width)]) {
-                            continue;
-                        }
-
-                        int sampleColorIndex = (sX * 3) + (sY * this.width * 3);
-                        r += this.colorMap[sampleColorIndex + 0];
-                        g += this.colorMap[sampleColorIndex + 1];
-                        b += this.colorMap[sampleColorIndex + 2];
-                        numSamples++;
-                    }
+                    numSamples = accumulate(x, y, NEIGHBORS_POSITIONS_ROTATED, NEIGHBORS_ROTATED, colorIndex);
                 }
-                
+
                 if (numSamples == 0) {
-                    this.nextEmptyMap[emptyIndex] = true;
+                    nextFilledMap[filledIndex] = false;
                     continue;
                 }
 
                 float invNumSamples = 1f / numSamples;
-                r *= invNumSamples;
-                g *= invNumSamples;
-                b *= invNumSamples;
-
-                this.nextColorMap[colorIndex + 0] = r;
-                this.nextColorMap[colorIndex + 1] = g;
-                this.nextColorMap[colorIndex + 2] = b;
-                this.nextEmptyMap[emptyIndex] = false;
-                
+                for (int i = 0; i < c; i++) {
+                    nextColorMap[colorIndex + i] *= invNumSamples;
+                }
+                nextFilledMap[filledIndex] = true;
+
                 finished = false;
             }
         }
         return finished;
     }
 
-    public void flipMaps() {
-        float[] currentColor = this.colorMap;
-        boolean[] currentEmpty = this.emptyMap;
-        this.colorMap = this.nextColorMap;
-        this.emptyMap = this.nextEmptyMap;
-        this.nextColorMap = currentColor;
-        this.nextEmptyMap = currentEmpty;
-    }
+    private int accumulate(int x, int y, int[] positions, int amount, int colorIndex) {
+        float[] colorMap = this.current.getData();
+        boolean[] filledMap = this.current.getMask();
+        float[] nextColorMap = this.next.getData();
+        int c = this.channels;
 
-    public void output() {
-        MarginAutomataColor output = new MarginAutomataColor();
+        for (int i = 0; i < c; i++) {
+            nextColorMap[colorIndex + i] = 0f;
+        }
+        int numSamples = 0;
+        for (int s = 0; s < amount; s++) {
+            int sX = x + positions[(s * 2) + 0];
+            int sY = y + positions[(s * 2) + 1];
 
-        for (int y = 0; y < this.height; y++) {
-            for (int x = 0; x < this.width; x++) {
-                if (this.io.outOfBounds(x, y)) {
-                    continue;
-                }
+            if (sX < 0 || sY < 0 || sX >= this.width || sY >= this.height) {
+                continue;
+            }
 
-                if (this.emptyMap[x + (y * this.width)]) {
-                    this.io.writeEmptyPixel(x, y);
-                    continue;
-                }
+            int sampleIndex = sX + (sY * this.width);
+            if (!filledMap[sampleIndex]) {
+                continue;
+            }
 
-                int colorIndex = (x * 3) + (y * this.width * 3);
-                output.r = this.colorMap[colorIndex + 0];
-                output.g = this.colorMap[colorIndex + 1];
-                output.b = this.colorMap[colorIndex + 2];
-                this.io.write(x, y, output);
+            int sampleColorIndex = sampleIndex * c;
+            for (int i = 0; i < c; i++) {
+                nextColorMap[colorIndex + i] += colorMap[sampleColorIndex + i];
             }
+            numSamples++;
         }
+        return numSamples;
+    }
+
+    private void flipMaps() {
+        FloatImage currentImage = this.current;
+        this.current = this.next;
+        this.next = currentImage;
     }
 
     public void process() {
-        load();
+        this.current = this.image.copy();
+        this.next = this.image.copy();
         for (int i = 0; i < this.iterations; i++) {
-            if (iterate()) {
+            AtomicBoolean finished = new AtomicBoolean(true);
+            FloatImage.forEachTile(this.threads, this.width, this.height, (minX, minY, maxX, maxY) -> {
+                if (!iterateTile(minX, minY, maxX, maxY)) {
+                    finished.set(false);
+                }
+            });
+            if (finished.get()) {
                 break;
             }
             flipMaps();
         }
-        output();
+        this.current.copyFilledTo(this.image);
     }
 }
-
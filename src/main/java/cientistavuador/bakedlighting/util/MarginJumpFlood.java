@@ -0,0 +1,167 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <https://unlicense.org>
+ */
+package cientistavuador.bakedlighting.util;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Fills every empty pixel of an image with the color of the nearest filled
+ * pixel using jump flooding, log2(size) + 1 parallel passes over the whole
+ * image. When charts are given, a pixel only takes seeds from its own chart
+ * and pixels outside of any chart (negative ids) are left untouched.
+ *
+ * @author Cien
+ */
+public class MarginJumpFlood {
+
+    public static void generateMargin(FloatImage image, int[] charts, ExecutorService threads) {
+        if (!image.isMasked()) {
+            return;
+        }
+        if (charts != null && charts.length != image.getWidth() * image.getHeight()) {
+            throw new IllegalArgumentException("Expected " + (image.getWidth() * image.getHeight()) + " charts, found " + charts.length);
+        }
+        new MarginJumpFlood(image, charts, threads).process();
+    }
+
+    private final FloatImage image;
+    private final int[] charts;
+    private final ExecutorService threads;
+    private final int width;
+    private final int height;
+
+    private int[] seeds;
+    private int[] nextSeeds;
+
+    private MarginJumpFlood(FloatImage image, int[] charts, ExecutorService threads) {
+        this.image = image;
+        this.charts = charts;
+        this.threads = threads;
+        this.width = image.getWidth();
+        this.height = image.getHeight();
+    }
+
+    private int distance(int a, int b) {
+        int dx = (a % this.width) - (b % this.width);
+        int dy = (a / this.width) - (b / this.width);
+        return (dx * dx) + (dy * dy);
+    }
+
+    private void passTile(int step, int minX, int minY, int maxX, int maxY) {
+        for (int y = minY; y < maxY; y++) {
+            for (int x = minX; x < maxX; x++) {
+                int index = x + (y * this.width);
+                int best = this.seeds[index];
+                int chart = (this.charts != null ? this.charts[index] : 0);
+                if (chart < 0) {
+                    this.nextSeeds[index] = best;
+                    continue;
+                }
+                int bestDistance = (best >= 0 ? distance(index, best) : Integer.MAX_VALUE);
+                if (bestDistance == 0) {
+                    this.nextSeeds[index] = best;
+                    continue;
+                }
+
+                for (int oy = -step; oy <= step; oy += step) {
+                    int sY = y + oy;
+                    if (sY < 0 || sY >= this.height) {
+                        continue;
+                    }
+                    for (int ox = -step; ox <= step; ox += step) {
+                        int sX = x + ox;
+                        if ((ox == 0 && oy == 0) || sX < 0 || sX >= this.width) {
+                            continue;
+                        }
+                        int seed = this.seeds[sX + (sY * this.width)];
+                        if (seed < 0 || (this.charts != null && this.charts[seed] != chart)) {
+                            continue;
+                        }
+                        int seedDistance = distance(index, seed);
+                        if (seedDistance < bestDistance) {
+                            best = seed;
+                            bestDistance = seedDistance;
+                        }
+                    }
+                }
+
+                this.nextSeeds[index] = best;
+            }
+        }
+    }
+
+    private void pass(int step) {
+        FloatImage.forEachTile(this.threads, this.width, this.height, (minX, minY, maxX, maxY) -> {
+            passTile(step, minX, minY, maxX, maxY);
+        });
+        int[] current = this.seeds;
+        this.seeds = this.nextSeeds;
+        this.nextSeeds = current;
+    }
+
+    private void outputTile(int minX, int minY, int maxX, int maxY) {
+        float[] data = this.image.getData();
+        int channels = this.image.getChannels();
+        for (int y = minY; y < maxY; y++) {
+            for (int x = minX; x < maxX; x++) {
+                int seed = this.seeds[x + (y * this.width)];
+                if (seed < 0 || this.image.isFilled(x, y)) {
+                    continue;
+                }
+                int source = this.image.index(seed % this.width, seed / this.width);
+                int destination = this.image.index(x, y);
+                for (int c = 0; c < channels; c++) {
+                    data[destination + c] = data[source + c];
+                }
+            }
+        }
+    }
+
+    private void process() {
+        this.seeds = new int[this.width * this.height];
+        this.nextSeeds = new int[this.width * this.height];
+        for (int y = 0; y < this.height; y++) {
+            for (int x = 0; x < this.width; x++) {
+                this.seeds[x + (y * this.width)] = (this.image.isFilled(x, y) ? x + (y * this.width) : -1);
+            }
+        }
+
+        int step = Integer.highestOneBit(Math.max(Math.max(this.width, this.height) - 1, 1));
+        while (step >= 1) {
+            pass(step);
+            step /= 2;
+        }
+        pass(1);
+
+        FloatImage.forEachTile(this.threads, this.width, this.height, this::outputTile);
+        for (int i = 0; i < this.seeds.length; i++) {
+            if (this.seeds[i] >= 0) {
+                this.image.setFilled(i % this.width, i / this.width, true);
+            }
+        }
+    }
+}
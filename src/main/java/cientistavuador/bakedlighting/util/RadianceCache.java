@@ -0,0 +1,243 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <https://unlicense.org>
+ */
+package cientistavuador.bakedlighting.util;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.joml.Vector3f;
+import org.joml.Vector3fc;
+
+/**
+ * Concurrent world space radiance cache, an open addressing table of voxel
+ * cells keyed by the quantized position, the dominant normal axis and the
+ * light. The table has a fixed size, when the probe sequence is full the cell
+ * of another light or the cell with the least samples is evicted. Evicted
+ * cells are claimed and versioned before being reset, so readers and writers
+ * of the old key never see the new one.
+ *
+ * @author Cien
+ */
+public class RadianceCache {
+
+    public static final int MAX_PROBES = 16;
+    public static final int MIN_SAMPLES = 4;
+    public static final int MAX_SAMPLES = 64;
+
+    private static final long BUSY = -1L;
+
+    private static final int STRIDE = 10;
+    private static final int LIGHT = 0;
+    private static final int COUNT = 1;
+    private static final int RADIANCE = 2;
+    private static final int AMBIENT = 5;
+    private static final int VERSION = 8;
+    private static final int WRITERS = 9;
+
+    private final int mask;
+    private final float invVoxelSize;
+    private final AtomicLongArray keys;
+    private final AtomicIntegerArray cells;
+
+    public RadianceCache(int capacity, float voxelSize) {
+        int size = Integer.highestOneBit(Math.max(capacity, 16));
+        this.mask = size - 1;
+        this.invVoxelSize = 1f / voxelSize;
+        this.keys = new AtomicLongArray(size);
+        this.cells = new AtomicIntegerArray(size * STRIDE);
+    }
+
+    public int getCapacity() {
+        return this.mask + 1;
+    }
+
+    public long getMemoryUsage() {
+        return (this.mask + 1) * (8L + (STRIDE * 4L));
+    }
+
+    private static int normalAxis(Vector3fc normal) {
+        float ax = Math.abs(normal.x());
+        float ay = Math.abs(normal.y());
+        float az = Math.abs(normal.z());
+        if (ax >= ay && ax >= az) {
+            return (normal.x() >= 0f ? 0 : 1);
+        }
+        if (ay >= az) {
+            return (normal.y() >= 0f ? 2 : 3);
+        }
+        return (normal.z() >= 0f ? 4 : 5);
+    }
+
+    private long key(int light, Vector3fc position, Vector3fc normal) {
+        long h = light;
+        h = (h * 0x9E3779B97F4A7C15L) ^ (long) Math.floor(position.x() * this.invVoxelSize);
+        h = (h * 0x9E3779B97F4A7C15L) ^ (long) Math.floor(position.y() * this.invVoxelSize);
+        h = (h * 0x9E3779B97F4A7C15L) ^ (long) Math.floor(position.z() * this.invVoxelSize);
+        h = (h * 0x9E3779B97F4A7C15L) ^ normalAxis(normal);
+        h ^= (h >>> 31);
+        h *= 0xBF58476D1CE4E5B9L;
+        h ^= (h >>> 29);
+        return (h == 0 || h == BUSY ? 1 : h);
+    }
+
+    private int home(long key) {
+        return (int) (key ^ (key >>> 32)) & this.mask;
+    }
+
+    private float get(int slot, int offset) {
+        return Float.intBitsToFloat(this.cells.get((slot * STRIDE) + offset));
+    }
+
+    private void add(int slot, int offset, float value) {
+        int index = (slot * STRIDE) + offset;
+        int current;
+        do {
+            current = this.cells.get(index);
+        } while (!this.cells.compareAndSet(index, current, Float.floatToRawIntBits(Float.intBitsToFloat(current) + value)));
+    }
+
+    private void accumulate(int slot, long key, Vector3fc radiance, Vector3fc ambient) {
+        int base = slot * STRIDE;
+        int version = this.cells.get(base + VERSION);
+        if ((version & 1) != 0) {
+            return;
+        }
+        this.cells.incrementAndGet(base + WRITERS);
+        try {
+            //the slot was claimed by another key after it was found
+            if (this.cells.get(base + VERSION) != version || this.keys.get(slot) != key) {
+                return;
+            }
+            if (this.cells.getAndIncrement(base + COUNT) >= MAX_SAMPLES) {
+                this.cells.decrementAndGet(base + COUNT);
+                return;
+            }
+            add(slot, RADIANCE + 0, radiance.x());
+            add(slot, RADIANCE + 1, radiance.y());
+            add(slot, RADIANCE + 2, radiance.z());
+            add(slot, AMBIENT + 0, ambient.x());
+            add(slot, AMBIENT + 1, ambient.y());
+            add(slot, AMBIENT + 2, ambient.z());
+        } finally {
+            this.cells.decrementAndGet(base + WRITERS);
+        }
+    }
+
+    private void reset(int slot, long key, int light) {
+        int base = slot * STRIDE;
+        this.cells.incrementAndGet(base + VERSION);
+        while (this.cells.get(base + WRITERS) != 0) {
+            Thread.onSpinWait();
+        }
+        this.cells.set(base + LIGHT, light);
+        for (int i = COUNT; i < VERSION; i++) {
+            this.cells.set(base + i, 0);
+        }
+        this.cells.incrementAndGet(base + VERSION);
+        this.keys.set(slot, key);
+    }
+
+    public boolean lookup(int light, Vector3fc position, Vector3fc normal, Vector3f radiance, Vector3f ambient) {
+        long key = key(light, position, normal);
+        int h = home(key);
+        for (int p = 0; p < MAX_PROBES; p++) {
+            int slot = (h + p) & this.mask;
+            int version = this.cells.get((slot * STRIDE) + VERSION);
+            long k = this.keys.get(slot);
+            if (k == 0) {
+                return false;
+            }
+            if (k != key) {
+                continue;
+            }
+            if ((version & 1) != 0) {
+                return false;
+            }
+            int count = Math.min(this.cells.get((slot * STRIDE) + COUNT), MAX_SAMPLES);
+            if (count < MIN_SAMPLES) {
+                return false;
+            }
+            float inv = 1f / count;
+            radiance.set(get(slot, RADIANCE + 0), get(slot, RADIANCE + 1), get(slot, RADIANCE + 2)).mul(inv);
+            ambient.set(get(slot, AMBIENT + 0), get(slot, AMBIENT + 1), get(slot, AMBIENT + 2)).mul(inv);
+            return this.cells.get((slot * STRIDE) + VERSION) == version;
+        }
+        return false;
+    }
+
+    public void add(int light, Vector3fc position, Vector3fc normal, Vector3fc radiance, Vector3fc ambient) {
+        long key = key(light, position, normal);
+        int h = home(key);
+
+        int victim = -1;
+        long victimKey = 0;
+        int victimScore = Integer.MAX_VALUE;
+        for (int p = 0; p < MAX_PROBES; p++) {
+            int slot = (h + p) & this.mask;
+            long k = this.keys.get(slot);
+            if (k == 0) {
+                if (this.keys.compareAndSet(slot, 0, BUSY)) {
+                    reset(slot, key, light);
+                    accumulate(slot, key, radiance, ambient);
+                    return;
+                }
+                k = this.keys.get(slot);
+            }
+            if (k == key) {
+                accumulate(slot, key, radiance, ambient);
+                return;
+            }
+            if (k == BUSY) {
+                continue;
+            }
+            int score = this.cells.get((slot * STRIDE) + COUNT);
+            if (this.cells.get((slot * STRIDE) + LIGHT) != light) {
+                score = -1;
+            }
+            if (score < victimScore) {
+                victim = slot;
+                victimKey = k;
+                victimScore = score;
+            }
+        }
+
+        //claim the slot before resetting it so the old cell is never mixed in
+        if (victim != -1 && this.keys.compareAndSet(victim, victimKey, BUSY)) {
+            reset(victim, key, light);
+            accumulate(victim, key, radiance, ambient);
+        }
+    }
+
+    public void clear() {
+        for (int i = 0; i <= this.mask; i++) {
+            this.keys.set(i, 0);
+        }
+        for (int i = 0; i < this.cells.length(); i++) {
+            this.cells.set(i, 0);
+        }
+    }
+
+}
@@ -45,14 +45,33 @@ public enum SamplingMode {
     SAMPLE_13(SamplingModeLoader.SAMPLES.get("13.png"), SamplingModeLoader.SAMPLES_IMAGES.get("13.png")),
     SAMPLE_15(SamplingModeLoader.SAMPLES.get("15.png"), SamplingModeLoader.SAMPLES_IMAGES.get("15.png")),
     SAMPLE_16(SamplingModeLoader.SAMPLES.get("16.png"), SamplingModeLoader.SAMPLES_IMAGES.get("16.png")),
+    ADAPTIVE_4(4),
+    ADAPTIVE_8(8),
+    ADAPTIVE_16(16),
     ;
     
+    public static final int ADAPTIVE_BASE_SAMPLES = 2;
+    
     private final float[] sampleLocations;
     private final BufferedImage image;
+    private final boolean adaptive;
 
     private SamplingMode(float[] sampleLocations, BufferedImage image) {
+        this(sampleLocations, image, false);
+    }
+    
+    private SamplingMode(int samples) {
+        this(SamplingModeLoader.generate(samples), true);
+    }
+    
+    private SamplingMode(float[] sampleLocations, boolean adaptive) {
+        this(sampleLocations, SamplingModeLoader.image(sampleLocations), adaptive);
+    }
+    
+    private SamplingMode(float[] sampleLocations, BufferedImage image, boolean adaptive) {
         this.sampleLocations = sampleLocations;
         this.image = image;
+        this.adaptive = adaptive;
     }
 
     public BufferedImage image() {
@@ -63,6 +82,17 @@ public enum SamplingMode {
         return this.sampleLocations.length / 2;
     }
 
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+    
+    public int baseSamples() {
+        if (this.adaptive) {
+            return Math.min(ADAPTIVE_BASE_SAMPLES, numSamples());
+        }
+        return numSamples();
+    }
+
     public float sampleX(int sample) {
         return this.sampleLocations[(sample * 2) + 0];
     }
@@ -74,6 +104,9 @@ public enum SamplingMode {
     @Override
     public String toString() {
         int samples = numSamples();
+        if (this.adaptive) {
+            return "Adaptive, up to " + samples + " Samples";
+        }
         if (samples == 1) {
             return samples+" Sample";
         }
@@ -26,6 +26,8 @@
  */
 package cientistavuador.bakedlighting.util;
 
+import java.awt.Color;
+import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.io.UncheckedIOException;
@@ -104,6 +106,36 @@ public class SamplingModeLoader {
         return Arrays.copyOf(samplePositions, samplePositionsIndex);
     }
     
+    protected static float[] generate(int samples) {
+        //R2 sequence, any prefix of it is well distributed
+        double g = 1.32471795724474602596;
+        double a1 = 1.0 / g;
+        double a2 = 1.0 / (g * g);
+        float[] samplePositions = new float[samples * 2];
+        for (int i = 0; i < samples; i++) {
+            double x = 0.5 + (a1 * i);
+            double y = 0.5 + (a2 * i);
+            samplePositions[(i * 2) + 0] = (float) (x - Math.floor(x));
+            samplePositions[(i * 2) + 1] = (float) (y - Math.floor(y));
+        }
+        return samplePositions;
+    }
+    
+    protected static BufferedImage image(float[] samples) {
+        int size = 16;
+        BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, size, size);
+        g.dispose();
+        for (int i = 0; i < samples.length / 2; i++) {
+            int x = Math.min((int) (samples[(i * 2) + 0] * size), size - 1);
+            int y = (size - 1) - Math.min((int) (samples[(i * 2) + 1] * size), size - 1);
+            image.setRGB(x, y, 0x000000);
+        }
+        return image;
+    }
+    
     private SamplingModeLoader() {
         
     }
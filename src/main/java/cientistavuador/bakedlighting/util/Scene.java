@@ -38,6 +38,10 @@ import org.joml.Vector3fc;
  */
 public class Scene {
 
+    public static enum IndirectEngine {
+        PATH_TRACING, HEMICUBE;
+    }
+
     public static class Light {
 
         private final Vector3f diffuse = new Vector3f(2f, 2f, 2f);
@@ -156,7 +160,14 @@ public class Scene {
         public void setBakeCutoff(float bakeCutoff) {
             this.bakeCutoff = bakeCutoff;
         }
-        
+
+        public float getInfluenceRadius() {
+            if (this.bakeCutoff <= 0f) {
+                return Float.POSITIVE_INFINITY;
+            }
+            return (float) Math.sqrt(getLuminance() / this.bakeCutoff);
+        }
+
     }
     
     public static class SpotLight extends PointLight {
@@ -229,14 +240,44 @@ public class Scene {
 
     private boolean indirectLightingEnabled = true;
     private int indirectRaysPerSample = 8;
+    private float indirectAdaptiveThreshold = 0f;
+    private int indirectMaxRaysPerSample = 32;
+    private int indirectCoarseFactor = 1;
+    private boolean irradianceCacheEnabled = false;
+    private float irradianceCacheError = 0.25f;
+    private int irradianceCacheRays = 64;
+    private boolean radianceCacheEnabled = false;
+    private int radianceCacheCells = 1 << 20;
+    private float radianceCacheVoxelSize = 0.25f;
+    private IndirectEngine indirectEngine = IndirectEngine.PATH_TRACING;
+    private int hemicubeResolution = 32;
     private int indirectBounces = 4;
     private float indirectLightingBlurArea = 4f;
     private float indirectLightReflectionFactor = 1f;
 
+    private boolean medianDenoiserEnabled = true;
+    private int medianDenoiserKernelSize = 3;
+    private float medianDenoiserTolerance = 0.25f;
+
+    private boolean jumpFloodMarginsEnabled = true;
+
     private float rayOffset = 0.001f;
     private boolean fillDisabledValuesWithLightColors = false;
 
     private boolean fastModeEnabled = false;
+    private boolean sunShadowMapEnabled = false;
+    private int sunShadowMapResolution = 2048;
+    private float sunShadowMapBias = 0.01f;
+    private boolean relightingEnabled = false;
+
+    private boolean progressiveEnabled = false;
+    private int progressivePasses = 8;
+    private float progressiveTimeBudget = 0f;
+
+    private BakeCache bakeCache = null;
+    private LightmapCache lightmapCache = null;
+    private BakeCheckpoint bakeCheckpoint = null;
+    private BakeCoordinator bakeCoordinator = null;
 
     public Scene() {
 
@@ -306,6 +347,94 @@ public class Scene {
         this.indirectRaysPerSample = indirectRaysPerSample;
     }
 
+    public float getIndirectAdaptiveThreshold() {
+        return indirectAdaptiveThreshold;
+    }
+
+    public void setIndirectAdaptiveThreshold(float indirectAdaptiveThreshold) {
+        this.indirectAdaptiveThreshold = indirectAdaptiveThreshold;
+    }
+
+    public int getIndirectMaxRaysPerSample() {
+        return indirectMaxRaysPerSample;
+    }
+
+    public void setIndirectMaxRaysPerSample(int indirectMaxRaysPerSample) {
+        this.indirectMaxRaysPerSample = indirectMaxRaysPerSample;
+    }
+
+    public int getIndirectCoarseFactor() {
+        return indirectCoarseFactor;
+    }
+
+    public void setIndirectCoarseFactor(int indirectCoarseFactor) {
+        this.indirectCoarseFactor = indirectCoarseFactor;
+    }
+
+    public boolean isIrradianceCacheEnabled() {
+        return irradianceCacheEnabled;
+    }
+
+    public void setIrradianceCacheEnabled(boolean irradianceCacheEnabled) {
+        this.irradianceCacheEnabled = irradianceCacheEnabled;
+    }
+
+    public float getIrradianceCacheError() {
+        return irradianceCacheError;
+    }
+
+    public void setIrradianceCacheError(float irradianceCacheError) {
+        this.irradianceCacheError = irradianceCacheError;
+    }
+
+    public int getIrradianceCacheRays() {
+        return irradianceCacheRays;
+    }
+
+    public void setIrradianceCacheRays(int irradianceCacheRays) {
+        this.irradianceCacheRays = irradianceCacheRays;
+    }
+
+    public boolean isRadianceCacheEnabled() {
+        return radianceCacheEnabled;
+    }
+
+    public void setRadianceCacheEnabled(boolean radianceCacheEnabled) {
+        this.radianceCacheEnabled = radianceCacheEnabled;
+    }
+
+    public int getRadianceCacheCells() {
+        return radianceCacheCells;
+    }
+
+    public void setRadianceCacheCells(int radianceCacheCells) {
+        this.radianceCacheCells = radianceCacheCells;
+    }
+
+    public float getRadianceCacheVoxelSize() {
+        return radianceCacheVoxelSize;
+    }
+
+    public void setRadianceCacheVoxelSize(float radianceCacheVoxelSize) {
+        this.radianceCacheVoxelSize = radianceCacheVoxelSize;
+    }
+
+    public IndirectEngine getIndirectEngine() {
+        return indirectEngine;
+    }
+
+    public void setIndirectEngine(IndirectEngine indirectEngine) {
+        this.indirectEngine = indirectEngine;
+    }
+
+    public int getHemicubeResolution() {
+        return hemicubeResolution;
+    }
+
+    public void setHemicubeResolution(int hemicubeResolution) {
+        this.hemicubeResolution = hemicubeResolution;
+    }
+
     public int getIndirectBounces() {
         return indirectBounces;
     }
@@ -346,6 +475,126 @@ public class Scene {
         this.fastModeEnabled = fastModeEnabled;
     }
 
+    public boolean isMedianDenoiserEnabled() {
+        return medianDenoiserEnabled;
+    }
+
+    public void setMedianDenoiserEnabled(boolean medianDenoiserEnabled) {
+        this.medianDenoiserEnabled = medianDenoiserEnabled;
+    }
+
+    public int getMedianDenoiserKernelSize() {
+        return medianDenoiserKernelSize;
+    }
+
+    public void setMedianDenoiserKernelSize(int medianDenoiserKernelSize) {
+        this.medianDenoiserKernelSize = medianDenoiserKernelSize;
+    }
+
+    public float getMedianDenoiserTolerance() {
+        return medianDenoiserTolerance;
+    }
+
+    public void setMedianDenoiserTolerance(float medianDenoiserTolerance) {
+        this.medianDenoiserTolerance = medianDenoiserTolerance;
+    }
+
+    public boolean isJumpFloodMarginsEnabled() {
+        return jumpFloodMarginsEnabled;
+    }
+
+    public void setJumpFloodMarginsEnabled(boolean jumpFloodMarginsEnabled) {
+        this.jumpFloodMarginsEnabled = jumpFloodMarginsEnabled;
+    }
+
+    public boolean isSunShadowMapEnabled() {
+        return sunShadowMapEnabled;
+    }
+
+    public void setSunShadowMapEnabled(boolean sunShadowMapEnabled) {
+        this.sunShadowMapEnabled = sunShadowMapEnabled;
+    }
+
+    public int getSunShadowMapResolution() {
+        return sunShadowMapResolution;
+    }
+
+    public void setSunShadowMapResolution(int sunShadowMapResolution) {
+        this.sunShadowMapResolution = sunShadowMapResolution;
+    }
+
+    public float getSunShadowMapBias() {
+        return sunShadowMapBias;
+    }
+
+    public void setSunShadowMapBias(float sunShadowMapBias) {
+        this.sunShadowMapBias = sunShadowMapBias;
+    }
+
+    public boolean isRelightingEnabled() {
+        return relightingEnabled;
+    }
+
+    public void setRelightingEnabled(boolean relightingEnabled) {
+        this.relightingEnabled = relightingEnabled;
+    }
+
+    public boolean isProgressiveEnabled() {
+        return progressiveEnabled;
+    }
+
+    public void setProgressiveEnabled(boolean progressiveEnabled) {
+        this.progressiveEnabled = progressiveEnabled;
+    }
+
+    public int getProgressivePasses() {
+        return progressivePasses;
+    }
+
+    public void setProgressivePasses(int progressivePasses) {
+        this.progressivePasses = progressivePasses;
+    }
+
+    public float getProgressiveTimeBudget() {
+        return progressiveTimeBudget;
+    }
+
+    public void setProgressiveTimeBudget(float progressiveTimeBudget) {
+        this.progressiveTimeBudget = progressiveTimeBudget;
+    }
+
+    public BakeCache getBakeCache() {
+        return bakeCache;
+    }
+
+    public void setBakeCache(BakeCache bakeCache) {
+        this.bakeCache = bakeCache;
+    }
+
+    public LightmapCache getLightmapCache() {
+        return lightmapCache;
+    }
+
+    public void setLightmapCache(LightmapCache lightmapCache) {
+        this.lightmapCache = lightmapCache;
+    }
+
+    public BakeCheckpoint getBakeCheckpoint() {
+        return bakeCheckpoint;
+    }
+
+    public void setBakeCheckpoint(BakeCheckpoint bakeCheckpoint) {
+        this.bakeCheckpoint = bakeCheckpoint;
+    }
+
+    public BakeCoordinator getBakeCoordinator() {
+        return bakeCoordinator;
+    }
+
+    public void setBakeCoordinator(BakeCoordinator bakeCoordinator) {
+        this.bakeCoordinator = bakeCoordinator;
+    }
+
     public void setFillDisabledValuesWithLightColors(boolean fillDisabledValuesWithLightColors) {
         this.fillDisabledValuesWithLightColors = fillDisabledValuesWithLightColors;
     }
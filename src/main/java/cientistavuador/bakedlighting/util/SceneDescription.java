@@ -0,0 +1,462 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <https://unlicense.org>
+ */
+package cientistavuador.bakedlighting.util;
+
+import cientistavuador.bakedlighting.geometry.Geometry;
+import cientistavuador.bakedlighting.resources.image.ImageResources;
+import cientistavuador.bakedlighting.resources.image.NativeImage;
+import cientistavuador.bakedlighting.resources.mesh.MeshData;
+import cientistavuador.bakedlighting.resources.mesh.MeshResources;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.joml.Matrix4f;
+
+/**
+ * Line based scene description used by the headless bake, one command per
+ * line, '#' starts a comment.
+ *
+ * @author Cien
+ */
+public class SceneDescription {
+
+    public static SceneDescription read(Path file) throws IOException {
+        return read(file, null);
+    }
+
+    public static SceneDescription read(Path file, BakeResources resources) throws IOException {
+        SceneDescription description = new SceneDescription(resources);
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                description.currentLine++;
+                description.processLine(line);
+            }
+        }
+        return description;
+    }
+
+    private final BakeResources resources;
+    private final Scene scene = new Scene();
+    private final Map<Integer, SoftwareTexture> textures = new HashMap<>();
+    private final Map<String, Integer> texturesIds = new HashMap<>();
+    private final Map<String, MeshData[]> meshes = new HashMap<>();
+    private final Map<String, MeshData[]> texturedMeshes = new HashMap<>();
+
+    private float pixelToWorldRatio = 10f;
+    private int currentLine = 0;
+
+    private SceneDescription(BakeResources resources) {
+        this.resources = resources;
+    }
+
+    public Scene getScene() {
+        return scene;
+    }
+
+    public Map<Integer, SoftwareTexture> getTextures() {
+        return textures;
+    }
+
+    public float getPixelToWorldRatio() {
+        return pixelToWorldRatio;
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException("Line " + this.currentLine + ": " + message);
+    }
+
+    private float[] floats(String[] tokens, int offset, int amount) {
+        if ((offset + amount) > tokens.length) {
+            throw error("Expected " + amount + " values after '" + tokens[offset - 1] + "'.");
+        }
+        float[] values = new float[amount];
+        for (int i = 0; i < amount; i++) {
+            try {
+                values[i] = Float.parseFloat(tokens[offset + i]);
+            } catch (NumberFormatException ex) {
+                throw error("Invalid number '" + tokens[offset + i] + "'.");
+            }
+        }
+        return values;
+    }
+
+    private String string(String[] tokens, int offset) {
+        if (offset >= tokens.length) {
+            throw error("Expected a value after '" + tokens[offset - 1] + "'.");
+        }
+        return tokens[offset];
+    }
+
+    private void processLine(String line) {
+        int comment = line.indexOf('#');
+        if (comment != -1) {
+            line = line.substring(0, comment);
+        }
+        line = line.trim();
+        if (line.isEmpty()) {
+            return;
+        }
+        String[] tokens = line.split("\\s+");
+        switch (tokens[0]) {
+            case "ratio" ->
+                this.pixelToWorldRatio = floats(tokens, 1, 1)[0];
+            case "sampling" -> {
+                try {
+                    this.scene.setSamplingMode(SamplingMode.valueOf(string(tokens, 1)));
+                } catch (IllegalArgumentException ex) {
+                    throw error("Unknown sampling mode '" + tokens[1] + "'.");
+                }
+            }
+            case "fast" ->
+                this.scene.setFastModeEnabled(Boolean.parseBoolean(string(tokens, 1)));
+            case "shadowmap" -> {
+                this.scene.setSunShadowMapEnabled(true);
+                this.scene.setSunShadowMapResolution((int) floats(tokens, 1, 1)[0]);
+                if (tokens.length > 2) {
+                    this.scene.setSunShadowMapBias(floats(tokens, 2, 1)[0]);
+                }
+            }
+            case "relighting" ->
+                this.scene.setRelightingEnabled(Boolean.parseBoolean(string(tokens, 1)));
+            case "fill" ->
+                this.scene.setFillDisabledValuesWithLightColors(Boolean.parseBoolean(string(tokens, 1)));
+            case "rayoffset" ->
+                this.scene.setRayOffset(floats(tokens, 1, 1)[0]);
+            case "direct" -> {
+                this.scene.setDirectLightingEnabled(Boolean.parseBoolean(string(tokens, 1)));
+                if (tokens.length > 2) {
+                    this.scene.setDirectLightingAttenuation(floats(tokens, 2, 1)[0]);
+                }
+            }
+            case "shadows" -> {
+                this.scene.setShadowsEnabled(Boolean.parseBoolean(string(tokens, 1)));
+                if (tokens.length > 2) {
+                    this.scene.setShadowRaysPerSample((int) floats(tokens, 2, 1)[0]);
+                }
+                if (tokens.length > 3) {
+                    this.scene.setShadowBlurArea(floats(tokens, 3, 1)[0]);
+                }
+            }
+            case "indirect" -> {
+                this.scene.setIndirectLightingEnabled(Boolean.parseBoolean(string(tokens, 1)));
+                if (tokens.length > 2) {
+                    this.scene.setIndirectRaysPerSample((int) floats(tokens, 2, 1)[0]);
+                }
+                if (tokens.length > 3) {
+                    this.scene.setIndirectBounces((int) floats(tokens, 3, 1)[0]);
+                }
+                if (tokens.length > 4) {
+                    this.scene.setIndirectLightingBlurArea(floats(tokens, 4, 1)[0]);
+                }
+                if (tokens.length > 5) {
+                    this.scene.setIndirectLightReflectionFactor(floats(tokens, 5, 1)[0]);
+                }
+            }
+            case "cache" -> {
+                Path directory = Path.of(string(tokens, 1));
+                this.scene.setBakeCache(new BakeCache(512L * 1024L * 1024L, directory.resolve("components")));
+                this.scene.setLightmapCache(new LightmapCache(directory.resolve("lightmaps")));
+            }
+            case "checkpoint" -> {
+                Path directory = Path.of(string(tokens, 1));
+                if (tokens.length > 2) {
+                    this.scene.setBakeCheckpoint(new BakeCheckpoint(directory, (long) (floats(tokens, 2, 1)[0] * 1000f)));
+                } else {
+                    this.scene.setBakeCheckpoint(new BakeCheckpoint(directory));
+                }
+            }
+            case "adaptive" -> {
+                this.scene.setIndirectAdaptiveThreshold(floats(tokens, 1, 1)[0]);
+                if (tokens.length > 2) {
+                    this.scene.setIndirectMaxRaysPerSample((int) floats(tokens, 2, 1)[0]);
+                }
+            }
+            case "irradiancecache" -> {
+                this.scene.setIrradianceCacheEnabled(true);
+                this.scene.setIrradianceCacheError(floats(tokens, 1, 1)[0]);
+                if (tokens.length > 2) {
+                    this.scene.setIrradianceCacheRays((int) floats(tokens, 2, 1)[0]);
+                }
+            }
+            case "radiancecache" -> {
+                this.scene.setRadianceCacheEnabled(true);
+                this.scene.setRadianceCacheVoxelSize(floats(tokens, 1, 1)[0]);
+                if (tokens.length > 2) {
+                    this.scene.setRadianceCacheCells((int) floats(tokens, 2, 1)[0]);
+                }
+            }
+            case "hemicube" -> {
+                this.scene.setIndirectEngine(Scene.IndirectEngine.HEMICUBE);
+                if (tokens.length > 1) {
+                    this.scene.setHemicubeResolution((int) floats(tokens, 1, 1)[0]);
+                }
+            }
+            case "margins" -> {
+                switch (string(tokens, 1)) {
+                    case "jumpflood" ->
+                        this.scene.setJumpFloodMarginsEnabled(true);
+                    case "automata" ->
+                        this.scene.setJumpFloodMarginsEnabled(false);
+                    default ->
+                        throw error("Unknown margins mode '" + tokens[1] + "'.");
+                }
+            }
+            case "median" -> {
+                this.scene.setMedianDenoiserEnabled(Boolean.parseBoolean(string(tokens, 1)));
+                if (tokens.length > 2) {
+                    this.scene.setMedianDenoiserKernelSize((int) floats(tokens, 2, 1)[0]);
+                }
+                if (tokens.length > 3) {
+                    this.scene.setMedianDenoiserTolerance(floats(tokens, 3, 1)[0]);
+                }
+            }
+            case "coarseindirect" ->
+                this.scene.setIndirectCoarseFactor((int) floats(tokens, 1, 1)[0]);
+            case "progressive" -> {
+                this.scene.setProgressiveEnabled(true);
+                this.scene.setProgressivePasses((int) floats(tokens, 1, 1)[0]);
+                if (tokens.length > 2) {
+                    this.scene.setProgressiveTimeBudget(floats(tokens, 2, 1)[0]);
+                }
+            }
+            case "workers" ->
+                processWorkers(tokens);
+            case "mesh" ->
+                processMesh(tokens);
+            case "sun", "point", "spot" ->
+                processLight(tokens);
+            default ->
+                throw error("Unknown command '" + tokens[0] + "'.");
+        }
+    }
+
+    private void processWorkers(String[] tokens) {
+        string(tokens, 1);
+        List<InetSocketAddress> workers = new ArrayList<>();
+        for (int i = 1; i < tokens.length; i++) {
+            String address = tokens[i];
+            int separator = address.lastIndexOf(':');
+            if (separator == -1) {
+                throw error("Expected host:port, found '" + address + "'.");
+            }
+            try {
+                workers.add(new InetSocketAddress(address.substring(0, separator), Integer.parseInt(address.substring(separator + 1))));
+            } catch (IllegalArgumentException ex) {
+                throw error("Invalid worker address '" + address + "'.");
+            }
+        }
+        this.scene.setBakeCoordinator(new BakeCoordinator(workers));
+    }
+
+    private MeshData[] loadMeshes(String resource) {
+        MeshData[] loaded = this.meshes.get(resource);
+        if (loaded == null) {
+            if (this.resources != null) {
+                loaded = this.resources.getMeshes(resource);
+            } else {
+                loaded = MeshResources.load(resource);
+            }
+            this.meshes.put(resource, loaded);
+        }
+        return loaded;
+    }
+
+    private MeshData[] loadMeshes(String resource, int texture) {
+        String key = resource + "#" + texture;
+        MeshData[] textured = this.texturedMeshes.get(key);
+        if (textured == null && this.resources != null) {
+            textured = this.resources.getMeshes(resource, texture);
+            this.texturedMeshes.put(key, textured);
+        } else if (textured == null) {
+            MeshData[] loaded = loadMeshes(resource);
+            textured = new MeshData[loaded.length];
+            for (int i = 0; i < loaded.length; i++) {
+                textured[i] = loaded[i].withTextureHint(texture);
+            }
+            this.texturedMeshes.put(key, textured);
+        }
+        return textured;
+    }
+
+    private int loadTexture(String resource) {
+        Integer id = this.texturesIds.get(resource);
+        if (id == null && this.resources != null) {
+            BakeResources.Texture shared = this.resources.getTexture(resource);
+            id = shared.getId();
+            this.textures.put(id, shared.getTexture());
+            this.texturesIds.put(resource, id);
+        } else if (id == null) {
+            NativeImage image = ImageResources.load(resource, 4);
+            try {
+                id = this.texturesIds.size() + 1;
+                this.textures.put(id, SoftwareTexture.fromNativeImage(image));
+                this.texturesIds.put(resource, id);
+            } finally {
+                image.free();
+            }
+        }
+        return id;
+    }
+
+    private void processMesh(String[] tokens) {
+        String name = string(tokens, 1);
+        String resource = name;
+        String object = null;
+        int separator = name.indexOf('@');
+        if (separator != -1) {
+            resource = name.substring(0, separator);
+            object = name;
+        }
+
+        int texture = 0;
+        Matrix4f model = new Matrix4f();
+        float[] position = {0f, 0f, 0f};
+        float[] rotation = {0f, 0f, 0f};
+        float[] scale = {1f, 1f, 1f};
+
+        int i = 2;
+        while (i < tokens.length) {
+            switch (tokens[i]) {
+                case "texture" -> {
+                    texture = loadTexture(string(tokens, i + 1));
+                    i += 2;
+                }
+                case "position" -> {
+                    position = floats(tokens, i + 1, 3);
+                    i += 4;
+                }
+                case "rotation" -> {
+                    rotation = floats(tokens, i + 1, 3);
+                    i += 4;
+                }
+                case "scale" -> {
+                    scale = floats(tokens, i + 1, 3);
+                    i += 4;
+                }
+                default ->
+                    throw error("Unknown mesh property '" + tokens[i] + "'.");
+            }
+        }
+
+        model
+                .translate(position[0], position[1], position[2])
+                .rotateXYZ(
+                        (float) Math.toRadians(rotation[0]),
+                        (float) Math.toRadians(rotation[1]),
+                        (float) Math.toRadians(rotation[2])
+                )
+                .scale(scale[0], scale[1], scale[2]);
+
+        List<MeshData> selected = new ArrayList<>();
+        for (MeshData data : loadMeshes(resource, texture)) {
+            if (object == null || data.getName().equals(object)) {
+                selected.add(data);
+            }
+        }
+        if (selected.isEmpty()) {
+            throw error("Mesh '" + name + "' not found.");
+        }
+
+        for (MeshData data : selected) {
+            Geometry geometry = new Geometry(data);
+            geometry.setModel(model);
+            this.scene.getGeometries().add(geometry);
+        }
+    }
+
+    private void processLight(String[] tokens) {
+        Scene.Light light;
+        switch (tokens[0]) {
+            case "sun" ->
+                light = new Scene.DirectionalLight();
+            case "point" ->
+                light = new Scene.PointLight();
+            default ->
+                light = new Scene.SpotLight();
+        }
+
+        int i = 1;
+        while (i < tokens.length) {
+            String property = tokens[i];
+            switch (property) {
+                case "diffuse" -> {
+                    float[] v = floats(tokens, i + 1, 3);
+                    light.setDiffuse(v[0], v[1], v[2]);
+                    i += 4;
+                }
+                case "size" -> {
+                    light.setLightSize(floats(tokens, i + 1, 1)[0]);
+                    i += 2;
+                }
+                case "group" -> {
+                    light.setGroupName(string(tokens, i + 1));
+                    i += 2;
+                }
+                default -> {
+                    if (light instanceof Scene.DirectionalLight sun && property.equals("direction")) {
+                        float[] v = floats(tokens, i + 1, 3);
+                        sun.setDirection(v[0], v[1], v[2]);
+                        i += 4;
+                    } else if (light instanceof Scene.DirectionalLight sun && property.equals("ambient")) {
+                        float[] v = floats(tokens, i + 1, 3);
+                        sun.setAmbient(v[0], v[1], v[2]);
+                        i += 4;
+                    } else if (light instanceof Scene.PointLight point && property.equals("position")) {
+                        float[] v = floats(tokens, i + 1, 3);
+                        point.setPosition(v[0], v[1], v[2]);
+                        i += 4;
+                    } else if (light instanceof Scene.PointLight point && property.equals("bakecutoff")) {
+                        point.setBakeCutoff(floats(tokens, i + 1, 1)[0]);
+                        i += 2;
+                    } else if (light instanceof Scene.SpotLight spot && property.equals("direction")) {
+                        float[] v = floats(tokens, i + 1, 3);
+                        spot.setDirection(v[0], v[1], v[2]);
+                        i += 4;
+                    } else if (light instanceof Scene.SpotLight spot && property.equals("cutoff")) {
+                        float[] v = floats(tokens, i + 1, 2);
+                        spot.setCutoffAngle(v[0]);
+                        spot.setOuterCutoffAngle(v[1]);
+                        i += 3;
+                    } else {
+                        throw error("Unknown " + tokens[0] + " light property '" + property + "'.");
+                    }
+                }
+            }
+        }
+
+        this.scene.getLights().add(light);
+    }
+
+}
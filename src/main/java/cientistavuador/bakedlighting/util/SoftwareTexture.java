@@ -26,6 +26,8 @@
  */
 package cientistavuador.bakedlighting.util;
 
+import cientistavuador.bakedlighting.resources.image.NativeImage;
+import java.nio.ByteBuffer;
 import static org.lwjgl.opengl.GL33C.*;
 
 //texture
@@ -143,6 +145,73 @@ public interface SoftwareTexture {
         };
     }
 
+    public static SoftwareTexture fromNativeImage(NativeImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int channels = image.getChannels();
+        ByteBuffer data = image.getData();
+
+        int[] pixels = new int[width * height];
+        for (int i = 0; i < pixels.length; i++) {
+            int r = data.get((i * channels) + 0) & 0xFF;
+            int g = (channels >= 3 ? data.get((i * channels) + 1) & 0xFF : r);
+            int b = (channels >= 3 ? data.get((i * channels) + 2) & 0xFF : r);
+            int a = 0xFF;
+            if (channels == 2) {
+                a = data.get((i * channels) + 1) & 0xFF;
+            } else if (channels == 4) {
+                a = data.get((i * channels) + 3) & 0xFF;
+            }
+            pixels[i] = (r << 24) | (g << 16) | (b << 8) | a;
+        }
+
+        return fromPixels(width, height, pixels);
+    }
+
+    public static SoftwareTexture fromPixels(int width, int height, int[] pixels) {
+        return fromPixels(width, height, pixels, TextureWrapping.REPEAT, TextureWrapping.REPEAT);
+    }
+
+    public static SoftwareTexture fromPixels(int width, int height, int[] pixels, TextureWrapping wrapX, TextureWrapping wrapY) {
+        if (pixels.length != width * height) {
+            throw new IllegalArgumentException("Expected " + (width * height) + " pixels, found " + pixels.length);
+        }
+        return new SoftwareTexture() {
+            private final int w = width;
+            private final int h = height;
+            private final int[] p = pixels;
+
+            @Override
+            public int width() {
+                return this.w;
+            }
+
+            @Override
+            public int height() {
+                return this.h;
+            }
+
+            @Override
+            public TextureWrapping getWrappingX() {
+                return wrapX;
+            }
+
+            @Override
+            public TextureWrapping getWrappingY() {
+                return wrapY;
+            }
+
+            @Override
+            public void fetch(int x, int y, float[] result, int offset) {
+                int pixel = this.p[x + (y * this.w)];
+                result[offset + 0] = ((pixel >> 24) & 0xFF) / 255f;
+                result[offset + 1] = ((pixel >> 16) & 0xFF) / 255f;
+                result[offset + 2] = ((pixel >> 8) & 0xFF) / 255f;
+                result[offset + 3] = ((pixel >> 0) & 0xFF) / 255f;
+            }
+        };
+    }
+
     public static enum TextureWrapping {
         REPEAT, MIRRORED_REPEAT, CLAMP_TO_EDGE;
     }
@@ -0,0 +1,172 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <https://unlicense.org>
+ */
+package cientistavuador.bakedlighting.util;
+
+import cientistavuador.bakedlighting.geometry.Geometry;
+import cientistavuador.bakedlighting.resources.mesh.MeshData;
+import java.util.List;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.joml.Vector3fc;
+
+/**
+ * Orthographic depth map of the whole scene as seen by a directional light,
+ * rendered once with the software renderer. Both windings of every triangle
+ * are rendered so single sided geometry casts shadows like it does for rays.
+ *
+ * @author Cien
+ */
+public class SunShadowMap {
+
+    public static final int LIT = 1;
+    public static final int SHADOWED = 0;
+    public static final int UNKNOWN = -1;
+
+    private static float[] depthMesh(Geometry geometry) {
+        float[] vertices = geometry.getMesh().getVertices();
+        int[] indices = geometry.getMesh().getIndices();
+
+        int size = SoftwareRenderer.MeshBuilder.VERTEX_SIZE;
+        float[] mesh = new float[indices.length * 2 * size];
+        for (int i = 0; i < indices.length; i++) {
+            int triangle = i / 3;
+            int corner = i % 3;
+            int v = indices[i] * MeshData.SIZE;
+            int front = i * size;
+            int back = (indices.length + (triangle * 3) + (2 - corner)) * size;
+            for (int j = 0; j < 3; j++) {
+                mesh[front + SoftwareRenderer.MeshBuilder.POS_X + j] = vertices[v + MeshData.XYZ_OFFSET + j];
+                mesh[back + SoftwareRenderer.MeshBuilder.POS_X + j] = vertices[v + MeshData.XYZ_OFFSET + j];
+            }
+        }
+        return mesh;
+    }
+
+    private final int resolution;
+    private final float bias;
+    private final Matrix4f projectionView = new Matrix4f();
+    private final float[] depth;
+
+    public SunShadowMap(List<Geometry> geometries, Vector3fc direction, int resolution, float bias) {
+        this.resolution = Math.max(resolution, 1);
+
+        Vector3f up = new Vector3f(0f, 1f, 0f);
+        if (Math.abs(direction.y()) > 0.99f) {
+            up.set(1f, 0f, 0f);
+        }
+        Matrix4f view = new Matrix4f().setLookAlong(direction, up);
+
+        Vector3f min = new Vector3f();
+        Vector3f max = new Vector3f();
+        Vector3f corner = new Vector3f();
+        float minX = Float.POSITIVE_INFINITY;
+        float minY = Float.POSITIVE_INFINITY;
+        float minZ = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY;
+        float maxY = Float.NEGATIVE_INFINITY;
+        float maxZ = Float.NEGATIVE_INFINITY;
+        for (Geometry geometry : geometries) {
+            LightInfluence.geometryBounds(geometry, min, max);
+            for (int i = 0; i < 8; i++) {
+                corner.set(
+                        ((i & 1) == 0 ? min.x() : max.x()),
+                        ((i & 2) == 0 ? min.y() : max.y()),
+                        ((i & 4) == 0 ? min.z() : max.z())
+                );
+                view.transformPosition(corner);
+                minX = Math.min(minX, corner.x());
+                minY = Math.min(minY, corner.y());
+                minZ = Math.min(minZ, corner.z());
+                maxX = Math.max(maxX, corner.x());
+                maxY = Math.max(maxY, corner.y());
+                maxZ = Math.max(maxZ, corner.z());
+            }
+        }
+        if (geometries.isEmpty()) {
+            minX = minY = minZ = -1f;
+            maxX = maxY = maxZ = 1f;
+        }
+
+        float margin = Math.max(bias, 0.001f);
+        float near = -maxZ - margin;
+        float far = -minZ + margin;
+        Matrix4f projection = new Matrix4f().setOrtho(minX - margin, maxX + margin, minY - margin, maxY + margin, near, far);
+        this.projectionView.set(projection).mul(view);
+
+        //depth is linear in an orthographic projection
+        this.bias = bias / (far - near);
+
+        SoftwareRenderer renderer = new SoftwareRenderer(this.resolution, this.resolution);
+        renderer.setDepthOnlyEnabled(true);
+        renderer.getProjection().set(projection);
+        renderer.getView().set(view);
+        renderer.clearBuffers();
+        for (Geometry geometry : geometries) {
+            renderer.setMesh(depthMesh(geometry));
+            renderer.getModel().set(geometry.getModel());
+            renderer.render();
+        }
+
+        this.depth = new float[this.resolution * this.resolution];
+        renderer.getSurface().getDepth(0, 0, this.depth, 0, this.depth.length);
+    }
+
+    public int getResolution() {
+        return resolution;
+    }
+
+    public int test(Vector3fc position) {
+        float x = (this.projectionView.m00() * position.x()) + (this.projectionView.m10() * position.y()) + (this.projectionView.m20() * position.z()) + this.projectionView.m30();
+        float y = (this.projectionView.m01() * position.x()) + (this.projectionView.m11() * position.y()) + (this.projectionView.m21() * position.z()) + this.projectionView.m31();
+        float z = (this.projectionView.m02() * position.x()) + (this.projectionView.m12() * position.y()) + (this.projectionView.m22() * position.z()) + this.projectionView.m32();
+
+        int px = (int) Math.floor(((x + 1f) * 0.5f) * this.resolution);
+        int py = (int) Math.floor(((y + 1f) * 0.5f) * this.resolution);
+        if (px < 1 || py < 1 || px >= this.resolution - 1 || py >= this.resolution - 1) {
+            return UNKNOWN;
+        }
+        float sampleDepth = ((z + 1f) * 0.5f) - this.bias;
+
+        //the neighbours must agree, otherwise the sample is near a depth discontinuity
+        int lit = 0;
+        for (int oy = -1; oy <= 1; oy++) {
+            for (int ox = -1; ox <= 1; ox++) {
+                if (sampleDepth <= this.depth[(px + ox) + ((py + oy) * this.resolution)]) {
+                    lit++;
+                }
+            }
+        }
+        if (lit == 9) {
+            return LIT;
+        }
+        if (lit == 0) {
+            return SHADOWED;
+        }
+        return UNKNOWN;
+    }
+
+}